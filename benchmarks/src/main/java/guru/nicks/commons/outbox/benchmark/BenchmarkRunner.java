@@ -0,0 +1,30 @@
+package guru.nicks.commons.outbox.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks like JMH's own {@code Main} does (accepting the same command line options), but writes results as
+ * JSON to {@code jmh-result.json} by default, so they can be compared across versions (for example, with
+ * <a href="https://jmh.morethan.io">JMH Visualizer</a>). Use {@code -rf} and {@code -rff} to override that.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        var commandLineOptions = new CommandLineOptions(args);
+        var builder = new OptionsBuilder().parent(commandLineOptions);
+
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!commandLineOptions.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+
+        new Runner(builder.build()).run();
+    }
+
+}
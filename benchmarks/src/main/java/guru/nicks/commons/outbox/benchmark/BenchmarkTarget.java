@@ -0,0 +1,14 @@
+package guru.nicks.commons.outbox.benchmark;
+
+import java.time.Instant;
+
+/**
+ * Target of outbox tasks created by benchmarks. Does nothing, so only the outbox overhead is measured.
+ */
+public class BenchmarkTarget {
+
+    public void process(String payload, int amount, long sequence, Instant createdAt) {
+        // nothing to do
+    }
+
+}
@@ -0,0 +1,94 @@
+package guru.nicks.commons.outbox.benchmark;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Time to drain a backlog of due tasks the way {@link TransactionOutboxBackgroundJob} does it: each of the flush
+ * workers calls {@code flush()} until there's nothing left. Tasks are executed inline by the flushing thread.
+ * <p>
+ * H2 doesn't support {@code SKIP LOCKED}, so concurrent workers wait for each other's locks, and multi-worker results
+ * are pessimistic compared to PostgreSQL / MySQL 8.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlushBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int backlog;
+
+    @Param({"1", "4"})
+    public int flushThreads;
+
+    @Param({"100", "4096"})
+    public int flushBatchSize;
+
+    private OutboxFixture fixture;
+    private ExecutorService flushExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new OutboxFixture(InvocationSerializer.createDefaultJsonSerializer(),
+                OutboxFixture.inlineSubmitter(), flushBatchSize);
+        flushExecutor = Executors.newFixedThreadPool(flushThreads);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillBacklog() throws Exception {
+        fixture.clear();
+        fixture.insertDueTasks(backlog);
+    }
+
+    @TearDown(Level.Invocation)
+    public void checkDrained() throws Exception {
+        long left = fixture.countTasks();
+
+        if (left > 0) {
+            throw new IllegalStateException(left + " tasks left after flushing");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        flushExecutor.shutdownNow();
+        fixture.close();
+    }
+
+    @Benchmark
+    public void drainBacklog() {
+        var workers = IntStream.range(0, flushThreads)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                    while (fixture.getOutbox().flush()) {
+                        // keep flushing
+                    }
+                }, flushExecutor))
+                .toArray(CompletableFuture[]::new);
+
+        CompletableFuture.allOf(workers).join();
+    }
+
+}
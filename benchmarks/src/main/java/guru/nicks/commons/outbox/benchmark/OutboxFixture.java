@@ -0,0 +1,199 @@
+package guru.nicks.commons.outbox.benchmark;
+
+import com.gruelbox.transactionoutbox.DefaultPersistor;
+import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.ThreadLocalContextTransactionManager;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * {@link TransactionOutbox} backed by an in-memory H2 database, with {@link BenchmarkTarget} as the only task target.
+ */
+public class OutboxFixture implements AutoCloseable {
+
+    /**
+     * Library default.
+     */
+    public static final int DEFAULT_FLUSH_BATCH_SIZE = 4096;
+
+    private final JdbcDataSource dataSource;
+    private final Connection keepAliveConnection;
+    private final InvocationSerializer serializer;
+
+    private final ThreadLocalContextTransactionManager transactionManager;
+    private final TransactionOutbox outbox;
+
+    /**
+     * @param serializer invocation serializer
+     * @param submitter  runs tasks after commit or when flushing
+     */
+    public OutboxFixture(InvocationSerializer serializer, Submitter submitter) throws Exception {
+        this(serializer, submitter, DEFAULT_FLUSH_BATCH_SIZE);
+    }
+
+    /**
+     * @param serializer     invocation serializer
+     * @param submitter      runs tasks after commit or when flushing
+     * @param flushBatchSize max. number of tasks claimed by each flush
+     */
+    public OutboxFixture(InvocationSerializer serializer, Submitter submitter, int flushBatchSize)
+            throws Exception {
+        this(inMemoryUrl(), serializer, builder -> builder
+                .submitter(submitter)
+                .flushBatchSize(flushBatchSize));
+    }
+
+    /**
+     * @param url        H2 JDBC URL
+     * @param serializer invocation serializer
+     * @param customizer overrides builder settings (the defaults are: {@link BenchmarkTarget} as the only task target,
+     *                   1-minute attempt frequency)
+     */
+    public OutboxFixture(String url, InvocationSerializer serializer,
+            Consumer<TransactionOutbox.TransactionOutboxBuilder> customizer) throws Exception {
+        this.serializer = serializer;
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        keepAliveConnection = dataSource.getConnection();
+
+        transactionManager = TransactionManager.fromDataSource(dataSource);
+        var target = new BenchmarkTarget();
+
+        var builder = TransactionOutbox.builder()
+                .transactionManager(transactionManager)
+                .instantiator(Instantiator.using(clazz -> target))
+                .persistor(DefaultPersistor.builder()
+                        .dialect(Dialect.H2)
+                        .serializer(serializer)
+                        .build())
+                .attemptFrequency(Duration.ofMinutes(1));
+        customizer.accept(builder);
+
+        outbox = builder.build();
+        outbox.initialize();
+    }
+
+    /**
+     * @return URL of a new in-memory H2 database
+     */
+    public static String inMemoryUrl() {
+        // H2 has no SKIP LOCKED, so concurrent flushes wait for each other's locks
+        return "jdbc:h2:mem:outbox-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000";
+    }
+
+    /**
+     * @return submitter discarding tasks, so they stay in the table
+     */
+    public static Submitter discardingSubmitter() {
+        return (entry, localExecutor) -> {
+        };
+    }
+
+    /**
+     * @return submitter executing tasks in the calling thread
+     */
+    public static Submitter inlineSubmitter() {
+        return (entry, localExecutor) -> localExecutor.accept(entry);
+    }
+
+    public TransactionOutbox getOutbox() {
+        return outbox;
+    }
+
+    public TransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    public JdbcDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Inserts due tasks directly, which is much faster than scheduling them one by one.
+     *
+     * @param count number of tasks
+     */
+    public void insertDueTasks(int count) throws Exception {
+        var writer = new StringWriter();
+        serializer.serializeInvocation(new Invocation(BenchmarkTarget.class.getName(), "process",
+                new Class<?>[]{String.class, int.class, long.class, Instant.class},
+                new Object[]{"payload", 1, 1L, Instant.now()}), writer);
+        String invocation = writer.toString();
+        Timestamp due = Timestamp.from(Instant.now().minusSeconds(60));
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("INSERT INTO TXNO_OUTBOX "
+                     + "(id, invocation, nextAttemptTime, attempts, blocked, processed, version, topic) "
+                     + "VALUES (?, ?, ?, 0, false, false, 1, '*')")) {
+            for (int i = 0; i < count; i++) {
+                stmt.setString(1, UUID.randomUUID().toString());
+                stmt.setString(2, invocation);
+                stmt.setTimestamp(3, due);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * @return number of rows in the outbox table
+     */
+    public long countTasks() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM TXNO_OUTBOX")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * @return number of blocked rows in the outbox table
+     */
+    public long countBlockedTasks() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM TXNO_OUTBOX WHERE blocked = true")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Deletes all tasks.
+     */
+    public void clear() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM TXNO_OUTBOX");
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try (Statement stmt = keepAliveConnection.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+
+        keepAliveConnection.close();
+    }
+
+}
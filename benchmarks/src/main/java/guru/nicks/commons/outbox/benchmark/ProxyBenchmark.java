@@ -0,0 +1,87 @@
+package guru.nicks.commons.outbox.benchmark;
+
+import guru.nicks.commons.outbox.CachingOutboxActions;
+import guru.nicks.commons.outbox.OutboxActions;
+
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating outbox proxies ({@link OutboxActions#createProxyFor(Class)} with and without
+ * {@link CachingOutboxActions}) and of scheduling a task through a proxy (a transaction with one {@code INSERT}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyBenchmark {
+
+    private OutboxFixture fixture;
+    private OutboxActions plainActions;
+    private OutboxActions cachingActions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new OutboxFixture(InvocationSerializer.createDefaultJsonSerializer(),
+                OutboxFixture.discardingSubmitter());
+
+        TransactionOutbox outbox = fixture.getOutbox();
+        plainActions = () -> outbox;
+        cachingActions = new CachingOutboxActions() {
+            @Override
+            public TransactionOutbox getTransactionOutbox() {
+                return outbox;
+            }
+        };
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() throws Exception {
+        fixture.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public BenchmarkTarget createProxy() {
+        return plainActions.createProxyFor(BenchmarkTarget.class);
+    }
+
+    @Benchmark
+    public BenchmarkTarget createCachedProxy() {
+        return cachingActions.createProxyFor(BenchmarkTarget.class);
+    }
+
+    @Benchmark
+    public void scheduleThroughNewProxy() {
+        fixture.getTransactionManager().inTransaction(() -> plainActions.createProxyFor(BenchmarkTarget.class)
+                .process("payload", 1, 1L, Instant.now()));
+    }
+
+    @Benchmark
+    public void scheduleThroughCachedProxy() {
+        fixture.getTransactionManager().inTransaction(() -> cachingActions.createProxyFor(BenchmarkTarget.class)
+                .process("payload", 1, 1L, Instant.now()));
+    }
+
+}
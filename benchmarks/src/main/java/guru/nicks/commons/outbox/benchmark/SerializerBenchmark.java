@@ -0,0 +1,104 @@
+package guru.nicks.commons.outbox.benchmark;
+
+import guru.nicks.commons.outbox.serializer.CompressingInvocationSerializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.jackson.JacksonInvocationSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing and deserializing an invocation with the library's default and Jackson serializers, with and
+ * without compression, for small and large payloads. The serialized size is reported as the {@code storedChars} counter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({"false", "true"})
+    public boolean jackson;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    @Param({"100", "10000"})
+    public int payloadLength;
+
+    private InvocationSerializer serializer;
+    private Invocation invocation;
+    private String serialized;
+
+    @Setup
+    public void setUp() {
+        var objectMapper = new ObjectMapper();
+        var jacksonSerializer = JacksonInvocationSerializer.builder()
+                .mapper(objectMapper)
+                .build();
+
+        serializer = jackson
+                ? jacksonSerializer
+                : InvocationSerializer.createDefaultJsonSerializer();
+
+        if (compressed) {
+            serializer = new CompressingInvocationSerializer(serializer, 1024);
+        }
+
+        invocation = new Invocation(BenchmarkTarget.class.getName(), "process",
+                new Class<?>[]{String.class, int.class, long.class, Instant.class},
+                new Object[]{"x".repeat(payloadLength), 42, 123_456_789L, Instant.now()});
+        serialized = serialize();
+    }
+
+    @Benchmark
+    public String serialize() {
+        var writer = new StringWriter();
+        serializer.serializeInvocation(invocation, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public Invocation deserialize() throws IOException {
+        return serializer.deserializeInvocation(new StringReader(serialized));
+    }
+
+    @Benchmark
+    public Invocation roundTrip(StoredSize storedSize) throws IOException {
+        String value = serialize();
+        storedSize.storedChars = value.length();
+        return serializer.deserializeInvocation(new StringReader(value));
+    }
+
+    /**
+     * Reports the number of characters stored in the outbox table per invocation.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class StoredSize {
+
+        public long storedChars;
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package guru.nicks.commons.outbox.soak;
+
+import org.HdrHistogram.Recorder;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target of soak test tasks. Records schedule-to-execution latency of successful tasks and injects faults:
+ * <ul>
+ *     <li>transient failures - a task fails on its first attempt with the given probability, then succeeds</li>
+ *     <li>poison tasks - always fail, therefore end up blocked</li>
+ * </ul>
+ */
+public class SoakTarget {
+
+    private final Recorder latencyRecorder;
+    private final double transientFailureRate;
+
+    /**
+     * IDs of tasks which have already failed once.
+     */
+    private final Set<String> failedTaskIds = ConcurrentHashMap.newKeySet();
+
+    public SoakTarget(Recorder latencyRecorder, double transientFailureRate) {
+        this.latencyRecorder = latencyRecorder;
+        this.transientFailureRate = transientFailureRate;
+    }
+
+    /**
+     * @param taskId          unique task ID
+     * @param scheduledAtNano {@link System#nanoTime()} when the task was scheduled
+     * @param poison          if {@code true}, the task always fails
+     */
+    public void process(String taskId, long scheduledAtNano, boolean poison) {
+        if (poison) {
+            throw new IllegalStateException("Poison task " + taskId);
+        }
+
+        if ((ThreadLocalRandom.current().nextDouble() < transientFailureRate) && failedTaskIds.add(taskId)) {
+            throw new IllegalStateException("Transient failure of task " + taskId);
+        }
+
+        failedTaskIds.remove(taskId);
+        latencyRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledAtNano));
+    }
+
+}
@@ -0,0 +1,254 @@
+package guru.nicks.commons.outbox.soak;
+
+import guru.nicks.commons.outbox.CachingOutboxActions;
+import guru.nicks.commons.outbox.OutboxActions;
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.benchmark.OutboxFixture;
+import guru.nicks.commons.outbox.domain.TaskSuccessLogging;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Pushes sustained load through {@link OutboxActions} into an embedded H2 database, with tasks executed right after
+ * commit by a bounded executor (as configured by the starter) and retried by the real
+ * {@link TransactionOutboxBackgroundJob}. The job runs in a Spring context and is woken up by
+ * {@link TransactionOutboxTaskListener} on each commit, as in apps. Every report interval, prints (and appends to a CSV
+ * file) throughput, schedule-to-execution latency percentiles, table size, and the number of tasks the producer failed
+ * to schedule. Prints overall percentiles at the end.
+ * <p>
+ * Settings are passed as {@code key=value} arguments, see {@link #DEFAULTS}. For example:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar guru.nicks.commons.outbox.soak.SoakTest \
+ *     duration=PT10M rate=1000 transientFailureRate=0.05 poisonRate=0.001 h2File=./target/soak
+ * </pre>
+ */
+public class SoakTest {
+
+    /**
+     * Default settings.
+     */
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            // how long to generate load
+            Map.entry("duration", "PT5M"),
+            // tasks scheduled per second (spread evenly across producer ticks), each in its own transaction
+            Map.entry("rate", "500"),
+            // share of tasks failing on their first attempt
+            Map.entry("transientFailureRate", "0"),
+            // share of tasks always failing
+            Map.entry("poisonRate", "0"),
+            Map.entry("blockAfterAttempts", "5"),
+            Map.entry("perTaskRetryDelay", "PT2S"),
+            // background job settings
+            Map.entry("backgroundJobMinRestartDelay", "PT0.5S"),
+            Map.entry("backgroundJobRestartDelay", "PT5S"),
+            Map.entry("flushThreads", "1"),
+            Map.entry("flushBatchSize", "4096"),
+            // executor running tasks right after commit
+            Map.entry("dispatchThreads", "8"),
+            Map.entry("dispatchQueueCapacity", "10000"),
+            Map.entry("reportInterval", "PT10S"),
+            // H2 file path (without extension), in-memory database if empty
+            Map.entry("h2File", ""),
+            Map.entry("csv", "soak-report.csv"));
+
+    /**
+     * Producer ticks per second.
+     */
+    private static final int TICKS_PER_SECOND = 10;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = parseArgs(args);
+        System.out.println("Soak test settings: " + settings);
+
+        // events published by the listener reach the background job like in apps
+        var context = new GenericApplicationContext();
+        AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+        var metrics = new OutboxMetrics(new SimpleMeterRegistry());
+        context.registerBean(OutboxMetrics.class, () -> metrics);
+        var listener = new TransactionOutboxTaskListener(TransactionOutboxProperties.builder()
+                .successLogging(TaskSuccessLogging.OFF)
+                .build(), context, metrics, null);
+
+        var latencyRecorder = new Recorder(TimeUnit.MINUTES.toMicros(10), 3);
+        var target = new SoakTarget(latencyRecorder, Double.parseDouble(settings.get("transientFailureRate")));
+
+        var dispatchExecutor = new ThreadPoolExecutor(
+                Integer.parseInt(settings.get("dispatchThreads")), Integer.parseInt(settings.get("dispatchThreads")),
+                1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(Integer.parseInt(settings.get("dispatchQueueCapacity"))),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        String h2File = settings.get("h2File");
+        String url = h2File.isEmpty()
+                ? OutboxFixture.inMemoryUrl()
+                : "jdbc:h2:file:" + h2File + ";LOCK_TIMEOUT=30000";
+
+        try (var fixture = new OutboxFixture(url, InvocationSerializer.createDefaultJsonSerializer(), builder -> builder
+                .instantiator(Instantiator.using(clazz -> target))
+                .submitter(Submitter.withExecutor(dispatchExecutor))
+                .listener(listener)
+                .attemptFrequency(Duration.parse(settings.get("perTaskRetryDelay")))
+                .blockAfterAttempts(Integer.parseInt(settings.get("blockAfterAttempts")))
+                .flushBatchSize(Integer.parseInt(settings.get("flushBatchSize"))))) {
+            new SoakTest(settings, fixture, latencyRecorder, context).run();
+        } finally {
+            context.close();
+            dispatchExecutor.shutdownNow();
+        }
+    }
+
+    private final Map<String, String> settings;
+    private final OutboxFixture fixture;
+    private final Recorder latencyRecorder;
+    private final GenericApplicationContext context;
+    private final Histogram totalLatency = new Histogram(TimeUnit.MINUTES.toMicros(10), 3);
+    private final AtomicLong scheduledTasks = new AtomicLong();
+    private final AtomicLong producerErrors = new AtomicLong();
+
+    private SoakTest(Map<String, String> settings, OutboxFixture fixture, Recorder latencyRecorder,
+            GenericApplicationContext context) {
+        this.settings = settings;
+        this.fixture = fixture;
+        this.latencyRecorder = latencyRecorder;
+        this.context = context;
+    }
+
+    private void run() throws Exception {
+        TransactionOutbox outbox = fixture.getOutbox();
+        OutboxActions actions = new CachingOutboxActions() {
+            @Override
+            public TransactionOutbox getTransactionOutbox() {
+                return outbox;
+            }
+        };
+
+        registerBackgroundJob(outbox);
+        // initializes and starts the job
+        context.refresh();
+
+        double poisonRate = Double.parseDouble(settings.get("poisonRate"));
+        long rate = Long.parseLong(settings.get("rate"));
+        var ticks = new AtomicLong();
+        var producer = Executors.newSingleThreadScheduledExecutor();
+        producer.scheduleAtFixedRate(() -> {
+            long tick = ticks.getAndIncrement();
+            // rates below or not divisible by the tick rate are spread across ticks without rounding errors
+            long tasksPerTick = rate * (tick + 1) / TICKS_PER_SECOND - rate * tick / TICKS_PER_SECOND;
+
+            for (long i = 0; i < tasksPerTick; i++) {
+                // an exception escaping the tick would cancel all further ticks
+                try {
+                    boolean poison = ThreadLocalRandom.current().nextDouble() < poisonRate;
+                    fixture.getTransactionManager().inTransaction(() -> actions.createProxyFor(SoakTarget.class)
+                            .process(UUID.randomUUID().toString(), System.nanoTime(), poison));
+                    scheduledTasks.incrementAndGet();
+                } catch (RuntimeException e) {
+                    if (producerErrors.incrementAndGet() == 1) {
+                        System.err.println("Failed to schedule a task (further errors are only counted): " + e);
+                    }
+                }
+            }
+        }, 0, 1000 / TICKS_PER_SECOND, TimeUnit.MILLISECONDS);
+
+        Duration duration = Duration.parse(settings.get("duration"));
+        Duration reportInterval = Duration.parse(settings.get("reportInterval"));
+        long startNanos = System.nanoTime();
+
+        try (var csv = new PrintWriter(Files.newBufferedWriter(Path.of(settings.get("csv"))))) {
+            csv.println("elapsedSeconds,scheduled,producerErrors,executed,executedPerSecond,p50Ms,p99Ms,p999Ms,"
+                    + "maxMs,tableRows,blockedRows");
+            Histogram interval = null;
+
+            while (Duration.ofNanos(System.nanoTime() - startNanos).compareTo(duration) < 0) {
+                Thread.sleep(reportInterval);
+                interval = latencyRecorder.getIntervalHistogram(interval);
+                totalLatency.add(interval);
+
+                String line = String.format("%d,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d",
+                        Duration.ofNanos(System.nanoTime() - startNanos).toSeconds(),
+                        scheduledTasks.get(),
+                        producerErrors.get(),
+                        totalLatency.getTotalCount(),
+                        interval.getTotalCount() / (double) reportInterval.toSeconds(),
+                        millis(interval.getValueAtPercentile(50)),
+                        millis(interval.getValueAtPercentile(99)),
+                        millis(interval.getValueAtPercentile(99.9)),
+                        millis(interval.getMaxValue()),
+                        fixture.countTasks(),
+                        fixture.countBlockedTasks());
+                System.out.println(line);
+                csv.println(line);
+                csv.flush();
+            }
+        } finally {
+            producer.shutdownNow();
+            // stops the job
+            context.stop();
+        }
+
+        System.out.printf("Done: scheduled %d, failed to schedule %d, executed %d, latency p50 %.1f ms, "
+                        + "p99 %.1f ms, p99.9 %.1f ms, max %.1f ms%n",
+                scheduledTasks.get(), producerErrors.get(), totalLatency.getTotalCount(),
+                millis(totalLatency.getValueAtPercentile(50)), millis(totalLatency.getValueAtPercentile(99)),
+                millis(totalLatency.getValueAtPercentile(99.9)), millis(totalLatency.getMaxValue()));
+    }
+
+    /**
+     * Registers the job with its settings taken from the soak test ones.
+     */
+    private void registerBackgroundJob(TransactionOutbox outbox) {
+        context.registerBean(TransactionOutboxBackgroundJob.class, () -> new TransactionOutboxBackgroundJob(outbox,
+                context.getBeanProvider(OutboxMetrics.class), context,
+                Duration.ZERO,
+                Duration.parse(settings.get("backgroundJobRestartDelay")),
+                Duration.parse(settings.get("backgroundJobMinRestartDelay")),
+                Integer.parseInt(settings.get("flushThreads"))));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> settings = new TreeMap<>(DEFAULTS);
+
+        settings.putAll(Arrays.stream(args)
+                .map(arg -> arg.split("=", 2))
+                .peek(pair -> {
+                    if ((pair.length != 2) || !DEFAULTS.containsKey(pair[0])) {
+                        throw new IllegalArgumentException("Unknown argument '" + String.join("=", pair)
+                                + "', expected one of: " + DEFAULTS.keySet());
+                    }
+                })
+                .collect(Collectors.toMap(pair -> pair[0], pair -> pair[1])));
+
+        return settings;
+    }
+
+}
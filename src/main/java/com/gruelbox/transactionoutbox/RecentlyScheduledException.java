@@ -0,0 +1,19 @@
+package com.gruelbox.transactionoutbox;
+
+import guru.nicks.commons.outbox.persistor.IdempotencyCachePersistor;
+
+/**
+ * {@link AlreadyScheduledException} thrown by {@link IdempotencyCachePersistor} for unique request IDs it has seen
+ * recently, so callers handle it the same way as the library's one. Lives in the library's package because the
+ * constructor of {@link AlreadyScheduledException} isn't public.
+ */
+public class RecentlyScheduledException extends AlreadyScheduledException {
+
+    /**
+     * @param uniqueRequestId unique request ID seen recently
+     */
+    public RecentlyScheduledException(String uniqueRequestId) {
+        super("Request " + uniqueRequestId + " already exists (seen recently)", null);
+    }
+
+}
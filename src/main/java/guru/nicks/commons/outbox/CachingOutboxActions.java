@@ -0,0 +1,57 @@
+package guru.nicks.commons.outbox;
+
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link OutboxActions} which creates a proxy once per target class and then reuses it. This is safe because proxies
+ * returned by {@link TransactionOutbox#schedule(Class)} are stateless - each call made through them joins the current
+ * transaction on its own.
+ * <p>
+ * Worth extending instead of implementing {@link OutboxActions} directly when proxies are requested on hot paths, such
+ * as several times per HTTP request.
+ * <p>
+ * When the subclass is a Spring bean, the auto-configured {@link OutboxCompletionRegistry} is injected, so
+ * {@link #scheduleTracked} works without overriding {@link #getCompletionRegistry()}.
+ */
+public abstract class CachingOutboxActions implements OutboxActions {
+
+    private final Map<Class<?>, Object> proxies = new ConcurrentHashMap<>();
+
+    private OutboxCompletionRegistry completionRegistry;
+
+    /**
+     * Called by Spring if there's an {@link OutboxCompletionRegistry} bean.
+     *
+     * @param completionRegistry completion registry
+     */
+    @Autowired(required = false)
+    public void setCompletionRegistry(OutboxCompletionRegistry completionRegistry) {
+        this.completionRegistry = completionRegistry;
+    }
+
+    @Override
+    public OutboxCompletionRegistry getCompletionRegistry() {
+        return (completionRegistry == null)
+                ? OutboxActions.super.getCompletionRegistry()
+                : completionRegistry;
+    }
+
+    @Override
+    public <T> T createProxyFor(Class<T> targetClass) {
+        // plain get() doesn't lock anything, unlike computeIfAbsent()
+        Object proxy = proxies.get(targetClass);
+
+        if (proxy == null) {
+            proxy = proxies.computeIfAbsent(targetClass, OutboxActions.super::createProxyFor);
+        }
+
+        return targetClass.cast(proxy);
+    }
+
+}
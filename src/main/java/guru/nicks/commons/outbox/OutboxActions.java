@@ -1,8 +1,15 @@
 package guru.nicks.commons.outbox;
 
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
 import guru.nicks.commons.outbox.config.CommonsOutboxAutoConfiguration;
 
 import com.gruelbox.transactionoutbox.TransactionOutbox;
+import org.slf4j.MDC;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Stores actions in {@link TransactionOutbox} and performs them. All public methods must be transactional (Mongo
@@ -15,6 +22,8 @@ import com.gruelbox.transactionoutbox.TransactionOutbox;
  * <p>
  * Internal methods are {@code protected} because when decorated with {@link TransactionOutbox#schedule(Class)},
  * dependency injection doesn't work for {@code private} methods.
+ *
+ * @see CachingOutboxActions
  */
 public interface OutboxActions {
 
@@ -23,6 +32,8 @@ public interface OutboxActions {
     /**
      * Calls {@link TransactionOutbox#initialize()} and {@link TransactionOutbox#schedule(Class)}. For the explanation
      * of why the first call is needed, see {@link CommonsOutboxAutoConfiguration}.
+     * <p>
+     * Creates a new proxy on each call - see {@link CachingOutboxActions} for an alternative.
      *
      * @param targetClass usually {@link Object#getClass()} called from within a Spring bean
      * @param <T>         target class type
@@ -32,4 +43,100 @@ public interface OutboxActions {
         return getTransactionOutbox().schedule(targetClass);
     }
 
+    /**
+     * Same as {@link #createProxyFor(Class)}, but tasks scheduled through the proxy with the same ordering key (for
+     * example, an aggregate ID) are executed strictly in the order of scheduling, each one only after the previous one
+     * has succeeded. Tasks with different keys are executed in parallel.
+     * <p>
+     * Unlike unordered tasks, ordered ones are never executed right after commit - they're picked up by
+     * {@link TransactionOutboxBackgroundJob}, one task per key per flush. Proxies are never cached because ordering
+     * keys usually have high cardinality.
+     *
+     * @param targetClass usually {@link Object#getClass()} called from within a Spring bean
+     * @param orderingKey ordering key (up to 250 characters - it's stored in the outbox table as a topic)
+     * @param <T>         target class type
+     * @return proxy for the target class
+     * @throws IllegalArgumentException ordering key is blank
+     */
+    default <T> T createOrderedProxyFor(Class<T> targetClass, String orderingKey) {
+        if (!StringUtils.hasText(orderingKey)) {
+            throw new IllegalArgumentException("Ordering key must not be blank");
+        }
+
+        return getTransactionOutbox()
+                .with()
+                .ordered(orderingKey)
+                .schedule(targetClass);
+    }
+
+    /**
+     * Needed for {@link #scheduleTracked(Class, Duration, Consumer)} only - should return the
+     * {@link OutboxCompletionRegistry} bean (the one the task listener completes futures in).
+     * {@link CachingOutboxActions} returns the auto-configured bean.
+     *
+     * @return completion registry
+     * @throws IllegalStateException not overridden
+     */
+    default OutboxCompletionRegistry getCompletionRegistry() {
+        throw new IllegalStateException("No " + OutboxCompletionRegistry.class.getSimpleName()
+                + " to track tasks in: extend " + CachingOutboxActions.class.getSimpleName()
+                + " or override getCompletionRegistry() to return the auto-configured bean");
+    }
+
+    /**
+     * Same as {@link #scheduleTracked(Class, Duration, Consumer)} with
+     * {@link OutboxCompletionRegistry#getDefaultTimeout()}.
+     */
+    default <T> CompletableFuture<Void> scheduleTracked(Class<T> targetClass, Consumer<T> call) {
+        return scheduleTracked(targetClass, getCompletionRegistry().getDefaultTimeout(), call);
+    }
+
+    /**
+     * Schedules a task by passing a proxy (see {@link #createProxyFor(Class)}) to {@code call}, and returns a future
+     * completed once the task has succeeded in this app, so the caller can wait for a side effect (for example, for a
+     * message to be sent) without polling the DB:
+     * <pre>
+     * outboxActions.scheduleTracked(MailService.class, proxy -> proxy.send(mail))
+     *         .get(5, TimeUnit.SECONDS);
+     * </pre>
+     * The future never completes before the caller's transaction is committed, so don't block on it inside the
+     * transaction. If the task isn't executed in time (or is executed by another app), the future fails with
+     * {@link java.util.concurrent.TimeoutException}, but the task is still retried by
+     * {@link TransactionOutboxBackgroundJob}. See {@link OutboxCompletionRegistry} for other caveats.
+     *
+     * @param targetClass usually {@link Object#getClass()} called from within a Spring bean
+     * @param timeout     how long to wait for success
+     * @param call        calls exactly one method of the proxy (if more, the first success completes the future)
+     * @param <T>         target class type
+     * @return future completed on success
+     * @throws IllegalStateException there's no completion registry, see {@link #getCompletionRegistry()}
+     */
+    default <T> CompletableFuture<Void> scheduleTracked(Class<T> targetClass, Duration timeout, Consumer<T> call) {
+        // before anything is scheduled
+        OutboxCompletionRegistry completionRegistry = getCompletionRegistry();
+        T proxy = createProxyFor(targetClass);
+        // tracked calls may be nested
+        String outerId = MDC.get(OutboxCompletionRegistry.MDC_KEY);
+        MDC.remove(OutboxCompletionRegistry.MDC_KEY);
+
+        CompletableFuture<Void> future = completionRegistry.register(timeout,
+                id -> MDC.put(OutboxCompletionRegistry.MDC_KEY, id));
+
+        try {
+            call.accept(proxy);
+        } catch (RuntimeException e) {
+            // removes the future from the registry
+            future.cancel(false);
+            throw e;
+        } finally {
+            if (outerId == null) {
+                MDC.remove(OutboxCompletionRegistry.MDC_KEY);
+            } else {
+                MDC.put(OutboxCompletionRegistry.MDC_KEY, outerId);
+            }
+        }
+
+        return future;
+    }
+
 }
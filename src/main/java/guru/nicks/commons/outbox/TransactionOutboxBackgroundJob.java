@@ -1,27 +1,45 @@
 package guru.nicks.commons.outbox;
 
+import guru.nicks.commons.outbox.domain.TransactionOutboxFlushCompletedEvent;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskScheduledEvent;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
 import guru.nicks.commons.utils.text.TimeUtils;
 
 import com.gruelbox.transactionoutbox.TransactionOutbox;
 import com.gruelbox.transactionoutbox.spring.SpringInstantiator;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
  * Retries background {@link TransactionOutbox} tasks. Unfortunately it seems impossible to log individual task errors -
  * {@code TransactionOutboxImpl} logs them with Slf4J. The initial delay is in the
- * {@code transaction-outbox.backgroundJobInitialDelay} config setting, and the restart delay is in the
- * {@code transaction-outbox.backgroundJobRestartDelay} config setting.
+ * {@code transaction-outbox.backgroundJobInitialDelay} config setting, and the restart delay is adaptive: it grows
+ * exponentially from {@code transaction-outbox.backgroundJobMinRestartDelay} to
+ * {@code transaction-outbox.backgroundJobRestartDelay} while there's nothing to do, and drops back to the minimum once
+ * tasks are found or a transaction scheduling a task is committed in this app (see {@link #wakeUp()}).
  * <p>
  * This job in THE SAME for all apps that use Outbox. It processes ALL tasks, which means parallel processing and
  * increased throughput (there are no race conditions - tasks are locked before processing with
- * {@code SELECT FOR UPDATE SKIP LOCKED} in modern SQL engines / {@code SELECT FOR UPDATE} in older ones).
+ * {@code SELECT FOR UPDATE SKIP LOCKED} in modern SQL engines / {@code SELECT FOR UPDATE} in older ones). For the same
+ * reason, each app can run several flush workers in parallel - see {@code transaction-outbox.flushThreads}.
  * <p>
  * <b>Not all apps can execute all tasks</b> - the tasks refer to Spring beans (by their name - see
  * {@link SpringInstantiator} for details) which may not exist. Such useless retries simply increase the number of
@@ -33,38 +51,253 @@ import java.time.Duration;
 @Component
 @Slf4j
 @RequiredArgsConstructor
-public class TransactionOutboxBackgroundJob {
+public class TransactionOutboxBackgroundJob implements SmartLifecycle {
 
-    // DI
+    // DI (Lombok copies @Value to the constructor, so the job can be created outside of Spring too)
     private final TransactionOutbox outbox;
+    private final ObjectProvider<OutboxMetrics> outboxMetrics;
+    private final ApplicationEventPublisher applicationEventPublisher;
 
     @Value("${transaction-outbox.backgroundJobInitialDelay}")
-    private Duration initialDelay;
+    private final Duration initialDelay;
     @Value("${transaction-outbox.backgroundJobRestartDelay}")
-    private Duration restartDelay;
+    private final Duration restartDelay;
+    @Value("${transaction-outbox.backgroundJobMinRestartDelay:${transaction-outbox.backgroundJobRestartDelay}}")
+    private final Duration minRestartDelay;
+    @Value("${transaction-outbox.flushThreads:1}")
+    private final int flushThreads;
 
+    /**
+     * Runs flush workers if {@link #flushThreads} is greater than 1, otherwise {@code null}.
+     */
+    private ExecutorService flushExecutor;
+
+    /**
+     * Has at most one permit, released by {@link #wakeUp()}.
+     */
+    private final Semaphore wakeUpSignal = new Semaphore(0);
+
+    /**
+     * Delay before the next job invocation, between {@link #minRestartDelay} and {@link #restartDelay}.
+     */
+    @Getter
+    private volatile Duration currentDelay;
+
+    private volatile Thread pollerThread;
+
+    /**
+     * {@code null} if there's no {@link OutboxMetrics} bean.
+     */
+    private OutboxMetrics metrics;
+
+    /**
+     * Called by Spring. Must be called before {@link #start()} or {@link #retryFailedTasks()} if the job is created
+     * outside of Spring.
+     */
     @PostConstruct
-    private void init() {
+    public void init() {
         log.debug("TransactionOutbox background jobs will start in {} "
-                        + "and restart (no matter how long the job takes) every {}",
+                        + "and restart (no matter how long the job takes) every {} to {}, using {} flush worker(s)",
                 TimeUtils.humanFormatDuration(initialDelay),
-                TimeUtils.humanFormatDuration(restartDelay));
+                TimeUtils.humanFormatDuration(minRestartDelay),
+                TimeUtils.humanFormatDuration(restartDelay),
+                flushThreads);
+
+        currentDelay = minRestartDelay;
+        metrics = outboxMetrics.getIfAvailable();
+
+        if (flushThreads > 1) {
+            flushExecutor = Executors.newFixedThreadPool(flushThreads,
+                    Thread.ofPlatform().name("outbox-flush-", 0).daemon(true).factory());
+        }
+    }
+
+    /**
+     * Called by Spring. Must be called after {@link #stop()} if the job is created outside of Spring.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void start() {
+        pollerThread = Thread.ofPlatform()
+                .name("outbox-poller")
+                .daemon(true)
+                .start(this::poll);
+    }
+
+    @Override
+    public void stop() {
+        Thread thread = pollerThread;
+        pollerThread = null;
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return pollerThread != null;
+    }
+
+    /**
+     * Makes the next job invocation happen as soon as {@link #minRestartDelay} allows. Several wake-ups arriving
+     * before the job restarts are merged into one.
+     */
+    public void wakeUp() {
+        currentDelay = minRestartDelay;
+
+        if (wakeUpSignal.availablePermits() == 0) {
+            wakeUpSignal.release();
+        }
+    }
+
+    /**
+     * Tasks scheduled in this app are normally executed right after commit, but delayed and ordered ones (and those
+     * that failed) are up to this job, so there's a chance they can be processed earlier than the current delay
+     * permits.
+     */
+    @EventListener
+    public void onTaskScheduled(TransactionOutboxTaskScheduledEvent event) {
+        wakeUp();
     }
 
-    @Scheduled(initialDelayString = "${transaction-outbox.backgroundJobInitialDelay}",
-            fixedDelayString = "${transaction-outbox.backgroundJobRestartDelay}")
     public void retryFailedTasks() {
+        boolean foundTasks = false;
+        long start = System.nanoTime();
+        var flushedTasks = new LongAdder();
+
         try {
-            do {
-                log.trace("Processing TransactionOutbox tasks in background...");
-            } while (outbox.flush());
+            foundTasks = (flushExecutor == null)
+                    ? flushUntilEmpty(flushedTasks)
+                    : flushInParallel(flushedTasks);
+
+            if (metrics != null) {
+                metrics.flushCompleted(System.nanoTime() - start, flushedTasks.sum());
+            }
         }
-        // these are NOT errors inside outbox tasks, these are errors inside TransactionOutbox itself, which hardly
-        // ever happen
+        // these are NOT errors inside outbox tasks, these are errors inside TransactionOutbox itself, which hardly ever
+        // happen
         catch (Exception e) {
             log.error("Internal error flushing TransactionOutbox (will retry in {}): {}",
-                    TimeUtils.humanFormatDuration(restartDelay), e.getMessage(), e);
+                    TimeUtils.humanFormatDuration(nextDelay(foundTasks)), e.getMessage(), e);
         }
+
+        // published even if the flush failed, so its listeners (such as the quarantine release) don't skip a turn
+        try {
+            applicationEventPublisher.publishEvent(new TransactionOutboxFlushCompletedEvent(this, foundTasks));
+        } catch (Exception e) {
+            log.error("Error in TransactionOutbox flush completion listener: {}", e.getMessage(), e);
+        }
+
+        currentDelay = nextDelay(foundTasks);
+    }
+
+    /**
+     * Same as {@link #flushUntilEmpty()}, counting the tasks claimed if there are metrics.
+     *
+     * @param flushedTasks receives the number of tasks claimed
+     * @return {@code true} if any tasks were found
+     */
+    private boolean flushUntilEmpty(LongAdder flushedTasks) {
+        return (metrics == null)
+                ? flushUntilEmpty()
+                : metrics.countFlushedTasks(flushedTasks, this::flushUntilEmpty);
+    }
+
+    /**
+     * Calls {@link TransactionOutbox#flush()} until it reports there's nothing left to process.
+     *
+     * @return {@code true} if any tasks were found
+     */
+    private boolean flushUntilEmpty() {
+        boolean foundTasks = false;
+        log.trace("Processing TransactionOutbox tasks in background...");
+
+        while (outbox.flush()) {
+            foundTasks = true;
+            log.trace("Processing TransactionOutbox tasks in background...");
+        }
+
+        return foundTasks;
+    }
+
+    /**
+     * Runs {@link #flushUntilEmpty()} in each of {@link #flushThreads} workers and waits for all of them to finish.
+     * Workers never claim the same task twice because tasks are locked before processing.
+     *
+     * @param flushedTasks receives the number of tasks claimed by all workers
+     * @return {@code true} if any worker found tasks
+     */
+    private boolean flushInParallel(LongAdder flushedTasks) {
+        var workers = IntStream.range(0, flushThreads)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> flushUntilEmpty(flushedTasks), flushExecutor))
+                .toList();
+        CompletableFuture.allOf(workers.toArray(CompletableFuture[]::new)).join();
+
+        return workers.stream().anyMatch(CompletableFuture::join);
+    }
+
+    /**
+     * @param foundTasks whether the last invocation found any tasks
+     * @return {@link #minRestartDelay} if tasks were found, otherwise {@link #currentDelay} backed off
+     */
+    private Duration nextDelay(boolean foundTasks) {
+        return foundTasks
+                ? minRestartDelay
+                : backOff(currentDelay);
+    }
+
+    /**
+     * Doubles the delay, not exceeding {@link #restartDelay}.
+     */
+    private Duration backOff(Duration delay) {
+        Duration doubled = delay.multipliedBy(2);
+        return (doubled.compareTo(restartDelay) > 0)
+                ? restartDelay
+                : doubled;
+    }
+
+    private void poll() {
+        try {
+            Thread.sleep(initialDelay);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                // the poller must survive anything, otherwise tasks are never retried until the app restarts
+                try {
+                    retryFailedTasks();
+                } catch (RuntimeException e) {
+                    log.error("Unexpected error in TransactionOutbox background job (will retry in {}): {}",
+                            TimeUtils.humanFormatDuration(currentDelay), e.getMessage(), e);
+                }
+
+                awaitNextInvocation();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.debug("TransactionOutbox background job stopped");
+    }
+
+    /**
+     * Waits for {@link #currentDelay} or until {@link #wakeUp()} is called, but never less than
+     * {@link #minRestartDelay}, so a stream of commits doesn't turn into continuous polling.
+     */
+    private void awaitNextInvocation() throws InterruptedException {
+        Thread.sleep(minRestartDelay);
+        Duration remainingDelay = currentDelay.minus(minRestartDelay);
+
+        if (remainingDelay.isPositive()) {
+            wakeUpSignal.tryAcquire(remainingDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        wakeUpSignal.drainPermits();
     }
 
 }
@@ -0,0 +1,203 @@
+package guru.nicks.commons.outbox;
+
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+import guru.nicks.commons.utils.text.TimeUtils;
+
+import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Deletes outbox rows nobody needs anymore, so they don't slow down claim scans:
+ * <ul>
+ *     <li>tasks blocked longer than {@link TransactionOutboxProperties.Purge#getBlockedRetention()} ago</li>
+ *     <li>processed tasks whose idempotency protection (see
+ *         {@link TransactionOutboxProperties#getRetentionThreshold()}) has expired - the library deletes them too, but
+ *         only one batch per flush</li>
+ * </ul>
+ * Rows are deleted in batches of {@link TransactionOutboxProperties.Purge#getBatchSize()}, each in its own
+ * transaction, with {@link TransactionOutboxProperties.Purge#getPauseBetweenBatches()} between them, so the job never
+ * holds many locks for long. Each batch first selects (without locking) the IDs of eligible rows, narrowed down by the
+ * library's index on {@code (processed, blocked, nextAttemptTime)}, then deletes them by ID, re-checking the
+ * condition. This way only the rows being deleted are locked - a bounded {@code DELETE} with the same condition would
+ * scan (and, on MySQL, lock) many more rows, as the time column of blocked tasks isn't indexed. Runs every
+ * {@link TransactionOutboxProperties.Purge#getInterval()} if that's set.
+ */
+@Component
+@ConditionalOnProperty(prefix = "transaction-outbox.purge", name = "interval")
+@Slf4j
+@RequiredArgsConstructor
+public class TransactionOutboxPurgeJob implements SmartLifecycle {
+
+    private static final PurgeCondition BLOCKED = new PurgeCondition(false, true, "lastAttemptTime");
+    private static final PurgeCondition PROCESSED = new PurgeCondition(true, false, "nextAttemptTime");
+
+    // DI
+    private final SpringTransactionManager outboxTransactionManager;
+    private final TransactionOutboxProperties properties;
+
+    private volatile Thread purgerThread;
+
+    @Override
+    public void start() {
+        log.debug("TransactionOutbox purge job will run every {}",
+                TimeUtils.humanFormatDuration(properties.getPurge().getInterval()));
+
+        purgerThread = Thread.ofPlatform()
+                .name("outbox-purger")
+                .daemon(true)
+                .start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        Thread thread = purgerThread;
+        purgerThread = null;
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return purgerThread != null;
+    }
+
+    /**
+     * Deletes all rows eligible for purging.
+     *
+     * @return number of rows deleted
+     * @throws InterruptedException interrupted while pausing between batches
+     * @throws Exception            DB error
+     */
+    public int purge() throws Exception {
+        Instant now = Instant.now();
+        int deleted = deleteInBatches(BLOCKED, now.minus(properties.getPurge().getBlockedRetention()));
+        deleted += deleteInBatches(PROCESSED, now);
+
+        if (deleted > 0) {
+            log.info("Purged {} outbox rows", deleted);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Deletes rows matching the condition in bounded batches until fewer rows than the batch size are found.
+     *
+     * @param condition which rows to delete
+     * @param cutoff    timestamp cutoff
+     * @return number of rows deleted
+     */
+    private int deleteInBatches(PurgeCondition condition, Instant cutoff) throws Exception {
+        var purge = properties.getPurge();
+        int total = 0;
+
+        while (true) {
+            PurgedBatch batch = outboxTransactionManager.inTransactionReturnsThrows(tx ->
+                    deleteBatch(tx.connection(), condition, cutoff));
+            total += batch.deleted();
+
+            if (batch.found() < purge.getBatchSize()) {
+                return total;
+            }
+
+            Thread.sleep(purge.getPauseBetweenBatches());
+        }
+    }
+
+    /**
+     * Deletes at most {@link TransactionOutboxProperties.Purge#getBatchSize()} rows matching the condition.
+     */
+    private PurgedBatch deleteBatch(Connection connection, PurgeCondition condition, Instant cutoff)
+            throws SQLException {
+        String tableName = OutboxSql.getTableName(properties);
+        String where = "processed = ? AND blocked = ? AND " + condition.timeColumn() + " < ?";
+        Timestamp cutoffTimestamp = Timestamp.from(cutoff);
+        List<String> ids = new ArrayList<>();
+
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM " + tableName + " WHERE " + where)) {
+            // portable LIMIT
+            stmt.setMaxRows(properties.getPurge().getBatchSize());
+            stmt.setBoolean(1, condition.processed());
+            stmt.setBoolean(2, condition.blocked());
+            stmt.setTimestamp(3, cutoffTimestamp);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getString(1));
+                }
+            }
+        }
+
+        if (ids.isEmpty()) {
+            return new PurgedBatch(0, 0);
+        }
+
+        // the condition is checked again, rows may have changed since they were selected
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM " + tableName + " WHERE " + where
+                + " AND id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")")) {
+            stmt.setBoolean(1, condition.processed());
+            stmt.setBoolean(2, condition.blocked());
+            stmt.setTimestamp(3, cutoffTimestamp);
+
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setString(i + 4, ids.get(i));
+            }
+
+            return new PurgedBatch(ids.size(), stmt.executeUpdate());
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(properties.getPurge().getInterval());
+
+                try {
+                    purge();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.error("Failed to purge TransactionOutbox (will retry in {}): {}",
+                            TimeUtils.humanFormatDuration(properties.getPurge().getInterval()), e.getMessage(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.debug("TransactionOutbox purge job stopped");
+    }
+
+    /**
+     * @param processed  required value of {@code processed}
+     * @param blocked    required value of {@code blocked}
+     * @param timeColumn column which must be earlier than the cutoff
+     */
+    private record PurgeCondition(boolean processed, boolean blocked, String timeColumn) {
+    }
+
+    /**
+     * @param found   number of rows selected for deletion
+     * @param deleted number of rows actually deleted
+     */
+    private record PurgedBatch(int found, int deleted) {
+    }
+
+}
@@ -0,0 +1,30 @@
+package guru.nicks.commons.outbox.annotation;
+
+import guru.nicks.commons.outbox.submitter.BulkSubmitter;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a bulk counterpart of an outboxed single-argument method, for example {@code sendAll(List<Msg>)} for
+ * {@code send(Msg)}. Tasks calling the annotated method are then executed in chunks, each chunk as one call of the bulk
+ * method with the arguments of all its tasks. The bulk method must be declared in the same bean and accept a single
+ * {@link java.util.List} (or {@link java.util.Collection}) parameter. If the bulk method fails, the tasks of the chunk
+ * are executed one by one, so side effects it had before failing are repeated.
+ * <p>
+ * Has effect only if {@code transaction-outbox.bulk} is set, see {@link BulkSubmitter}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BulkCounterpart {
+
+    /**
+     * @return name of the bulk method
+     */
+    String value();
+
+}
@@ -0,0 +1,23 @@
+package guru.nicks.commons.outbox.annotation;
+
+import guru.nicks.commons.outbox.OutboxActions;
+import guru.nicks.commons.outbox.persistor.CoalescingPersistor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an outboxed method (one called through a proxy created by {@link OutboxActions}) whose identical calls in the
+ * same transaction - same bean, method, and serialized arguments - are stored as a single task, therefore executed
+ * once. Suits idempotent, state-refreshing methods like "refresh cache for entity X".
+ * <p>
+ * Has effect only if {@code transaction-outbox.coalesceInTransaction} is enabled, see {@link CoalescingPersistor}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CoalesceInTransaction {
+}
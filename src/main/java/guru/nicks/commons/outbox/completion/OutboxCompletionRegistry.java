@@ -0,0 +1,155 @@
+package guru.nicks.commons.outbox.completion;
+
+import guru.nicks.commons.outbox.OutboxActions;
+
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Futures of tasks scheduled with {@link OutboxActions#scheduleTracked(Class, Duration, Consumer)},
+ * completed on the first successful execution of the task in this app. Tasks are matched by the
+ * {@link #MDC_KEY} MDC value captured by the library along with the invocation.
+ * <p>
+ * The registry is bounded: each future is removed once it's completed, or once it has timed out (with
+ * {@link TimeoutException}; the task itself is still retried by the background job). If there are already
+ * {@link #getMaxPending()} futures, new ones fail right away with {@link RejectedExecutionException}, which doesn't
+ * affect scheduling of the task.
+ * <p>
+ * Futures of tasks executed by other apps, or never executed because the scheduling transaction has been rolled back,
+ * always time out.
+ * <p>
+ * Futures are completed (and their dependent actions run) by a separate executor, so callers' actions never delay the
+ * thread which executed the task, nor the shared timer thread.
+ */
+@Slf4j
+public class OutboxCompletionRegistry {
+
+    /**
+     * MDC key holding the ID of a tracked task while it's being scheduled and executed.
+     */
+    public static final String MDC_KEY = "outboxCompletionId";
+
+    public static final int DEFAULT_MAX_PENDING = 10_000;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    @Getter
+    private final int maxPending;
+    @Getter
+    private final Duration defaultTimeout;
+
+    private final Executor completionExecutor;
+    private final Map<String, CompletableFuture<Void>> futures = new ConcurrentHashMap<>();
+
+    /**
+     * Reserved slots, may exceed {@link #futures} size for a moment.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * @param maxPending     max. number of futures waiting for completion
+     * @param defaultTimeout how long futures wait for completion unless another timeout is passed explicitly
+     */
+    public OutboxCompletionRegistry(int maxPending, Duration defaultTimeout) {
+        this(maxPending, defaultTimeout, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param maxPending         max. number of futures waiting for completion
+     * @param defaultTimeout     how long futures wait for completion unless another timeout is passed explicitly
+     * @param completionExecutor completes futures and therefore runs their dependent actions
+     */
+    public OutboxCompletionRegistry(int maxPending, Duration defaultTimeout, Executor completionExecutor) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Max. pending completions must be positive");
+        }
+
+        this.maxPending = maxPending;
+        this.defaultTimeout = defaultTimeout;
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * Creates a future which completes once {@link #complete(TransactionOutboxEntry)} is called for a task whose MDC
+     * holds the ID passed to {@code idConsumer}.
+     *
+     * @param timeout    how long to wait for completion
+     * @param idConsumer receives the completion ID to put in MDC while the task is being scheduled; not called if the
+     *                   registry is full
+     * @return future completed on success, or exceptionally on timeout or if the registry is full; cancelling it
+     *         removes it from the registry
+     */
+    public CompletableFuture<Void> register(Duration timeout, Consumer<String> idConsumer) {
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Too many outbox tasks awaiting completion: " + maxPending));
+        }
+
+        String id = UUID.randomUUID().toString();
+        var future = new CompletableFuture<Void>();
+        futures.put(id, future);
+
+        // covers timeouts, success, and cancellation by the caller
+        future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((result, e) -> {
+                    if (futures.remove(id, future)) {
+                        pendingCount.decrementAndGet();
+                    }
+                });
+
+        // the caller's actions run in the executor, not in the thread completing the internal future
+        CompletableFuture<Void> callerFuture = future.whenCompleteAsync((result, e) -> {
+        }, completionExecutor);
+        callerFuture.whenComplete((result, e) -> {
+            if (callerFuture.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+
+        idConsumer.accept(id);
+        return callerFuture;
+    }
+
+    /**
+     * Completes the future of the given task, if it's tracked by this registry. Called on each successful execution.
+     */
+    public void complete(TransactionOutboxEntry task) {
+        Map<String, String> mdc = task.getInvocation().getMdc();
+        String id = (mdc == null)
+                ? null
+                : mdc.get(MDC_KEY);
+
+        if (id == null) {
+            return;
+        }
+
+        CompletableFuture<Void> future = futures.get(id);
+
+        if (future != null) {
+            log.trace("Completing tracked outbox task '{}'", task.getId());
+            future.complete(null);
+        }
+    }
+
+    /**
+     * @return number of futures waiting for completion
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+}
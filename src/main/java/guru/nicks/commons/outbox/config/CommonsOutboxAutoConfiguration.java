@@ -1,28 +1,64 @@
 package guru.nicks.commons.outbox.config;
 
+import guru.nicks.commons.outbox.OutboxActions;
 import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
+import guru.nicks.commons.outbox.domain.ExecutionMode;
 import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
-import guru.nicks.commons.outbox.domain.TransactionOutboxTaskBlockedEvent;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+import guru.nicks.commons.outbox.metrics.MeteredSubmitter;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.partition.OutboxNodeMembership;
+import guru.nicks.commons.outbox.partition.PartitionedDialect;
+import guru.nicks.commons.outbox.persistor.CapabilityRoutingPersistor;
+import guru.nicks.commons.outbox.persistor.CoalescingPersistor;
+import guru.nicks.commons.outbox.persistor.IdempotencyCachePersistor;
+import guru.nicks.commons.outbox.persistor.RetryBackoffPersistor;
+import guru.nicks.commons.outbox.serializer.CompressingInvocationSerializer;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+import guru.nicks.commons.outbox.submitter.BulkSubmitter;
+import guru.nicks.commons.outbox.submitter.VirtualThreadSubmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gruelbox.transactionoutbox.DefaultPersistor;
 import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
 import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Submitter;
 import com.gruelbox.transactionoutbox.TransactionOutbox;
-import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
-import com.gruelbox.transactionoutbox.TransactionOutboxListener;
 import com.gruelbox.transactionoutbox.jackson.JacksonInvocationSerializer;
 import com.gruelbox.transactionoutbox.jackson.TransactionOutboxJacksonModule;
 import com.gruelbox.transactionoutbox.spring.SpringInstantiator;
 import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * Configures {@link TransactionOutbox} and its {@link Persistor}. This works with JPA transactions only (not with
@@ -31,12 +67,20 @@ import org.springframework.core.convert.converter.Converter;
  * WARNING: that bean is the same in each app, and the background job ({@link TransactionOutboxBackgroundJob}) is the
  * same too. See crucial comments in {@link TransactionOutboxBackgroundJob}.
  */
-@AutoConfiguration
+// MeterRegistry beans must be known before OutboxMetrics bean is considered
+@AutoConfiguration(afterName = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration"
+})
 @EnableConfigurationProperties(TransactionOutboxProperties.class)
 @Import({SpringInstantiator.class, SpringTransactionManager.class})
 @Slf4j
 public class CommonsOutboxAutoConfiguration {
 
+    /**
+     * Library default.
+     */
+    private static final Duration DEFAULT_RETENTION_THRESHOLD = Duration.ofDays(7);
+
     /**
      * Creates {@link TransactionOutbox} bean if it's not already present.
      */
@@ -48,61 +92,276 @@ public class CommonsOutboxAutoConfiguration {
             // doesn't call class constructor, rather retrieves beans from app context
             SpringInstantiator outboxInstantiator,
             Persistor outboxPersistor,
-            ApplicationEventPublisher applicationEventPublisher,
-            TransactionOutboxProperties properties) {
+            TransactionOutboxTaskListener outboxTaskListener,
+            TransactionOutboxProperties properties,
+            Submitter outboxSubmitter) {
         log.debug("Building {} bean using properties: {}", TransactionOutbox.class.getSimpleName(), properties);
 
-        return TransactionOutbox.builder()
+        var builder = TransactionOutbox.builder()
                 .transactionManager(outboxTransactionManager)
                 .instantiator(outboxInstantiator)
                 .persistor(outboxPersistor)
                 .attemptFrequency(properties.getPerTaskRetryDelay())
                 .blockAfterAttempts(properties.getBlockAfterAttempts())
-                .listener(new TransactionOutboxListener() {
-                    @Override
-                    public void success(TransactionOutboxEntry task) {
-                        log.info("Outboxed task succeeded: {}", task);
-                    }
-
-                    @Override
-                    public void blocked(TransactionOutboxEntry task, Throwable cause) {
-                        if (!properties.isUnblockBlockedTasks()) {
-                            log.error("Outboxed task '{}' blocked after too many retry failures: {}",
-                                    task.getId(), cause.toString());
-                        }
-
-                        applicationEventPublisher.publishEvent(new TransactionOutboxTaskBlockedEvent(task));
-                    }
-                })
                 //.initializeImmediately(false)
-                .build();
+                .listener(outboxTaskListener);
+
+        if (properties.getFlushBatchSize() != null) {
+            builder.flushBatchSize(properties.getFlushBatchSize());
+        }
+
+        if (properties.getRetentionThreshold() != null) {
+            builder.retentionThreshold(properties.getRetentionThreshold());
+        }
+
+        builder.submitter(outboxSubmitter);
+        return builder.build();
+    }
+
+    /**
+     * Creates {@link Submitter} bean (used by {@link TransactionOutbox}) if it's not already present. With
+     * {@code transaction-outbox.bulk}, it's a {@link BulkSubmitter}, closed by Spring on shutdown. If there's an
+     * {@link OutboxMetrics} bean, the submitter is wrapped in {@link MeteredSubmitter} (outermost, so tasks are
+     * reported once each, whether they're executed in chunks or not).
+     *
+     * @throws IllegalArgumentException {@code transaction-outbox.bulk.linger} isn't shorter than
+     *                                  {@code transaction-outbox.perTaskRetryDelay}
+     */
+    @ConditionalOnMissingBean(Submitter.class)
+    @Bean
+    public Submitter outboxSubmitter(TransactionOutboxProperties properties,
+            SpringTransactionManager outboxTransactionManager,
+            SpringInstantiator outboxInstantiator,
+            Persistor outboxPersistor,
+            TransactionOutboxTaskListener outboxTaskListener,
+            @Qualifier("outboxDispatchExecutor") ObjectProvider<ExecutorService> outboxDispatchExecutor,
+            ObjectProvider<OutboxMetrics> outboxMetrics) {
+        OutboxMetrics metrics = outboxMetrics.getIfAvailable();
+        Submitter submitter = createSubmitter(properties, outboxDispatchExecutor);
+        TransactionOutboxProperties.Bulk bulk = properties.getBulk();
+
+        if (bulk != null) {
+            submitter = new BulkSubmitter(submitter, outboxInstantiator, outboxTransactionManager, outboxPersistor,
+                    outboxTaskListener, metrics, bulk.getChunkSize(), bulk.getLinger(),
+                    properties.getPerTaskRetryDelay(),
+                    Objects.requireNonNullElse(properties.getRetentionThreshold(), DEFAULT_RETENTION_THRESHOLD));
+        }
+
+        return (metrics == null)
+                ? submitter
+                : new MeteredSubmitter(submitter, metrics);
+    }
+
+    /**
+     * Creates a submitter executing tasks according to {@code transaction-outbox.executionMode}. Tasks rejected by a
+     * saturated executor (or exceeding {@code transaction-outbox.maxConcurrentTasks}) are picked up by the background
+     * job later.
+     */
+    private Submitter createSubmitter(TransactionOutboxProperties properties,
+            ObjectProvider<ExecutorService> outboxDispatchExecutor) {
+        if (properties.getExecutionMode() == ExecutionMode.VIRTUAL) {
+            if (properties.getDispatch() != null) {
+                log.warn("Ignoring transaction-outbox.dispatch because execution mode is {}", ExecutionMode.VIRTUAL);
+            }
+
+            return new VirtualThreadSubmitter(Objects.requireNonNullElse(properties.getMaxConcurrentTasks(),
+                    VirtualThreadSubmitter.DEFAULT_MAX_CONCURRENT_TASKS));
+        }
+
+        ExecutorService dispatchExecutor = outboxDispatchExecutor.getIfAvailable();
+        return Submitter.withExecutor((dispatchExecutor != null)
+                ? dispatchExecutor
+                // library default
+                : ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates {@link TransactionOutboxTaskListener} bean if it's not already present.
+     */
+    @ConditionalOnMissingBean(TransactionOutboxTaskListener.class)
+    @Bean
+    public TransactionOutboxTaskListener outboxTaskListener(TransactionOutboxProperties properties,
+            ApplicationEventPublisher applicationEventPublisher, ObjectProvider<OutboxMetrics> outboxMetrics,
+            ObjectProvider<OutboxCompletionRegistry> outboxCompletionRegistry) {
+        return new TransactionOutboxTaskListener(properties, applicationEventPublisher,
+                outboxMetrics.getIfAvailable(), outboxCompletionRegistry.getIfAvailable());
+    }
+
+    /**
+     * Creates {@link OutboxCompletionRegistry} bean (needed for {@link OutboxActions#scheduleTracked}) if it's not
+     * already present. The limits come from {@code transaction-outbox.completion}.
+     */
+    @ConditionalOnMissingBean(OutboxCompletionRegistry.class)
+    @Bean
+    public OutboxCompletionRegistry outboxCompletionRegistry(TransactionOutboxProperties properties) {
+        TransactionOutboxProperties.Completion completion = properties.getCompletion();
+
+        return (completion == null)
+                ? new OutboxCompletionRegistry(OutboxCompletionRegistry.DEFAULT_MAX_PENDING,
+                        OutboxCompletionRegistry.DEFAULT_TIMEOUT)
+                : new OutboxCompletionRegistry(completion.getMaxPending(), completion.getDefaultTimeout());
+    }
+
+    /**
+     * Creates {@link OutboxMetrics} bean if there's a {@link MeterRegistry} bean.
+     */
+    @ConditionalOnBean(MeterRegistry.class)
+    @ConditionalOnMissingBean(OutboxMetrics.class)
+    @Bean
+    public OutboxMetrics outboxMetrics(MeterRegistry meterRegistry) {
+        return new OutboxMetrics(meterRegistry);
+    }
+
+    /**
+     * Creates {@link OutboxNodeMembership} bean if {@code transaction-outbox.partitioning.heartbeatInterval} is set.
+     */
+    @ConditionalOnProperty(prefix = "transaction-outbox.partitioning", name = "heartbeatInterval")
+    @ConditionalOnMissingBean(OutboxNodeMembership.class)
+    @Bean
+    public OutboxNodeMembership outboxNodeMembership(SpringTransactionManager outboxTransactionManager,
+            TransactionOutboxProperties properties) {
+        // fail fast on unsupported dialects
+        OutboxSql.createNodesTableDdl(properties.getDialect(), OutboxSql.DEFAULT_TABLE_NAME);
+        return new OutboxNodeMembership(outboxTransactionManager, properties);
+    }
+
+    /**
+     * Creates a bounded executor for running tasks right after commit if {@code transaction-outbox.dispatch.threads} is
+     * set. If the queue is full, the task is rejected, and the library leaves it to the background job. If there's a
+     * {@link MeterRegistry} bean, the executor reports the standard {@code executor.*} metrics tagged with
+     * {@code name=outbox.dispatch}.
+     */
+    @ConditionalOnProperty(prefix = "transaction-outbox.dispatch", name = "threads")
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService outboxDispatchExecutor(TransactionOutboxProperties properties,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        TransactionOutboxProperties.Dispatch dispatch = properties.getDispatch();
+        log.debug("Building outbox dispatch executor: {}", dispatch);
+
+        ThreadFactory threadFactory = dispatch.isVirtualThreads()
+                ? Thread.ofVirtual().name("outbox-dispatch-", 0).factory()
+                : Thread.ofPlatform().name("outbox-dispatch-", 0).daemon(true).factory();
+
+        BlockingQueue<Runnable> queue = (dispatch.getQueueCapacity() > 0)
+                ? new ArrayBlockingQueue<>(dispatch.getQueueCapacity())
+                : new SynchronousQueue<>();
+
+        var executor = new ThreadPoolExecutor(dispatch.getThreads(), dispatch.getThreads(),
+                1, TimeUnit.MINUTES, queue, threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        // idle threads don't live forever
+        executor.allowCoreThreadTimeOut(true);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        return (registry == null)
+                ? executor
+                : ExecutorServiceMetrics.monitor(registry, executor, "outbox.dispatch");
     }
 
     /**
      * Creates {@link Persistor} bean if it's not already present. The dialect defaults to {@link Dialect#POSTGRESQL_9}
-     * but can be overridden via the {@code transaction-outbox.dialect} property.
+     * but can be overridden via the {@code transaction-outbox.dialect} property, the table name - via
+     * {@code transaction-outbox.tableName} (the library doesn't migrate such tables). The invocation serializer is chosen
+     * by {@code transaction-outbox.useJackson}, and wrapped in {@link CompressingInvocationSerializer} if
+     * {@code transaction-outbox.compressInvocationsLargerThan} is set. With {@code transaction-outbox.capabilityRouting}, the
+     * persistor is wrapped in {@link CapabilityRoutingPersistor}, with {@code transaction-outbox.coalesceInTransaction} -
+     * in {@link CoalescingPersistor}, with {@code transaction-outbox.idempotencyCache} - in
+     * {@link IdempotencyCachePersistor}. With {@code transaction-outbox.partitioning}, the dialect is wrapped in
+     * {@link PartitionedDialect}.
+     *
+     * @throws IllegalStateException both {@code transaction-outbox.partitioning} and
+     *                               {@code transaction-outbox.capabilityRouting} are enabled
      */
     @ConditionalOnMissingBean(Persistor.class)
     @Bean
     public Persistor persistor(TransactionOutboxProperties properties,
-            Converter<String, Dialect> outboxDialectConverter, ObjectMapper objectMapper) {
+            Converter<String, Dialect> outboxDialectConverter, ObjectMapper objectMapper, BeanFactory beanFactory,
+            ObjectProvider<OutboxNodeMembership> outboxNodeMembership, ObjectProvider<OutboxMetrics> outboxMetrics) {
         // can't print ALL properties - they may contain sensitive data
         log.debug("Building {} bean using SQL dialect {}", Persistor.class.getSimpleName(), properties.getDialect());
 
+        OutboxNodeMembership membership = outboxNodeMembership.getIfAvailable();
+
+        // tasks pushed back by the only app claiming their bucket would never reach apps able to execute them
+        if ((membership != null) && properties.isCapabilityRouting()) {
+            throw new IllegalStateException("transaction-outbox.partitioning and transaction-outbox.capabilityRouting "
+                    + "can't be enabled together");
+        }
+
+        Dialect dialect = outboxDialectConverter.convert(properties.getDialect());
+
         var builder = DefaultPersistor
                 .builder()
-                .dialect(outboxDialectConverter.convert(properties.getDialect()));
+                .dialect((membership == null)
+                        ? dialect
+                        : new PartitionedDialect(dialect, membership));
+
+        // the library's migrations always create TXNO_OUTBOX, whatever the table name is
+        if (properties.getTableName() != null) {
+            builder.tableName(properties.getTableName())
+                    .migrate(false);
+        }
 
-        if (properties.isUseJackson()) {
-            builder.serializer(JacksonInvocationSerializer
-                    .builder()
-                    .mapper(objectMapper)
-                    .build());
+        InvocationSerializer serializer = properties.isUseJackson()
+                ? createJacksonSerializer(objectMapper)
+                : InvocationSerializer.createDefaultJsonSerializer();
+
+        if (properties.getCompressInvocationsLargerThan() != null) {
+            long threshold = properties.getCompressInvocationsLargerThan().toBytes();
+            serializer = new CompressingInvocationSerializer(serializer, (int) Math.min(threshold, Integer.MAX_VALUE));
         }
 
+        builder.serializer(serializer);
+
         // add serializers for Invocation and TransactionOutboxEntry in case they need to be sent somewhere
         objectMapper.registerModule(new TransactionOutboxJacksonModule());
-        return builder.build();
+        Persistor persistor = builder.build();
+
+        if ((properties.getRetryBackoff() != null) || !CollectionUtils.isEmpty(properties.getRetryBackoffOverrides())) {
+            persistor = new RetryBackoffPersistor(persistor, properties.getPerTaskRetryDelay(),
+                    // no growth by default
+                    Objects.requireNonNullElseGet(properties.getRetryBackoff(), () ->
+                            TransactionOutboxProperties.RetryBackoff.builder()
+                                    .multiplier(1.0)
+                                    .maxDelay(properties.getPerTaskRetryDelay())
+                                    .build()),
+                    Objects.requireNonNullElseGet(properties.getRetryBackoffOverrides(), Map::of));
+        }
+
+        if (properties.isCapabilityRouting()) {
+            Predicate<String> canExecute = CollectionUtils.isEmpty(properties.getExecutableBeans())
+                    // bean names are what SpringInstantiator stores in invocations
+                    ? beanFactory::containsBean
+                    : properties.getExecutableBeans()::contains;
+            // same as the lease the library takes when claiming a task
+            persistor = new CapabilityRoutingPersistor(persistor, canExecute, properties.getPerTaskRetryDelay());
+        }
+
+        if (properties.isCoalesceInTransaction()) {
+            persistor = new CoalescingPersistor(persistor, serializer, beanFactory);
+        }
+
+        TransactionOutboxProperties.IdempotencyCache idempotencyCache = properties.getIdempotencyCache();
+
+        // outermost, so duplicates don't reach any other persistor
+        if (idempotencyCache != null) {
+            Duration retentionThreshold = Objects.requireNonNullElse(properties.getRetentionThreshold(),
+                    DEFAULT_RETENTION_THRESHOLD);
+            Duration ttl = (idempotencyCache.getTtl().compareTo(retentionThreshold) > 0)
+                    ? retentionThreshold
+                    : idempotencyCache.getTtl();
+
+            persistor = new IdempotencyCachePersistor(persistor, idempotencyCache.getMaxSize(), ttl,
+                    outboxMetrics.getIfAvailable());
+        }
+
+        return persistor;
+    }
+
+    private InvocationSerializer createJacksonSerializer(ObjectMapper objectMapper) {
+        return JacksonInvocationSerializer
+                .builder()
+                .mapper(objectMapper)
+                .build();
     }
 
     /**
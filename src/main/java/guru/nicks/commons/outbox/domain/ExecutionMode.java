@@ -0,0 +1,21 @@
+package guru.nicks.commons.outbox.domain;
+
+import guru.nicks.commons.outbox.submitter.VirtualThreadSubmitter;
+
+/**
+ * How tasks are executed, both right after commit and by background job flushes.
+ */
+public enum ExecutionMode {
+
+    /**
+     * On platform threads of {@link TransactionOutboxProperties#getDispatch()} executor, or of the library default
+     * ({@code ForkJoinPool.commonPool()}).
+     */
+    PLATFORM,
+
+    /**
+     * Each task on its own virtual thread, see {@link VirtualThreadSubmitter}.
+     */
+    VIRTUAL
+
+}
@@ -0,0 +1,26 @@
+package guru.nicks.commons.outbox.domain;
+
+import guru.nicks.commons.outbox.sql.OutboxIndexProvisioner;
+
+/**
+ * What {@link OutboxIndexProvisioner} does on startup about the index serving claim queries.
+ */
+public enum IndexProvisioning {
+
+    /**
+     * Nothing.
+     */
+    OFF,
+
+    /**
+     * Logs a warning (with the DDL to run) if the index is missing.
+     */
+    CHECK,
+
+    /**
+     * Creates the index if it's missing, without blocking writes where the DB supports that, otherwise only if the
+     * table is small (see {@link OutboxIndexProvisioner} for details).
+     */
+    CREATE
+
+}
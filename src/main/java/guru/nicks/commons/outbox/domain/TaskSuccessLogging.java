@@ -0,0 +1,32 @@
+package guru.nicks.commons.outbox.domain;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+
+/**
+ * How successfully executed tasks are logged. In all modes except {@link #OFF}, full task details (including the
+ * serialized invocation) are logged at DEBUG level only - INFO messages contain just the task ID, bean name, and method
+ * name, which are cheap to format.
+ */
+public enum TaskSuccessLogging {
+
+    /**
+     * Each successful task is logged.
+     */
+    ALL,
+
+    /**
+     * Every N-th successful task is logged, see {@link TransactionOutboxProperties#getSuccessLogSampleRate()}.
+     */
+    SAMPLED,
+
+    /**
+     * The number of successful tasks is logged once per {@link TransactionOutboxBackgroundJob} invocation.
+     */
+    SUMMARY,
+
+    /**
+     * Successful tasks aren't logged.
+     */
+    OFF
+
+}
@@ -0,0 +1,29 @@
+package guru.nicks.commons.outbox.domain;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.Value;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link TransactionOutboxBackgroundJob} after each invocation, no matter if it succeeded. Listeners are
+ * called synchronously, and their errors are logged without affecting the job.
+ */
+@Value
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public class TransactionOutboxFlushCompletedEvent extends ApplicationEvent {
+
+    /**
+     * Whether any tasks were found during the invocation.
+     */
+    boolean tasksFound;
+
+    public TransactionOutboxFlushCompletedEvent(TransactionOutboxBackgroundJob source, boolean tasksFound) {
+        super(source);
+        this.tasksFound = tasksFound;
+    }
+
+}
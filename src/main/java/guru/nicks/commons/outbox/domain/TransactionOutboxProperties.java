@@ -1,19 +1,35 @@
 package guru.nicks.commons.outbox.domain;
 
+import guru.nicks.commons.outbox.OutboxActions;
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.TransactionOutboxPurgeJob;
+import guru.nicks.commons.outbox.annotation.BulkCounterpart;
+import guru.nicks.commons.outbox.annotation.CoalesceInTransaction;
+import guru.nicks.commons.outbox.listener.TransactionOutboxNotificationListener;
 import guru.nicks.commons.outbox.listener.TransactionOutboxTaskBlockedListener;
+import guru.nicks.commons.outbox.partition.OutboxNodeMembership;
+import guru.nicks.commons.outbox.persistor.CoalescingPersistor;
+import guru.nicks.commons.outbox.persistor.IdempotencyCachePersistor;
+import guru.nicks.commons.outbox.submitter.BulkSubmitter;
+import guru.nicks.commons.outbox.submitter.VirtualThreadSubmitter;
 
 import com.gruelbox.transactionoutbox.Dialect;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.NonFinal;
 import org.springframework.boot.context.properties.ConfigurationProperties;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
 
 @ConfigurationProperties(prefix = "transaction-outbox")
 @Validated
@@ -32,16 +48,63 @@ public class TransactionOutboxProperties {
     /**
      * For flexible object serialization (any argument types in proxied methods, with polymorphism etc.) - see <a
      * href="https://github.com/gruelbox/transaction-outbox/blob/better-spring-example/README.md#flexible-serialization-beta"
-     * >docs</a>.
+     * >docs</a>. To make rows smaller, see {@link #getCompressInvocationsLargerThan()}.
      */
     boolean useJackson;
 
+    /**
+     * Outbox table name, defaults to the library's {@code TXNO_OUTBOX}. Apps (or groups of apps) with different table
+     * names don't see each other's tasks, so their claim queries scan and lock only their own rows.
+     * <p>
+     * The library's migrations create and upgrade {@code TXNO_OUTBOX} only, therefore they're disabled for custom
+     * tables: such a table must be created (and upgraded along with the library) by the app itself, with the same
+     * columns and indexes as the library's migrations give {@code TXNO_OUTBOX} for the dialect in use.
+     * <p>
+     * <b>WARNING:</b> tasks are stored in the table of the app scheduling them, therefore only apps sharing that table
+     * can execute them.
+     */
+    @Pattern(regexp = "[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?")
+    String tableName;
+
+    /**
+     * What to do on startup if the outbox table lacks the index serving claim queries, defaults to
+     * {@link IndexProvisioning#CHECK}.
+     */
+    IndexProvisioning indexProvisioning;
+
+    /**
+     * If set, serialized invocations larger than this (in UTF-8) are stored Deflate-compressed. Rows written before
+     * this setting was enabled are still readable.
+     */
+    DataSize compressInvocationsLargerThan;
+
+    /**
+     * If true, the app claims only tasks referring to beans it has (or to {@link #getExecutableBeans()}), leaving the
+     * rest to other apps sharing the outbox table, instead of failing them and burning their attempts. Tasks of other
+     * apps selected by the claim query are pushed back by {@link #getPerTaskRetryDelay()}, so the owning apps may see
+     * them that much later.
+     */
+    boolean capabilityRouting;
+
+    /**
+     * For {@link #isCapabilityRouting()}: names of beans whose tasks this app executes. If not set, all beans present
+     * in the app context are considered.
+     */
+    Set<String> executableBeans;
+
     /**
      * If true, {@link TransactionOutboxTaskBlockedListener} is called once a task has been blocked, thus retries last
      * forever.
      */
     boolean unblockBlockedTasks;
 
+    /**
+     * If set along with {@link #isUnblockBlockedTasks()}, blocked tasks are unblocked after a cooldown rather than
+     * immediately, so permanently failing tasks don't turn into a tight unblock-fail-block loop.
+     */
+    @Valid
+    Quarantine quarantine;
+
     /**
      * Max. number of attempts per task.
      *
@@ -52,23 +115,342 @@ public class TransactionOutboxProperties {
     Integer blockAfterAttempts;
 
     /**
-     * Delay between the first background job invocation ({@link Scheduled#initialDelayString()}).
+     * Delay before the first background job invocation.
      */
     @NotNull
     Duration backgroundJobInitialDelay;
 
     /**
-     * Delay between periodic background job invocations ({@link Scheduled#fixedDelayString()}). No matter how long the
-     * job takes (it retries all tasks whose {@link #getPerTaskRetryDelay()} has already expired), the next invocation
-     * will be delayed by the specified amount of time.
+     * Max. delay between periodic background job invocations. No matter how long the job takes (it retries all tasks
+     * whose {@link #getPerTaskRetryDelay()} has already expired), the next invocation will be delayed by at most the
+     * specified amount of time.
+     * <p>
+     * While the job finds nothing to do, the delay grows exponentially from {@link #getBackgroundJobMinRestartDelay()}
+     * up to this value. It drops back to the minimum as soon as tasks are found or a transaction scheduling a task is
+     * committed in this app.
      */
     @NotNull
     Duration backgroundJobRestartDelay;
 
     /**
-     * Per-task interval before it can be retried - checked by the background job on each run for each task.
+     * {@link Dialect#POSTGRESQL_9} only: if true, inserting tasks into the outbox table fires a PostgreSQL
+     * notification which wakes up {@link TransactionOutboxBackgroundJob} in all apps (see
+     * {@link TransactionOutboxNotificationListener}), so tasks are picked up in
+     * {@link #getBackgroundJobMinRestartDelay()} rather than in {@link #getBackgroundJobRestartDelay()}. The latter can
+     * then be much longer. Each app holds one pooled DB connection for listening.
+     */
+    boolean notifyWakeUp;
+
+    /**
+     * Min. delay between periodic background job invocations, even if they're triggered by commits scheduling new
+     * tasks. Defaults to {@link #getBackgroundJobRestartDelay()}, which means fixed-delay polling.
+     */
+    Duration backgroundJobMinRestartDelay;
+
+    /**
+     * Per-task interval before it can be retried - checked by the background job on each run for each task. With
+     * {@link #getRetryBackoff()}, this is the delay before the first retry, growing for subsequent ones.
      */
     @NotNull
     Duration perTaskRetryDelay;
 
+    /**
+     * How long processed tasks scheduled with a unique request ID are retained to reject duplicates (the library
+     * default is 7 days if not set).
+     */
+    Duration retentionThreshold;
+
+    /**
+     * If true, identical calls of methods annotated with {@link CoalesceInTransaction} made in the same transaction are
+     * stored as a single task, see {@link CoalescingPersistor}.
+     */
+    boolean coalesceInTransaction;
+
+    /**
+     * If set, unique request IDs of tasks recently scheduled by this app are cached, and duplicates are rejected
+     * without a DB round trip, see {@link IdempotencyCachePersistor}.
+     */
+    @Valid
+    IdempotencyCache idempotencyCache;
+
+    /**
+     * If set, the delay between task retries grows exponentially with the number of failed attempts.
+     */
+    @Valid
+    RetryBackoff retryBackoff;
+
+    /**
+     * Overrides {@link #getRetryBackoff()} for particular beans (keys are bean names). Applied even if
+     * {@link #getRetryBackoff()} isn't set.
+     */
+    @Valid
+    Map<String, RetryBackoff> retryBackoffOverrides;
+
+    /**
+     * Number of flush workers per node (defaults to 1). Each worker claims and executes its own batches of tasks in
+     * parallel with the others, which is safe because tasks are locked with {@code SELECT FOR UPDATE SKIP LOCKED}
+     * before processing. Makes sense when there's a large backlog and enough DB connections to serve all the workers.
+     */
+    @Min(1)
+    Integer flushThreads;
+
+    /**
+     * Max. number of due tasks claimed by a single {@code SELECT FOR UPDATE} on each flush (the library default is 4096
+     * if not set). Larger batches mean fewer round trips when the backlog is large, smaller ones mean shorter locks and
+     * fairer distribution of tasks between {@link #getFlushThreads() flush workers} and apps.
+     */
+    @Min(1)
+    Integer flushBatchSize;
+
+    /**
+     * How successfully executed tasks are logged, defaults to {@link TaskSuccessLogging#ALL}.
+     */
+    TaskSuccessLogging successLogging;
+
+    /**
+     * For {@link TaskSuccessLogging#SAMPLED}: log every N-th successful task (defaults to 100).
+     */
+    @Min(1)
+    Integer successLogSampleRate;
+
+    /**
+     * Executor running tasks right after the transaction scheduling them has been committed. If not set, the library
+     * default ({@code ForkJoinPool.commonPool()}) is used.
+     */
+    @Valid
+    Dispatch dispatch;
+
+    /**
+     * If set, tasks calling methods annotated with {@link BulkCounterpart} are executed in chunks, see
+     * {@link BulkSubmitter}.
+     */
+    @Valid
+    Bulk bulk;
+
+    /**
+     * How tasks are executed, defaults to {@link ExecutionMode#PLATFORM}. With {@link ExecutionMode#VIRTUAL},
+     * {@link #getDispatch()} is ignored.
+     */
+    ExecutionMode executionMode;
+
+    /**
+     * For {@link ExecutionMode#VIRTUAL}: max. number of tasks executed at the same time by this app (defaults to 1000).
+     * Tasks exceeding the cap are left to the background job, see {@link VirtualThreadSubmitter}.
+     */
+    @Min(1)
+    Integer maxConcurrentTasks;
+
+    /**
+     * Limits of {@link OutboxActions#scheduleTracked}. If not set, up to 10000 futures wait for completion for up to
+     * 30 seconds by default.
+     */
+    @Valid
+    Completion completion;
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class RetryBackoff {
+
+        /**
+         * Each subsequent retry delay is this many times longer than the previous one.
+         */
+        @DecimalMin("1.0")
+        @NotNull
+        Double multiplier;
+
+        /**
+         * Max. delay between retries.
+         */
+        @NotNull
+        Duration maxDelay;
+
+        /**
+         * Randomize each delay between {@link TransactionOutboxProperties#getPerTaskRetryDelay()} and the computed
+         * one, so tasks that failed at the same time (for example, due to an unavailable dependency) don't retry in
+         * lockstep.
+         */
+        boolean jitter;
+
+    }
+
+    /**
+     * If set, apps split due tasks between themselves instead of all of them scanning the same rows, see
+     * {@link OutboxNodeMembership}. Supported for {@link Dialect#POSTGRESQL_9}, {@link Dialect#MY_SQL_5},
+     * {@link Dialect#MY_SQL_8}, and {@link Dialect#H2}. Can't be combined with {@link #isCapabilityRouting()}. Claim
+     * queries need an index containing task IDs, see {@link #getIndexProvisioning()}.
+     */
+    @Valid
+    Partitioning partitioning;
+
+    /**
+     * If set, {@link TransactionOutboxPurgeJob} deletes outbox rows nobody needs anymore.
+     */
+    @Valid
+    Purge purge;
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class IdempotencyCache {
+
+        /**
+         * Max. number of unique request IDs remembered.
+         */
+        @Min(1)
+        @NotNull
+        Integer maxSize;
+
+        /**
+         * How long unique request IDs are remembered. Capped by
+         * {@link TransactionOutboxProperties#getRetentionThreshold()}, because the DB accepts the same ID again once
+         * the processed task has been deleted.
+         */
+        @NotNull
+        Duration ttl;
+
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Quarantine {
+
+        /**
+         * Cooldown before a task blocked for the first time is unblocked. Doubles each time the same task is blocked
+         * again.
+         */
+        @NotNull
+        Duration initialCooldown;
+
+        /**
+         * Max. cooldown.
+         */
+        @NotNull
+        Duration maxCooldown;
+
+        /**
+         * Max. number of tasks unblocked after each background job invocation (all of them in one transaction).
+         */
+        @Min(1)
+        @NotNull
+        Integer maxUnblocksPerFlush;
+
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Partitioning {
+
+        /**
+         * How often each app records its heartbeat and recomputes its share of tasks.
+         */
+        @NotNull
+        Duration heartbeatInterval;
+
+        /**
+         * Apps whose last heartbeat is older than this are considered gone, and their tasks are redistributed. Should
+         * be several times longer than {@link #getHeartbeatInterval()}.
+         */
+        @NotNull
+        Duration nodeTimeout;
+
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Purge {
+
+        /**
+         * Delay between purge job runs.
+         */
+        @NotNull
+        Duration interval;
+
+        /**
+         * Blocked tasks whose last attempt was longer ago than this are deleted. Should be longer than
+         * {@link Quarantine#getMaxCooldown()}, otherwise quarantined tasks may be deleted before being unblocked.
+         */
+        @NotNull
+        Duration blockedRetention;
+
+        /**
+         * Max. number of rows deleted in one transaction.
+         */
+        @Min(1)
+        @NotNull
+        Integer batchSize;
+
+        /**
+         * Pause between deleting batches, so the purge doesn't compete with claim queries for long.
+         */
+        @NotNull
+        Duration pauseBetweenBatches;
+
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Bulk {
+
+        /**
+         * Max. number of tasks executed by one bulk call.
+         */
+        @Min(1)
+        @NotNull
+        Integer chunkSize;
+
+        /**
+         * Max. time to wait for more tasks before executing an incomplete chunk. Adds up to the latency of each task.
+         * Must be shorter than {@link TransactionOutboxProperties#getPerTaskRetryDelay()}, which is how long buffered
+         * tasks stay claimed by this app.
+         */
+        @NotNull
+        Duration linger;
+
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Completion {
+
+        /**
+         * Max. number of futures waiting for completion. Once reached, new futures fail right away (tasks are still
+         * scheduled).
+         */
+        @Min(1)
+        @NotNull
+        Integer maxPending;
+
+        /**
+         * How long futures wait for completion unless a timeout is passed explicitly.
+         */
+        @NotNull
+        Duration defaultTimeout;
+
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Dispatch {
+
+        /**
+         * Number of threads executing tasks.
+         */
+        @Min(1)
+        @NotNull
+        Integer threads;
+
+        /**
+         * Max. number of tasks waiting for a free thread. Once the queue is full, new tasks are left to the background
+         * job instead of being executed immediately.
+         */
+        @Min(0)
+        @NotNull
+        Integer queueCapacity;
+
+        /**
+         * Use virtual threads instead of platform ones (still no more than {@link #getThreads()} of them at a time).
+         */
+        boolean virtualThreads;
+
+    }
+
 }
@@ -0,0 +1,33 @@
+package guru.nicks.commons.outbox.domain;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import lombok.Value;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a task has been scheduled and the transaction that stored it has been committed (the library notifies
+ * its listener from a post-commit hook).
+ *
+ * @see TransactionOutboxBackgroundJob#onTaskScheduled(TransactionOutboxTaskScheduledEvent)
+ */
+@Value
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+public class TransactionOutboxTaskScheduledEvent extends ApplicationEvent {
+
+    public TransactionOutboxTaskScheduledEvent(TransactionOutboxEntry source) {
+        super(source);
+    }
+
+    /**
+     * @return {@link #getSource()} cast to {@link TransactionOutboxEntry}
+     */
+    public TransactionOutboxEntry getTask() {
+        return (TransactionOutboxEntry) getSource();
+    }
+
+}
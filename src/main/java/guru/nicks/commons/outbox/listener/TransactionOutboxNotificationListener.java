@@ -0,0 +1,169 @@
+package guru.nicks.commons.outbox.listener;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+import guru.nicks.commons.utils.text.TimeUtils;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Listens to PostgreSQL notifications sent by a trigger on the outbox table (see
+ * {@link OutboxSql#postgresNotifyTriggerDdl(String)}) and wakes up {@link TransactionOutboxBackgroundJob}, so tasks
+ * committed by any app are picked up by all apps without waiting for the next poll. Enabled by
+ * {@link TransactionOutboxProperties#isNotifyWakeUp()}.
+ * <p>
+ * The trigger is created on startup if it doesn't exist. If that fails (for example, because the app's DB user has no
+ * DDL rights), a warning with the DDL is logged, and the listener listens anyway - the trigger can then be created by
+ * a migration.
+ * <p>
+ * <b>WARNING:</b> a connection is taken from the {@link DataSource} pool and held for as long as the app runs, so each
+ * app has one pool slot less for everything else - size the pool accordingly. If the connection breaks, the listener
+ * reconnects after {@link #RECONNECT_DELAY}, and in the meantime the background job keeps polling as usual.
+ * Notifications sent while disconnected are lost, therefore the job is woken up after each reconnection.
+ */
+@Component
+@ConditionalOnClass(name = "org.postgresql.PGConnection")
+@ConditionalOnProperty(prefix = "transaction-outbox", name = "notifyWakeUp", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionOutboxNotificationListener implements SmartLifecycle {
+
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    /**
+     * How long to wait for notifications before checking if the thread has been interrupted.
+     */
+    private static final int RECEIVE_TIMEOUT_MILLIS = 10_000;
+
+    // DI
+    private final DataSource dataSource;
+    private final TransactionOutboxProperties properties;
+    private final TransactionOutboxBackgroundJob backgroundJob;
+
+    private volatile Thread listenerThread;
+
+    @Override
+    public void start() {
+        if (!"POSTGRESQL_9".equals(properties.getDialect())) {
+            log.warn("Outbox notifications are supported for PostgreSQL only, falling back to polling");
+            return;
+        }
+
+        listenerThread = Thread.ofPlatform()
+                .name("outbox-notification-listener")
+                .daemon(true)
+                .start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        Thread thread = listenerThread;
+        listenerThread = null;
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return listenerThread != null;
+    }
+
+    private void run() {
+        String tableName = OutboxSql.getTableName(properties);
+        String channel = OutboxSql.notifyChannel(tableName);
+        boolean triggerChecked = false;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+
+                if (!triggerChecked) {
+                    ensureTrigger(connection, tableName);
+                    triggerChecked = true;
+                }
+
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("LISTEN " + channel);
+                }
+
+                log.debug("Listening to outbox notifications on channel '{}'", channel);
+                // in case something was inserted while there was no connection
+                backgroundJob.wakeUp();
+                receiveNotifications(connection.unwrap(PGConnection.class));
+            } catch (SQLException e) {
+                log.warn("Outbox notification listener failed (will reconnect in {}): {}",
+                        TimeUtils.humanFormatDuration(RECONNECT_DELAY), e.getMessage());
+
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        log.debug("Outbox notification listener stopped");
+    }
+
+    /**
+     * Creates the notification trigger if it doesn't exist. Failure to create it is logged, but isn't fatal: other apps
+     * (or a migration) may create it, and the background job polls in the meantime anyway.
+     *
+     * @throws SQLException failed to check if the trigger exists
+     */
+    private void ensureTrigger(Connection connection, String tableName) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM pg_trigger WHERE tgname = ?")) {
+            stmt.setString(1, OutboxSql.postgresNotifyTriggerName(tableName));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+
+        List<String> ddl = OutboxSql.postgresNotifyTriggerDdl(tableName);
+
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : ddl) {
+                stmt.execute(sql);
+            }
+
+            log.info("Created outbox notification trigger on table '{}'", tableName);
+        } catch (SQLException e) {
+            log.warn("Failed to create outbox notification trigger, inserts won't wake up background jobs until it's "
+                    + "created with: {}; error: {}", String.join("; ", ddl), e.getMessage());
+        }
+    }
+
+    private void receiveNotifications(PGConnection connection) throws SQLException {
+        while (!Thread.currentThread().isInterrupted()) {
+            PGNotification[] notifications = connection.getNotifications(RECEIVE_TIMEOUT_MILLIS);
+
+            if ((notifications != null) && (notifications.length > 0)) {
+                log.trace("Received {} outbox notification(s)", notifications.length);
+                backgroundJob.wakeUp();
+            }
+        }
+    }
+
+}
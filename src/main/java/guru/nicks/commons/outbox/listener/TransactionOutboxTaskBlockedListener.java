@@ -1,27 +1,72 @@
 package guru.nicks.commons.outbox.listener;
 
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.domain.TransactionOutboxFlushCompletedEvent;
 import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
 import guru.nicks.commons.outbox.domain.TransactionOutboxTaskBlockedEvent;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+import guru.nicks.commons.utils.text.TimeUtils;
 
 import com.gruelbox.transactionoutbox.TransactionOutbox;
+import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Listens to {@link TransactionOutboxTaskBlockedEvent} and unblocks the task if
  * {@link TransactionOutboxProperties#isUnblockBlockedTasks()} is {@code true}.
+ * <p>
+ * With {@link TransactionOutboxProperties#getQuarantine()} set, the task is put in quarantine instead: it stays blocked,
+ * and its {@code nextAttemptTime} (ignored by the library for blocked tasks) is moved to the end of a cooldown which
+ * doubles each time the same task is blocked again. After each {@link TransactionOutboxBackgroundJob} invocation,
+ * blocked tasks whose {@code nextAttemptTime} has passed are unblocked in batches. The quarantine therefore lives in the
+ * outbox table and survives restarts; only the block counts are kept in memory (for a limited number of tasks), so
+ * after a restart the cooldown starts over from {@link TransactionOutboxProperties.Quarantine#getInitialCooldown()}.
+ * <p>
+ * Blocked tasks which never went through quarantine (for example, blocked before it was enabled) are unblocked by the
+ * first release.
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class TransactionOutboxTaskBlockedListener implements ApplicationListener<TransactionOutboxTaskBlockedEvent> {
 
+    /**
+     * Max. number of tasks whose block count is remembered (to compute their cooldowns).
+     */
+    private static final int MAX_TRACKED_TASKS = 10_000;
+
     // DI
     private final TransactionOutboxProperties properties;
     private final TransactionOutbox transactionOutbox;
+    private final SpringTransactionManager outboxTransactionManager;
+
+    /**
+     * Task ID -> how many times it has been blocked. The least recently blocked tasks are evicted first.
+     */
+    private final Map<String, Integer> blockCounts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_TRACKED_TASKS;
+        }
+    };
 
     @Transactional
     @Override
@@ -30,9 +75,141 @@ public class TransactionOutboxTaskBlockedListener implements ApplicationListener
             return;
         }
 
+        String taskId = event.getTask().getId();
+
+        if (properties.getQuarantine() == null) {
+            log.warn("Task '{}' was blocked due to excessive number of failed attempts. "
+                    + "Unblocking and resetting the number of attempts to resume retries.", taskId);
+            transactionOutbox.unblock(taskId);
+            return;
+        }
+
+        Duration cooldown = computeCooldown(taskId);
+
+        try {
+            outboxTransactionManager.inTransactionReturnsThrows(tx ->
+                    quarantine(tx.connection(), taskId, Instant.now().plus(cooldown)));
+        } catch (Exception e) {
+            // the task is released by the next release, without a cooldown
+            log.error("Failed to quarantine task '{}': {}", taskId, e.getMessage(), e);
+            return;
+        }
+
         log.warn("Task '{}' was blocked due to excessive number of failed attempts. "
-                + "Unblocking and resetting the number of attempts to resume retries.", event.getTask().getId());
-        transactionOutbox.unblock(event.getTask().getId());
+                + "Will unblock it and reset the number of attempts in {}.", taskId,
+                TimeUtils.humanFormatDuration(cooldown));
+    }
+
+    /**
+     * Unblocks (in one transaction) at most {@link TransactionOutboxProperties.Quarantine#getMaxUnblocksPerFlush()}
+     * quarantined tasks whose cooldown has expired. Errors are logged, and the tasks stay in quarantine until the next
+     * call.
+     */
+    @EventListener(TransactionOutboxFlushCompletedEvent.class)
+    public void releaseQuarantinedTasks() {
+        if (!properties.isUnblockBlockedTasks() || (properties.getQuarantine() == null)) {
+            return;
+        }
+
+        try {
+            int released = outboxTransactionManager.inTransactionReturnsThrows(tx -> release(tx.connection()));
+
+            if (released > 0) {
+                log.info("Unblocked {} quarantined task(s)", released);
+            }
+        } catch (Exception e) {
+            log.error("Failed to unblock quarantined tasks (will retry after the next flush): {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sets the blocked task's {@code nextAttemptTime} to the end of its quarantine.
+     *
+     * @param connection DB connection
+     * @param taskId     task ID
+     * @param releaseAt  when to unblock the task
+     * @return {@code true} if the task was found blocked
+     * @throws SQLException DB error
+     */
+    public boolean quarantine(Connection connection, String taskId, Instant releaseAt) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("UPDATE " + OutboxSql.getTableName(properties)
+                + " SET nextAttemptTime = ?, version = version + 1 WHERE id = ? AND blocked = ?")) {
+            stmt.setTimestamp(1, Timestamp.from(releaseAt));
+            stmt.setString(2, taskId);
+            stmt.setBoolean(3, true);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Unblocks, with a single {@code UPDATE}, at most
+     * {@link TransactionOutboxProperties.Quarantine#getMaxUnblocksPerFlush()} blocked tasks whose quarantine has
+     * expired, the longest-waiting first. The query is served by the library's index on
+     * {@code (processed, blocked, nextAttemptTime)}.
+     *
+     * @param connection DB connection
+     * @return number of tasks unblocked
+     * @throws SQLException DB error
+     */
+    public int release(Connection connection) throws SQLException {
+        String tableName = OutboxSql.getTableName(properties);
+        List<String> dueTaskIds = new ArrayList<>();
+
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM " + tableName
+                + " WHERE processed = ? AND blocked = ? AND nextAttemptTime <= ? ORDER BY nextAttemptTime")) {
+            // portable LIMIT
+            stmt.setMaxRows(properties.getQuarantine().getMaxUnblocksPerFlush());
+            stmt.setBoolean(1, false);
+            stmt.setBoolean(2, true);
+            stmt.setTimestamp(3, Timestamp.from(Instant.now()));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    dueTaskIds.add(rs.getString(1));
+                }
+            }
+        }
+
+        if (dueTaskIds.isEmpty()) {
+            return 0;
+        }
+
+        // same as the library's unblock, for all tasks at once; 'blocked = ?' skips those released by other apps
+        try (PreparedStatement stmt = connection.prepareStatement("UPDATE " + tableName
+                + " SET attempts = 0, blocked = ?, version = version + 1 WHERE blocked = ? AND id IN ("
+                + String.join(", ", Collections.nCopies(dueTaskIds.size(), "?")) + ")")) {
+            stmt.setBoolean(1, false);
+            stmt.setBoolean(2, true);
+
+            for (int i = 0; i < dueTaskIds.size(); i++) {
+                stmt.setString(i + 3, dueTaskIds.get(i));
+            }
+
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Doubles the cooldown each time the task is blocked again, not exceeding
+     * {@link TransactionOutboxProperties.Quarantine#getMaxCooldown()}.
+     */
+    private Duration computeCooldown(String taskId) {
+        int blockCount;
+        synchronized (blockCounts) {
+            blockCount = blockCounts.merge(taskId, 1, Integer::sum);
+        }
+
+        var quarantine = properties.getQuarantine();
+        Duration cooldown = quarantine.getInitialCooldown();
+
+        for (int i = 1; (i < blockCount) && (cooldown.compareTo(quarantine.getMaxCooldown()) < 0); i++) {
+            cooldown = cooldown.multipliedBy(2);
+        }
+
+        return (cooldown.compareTo(quarantine.getMaxCooldown()) > 0)
+                ? quarantine.getMaxCooldown()
+                : cooldown;
     }
 
 }
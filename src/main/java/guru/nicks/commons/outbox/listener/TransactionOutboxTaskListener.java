@@ -0,0 +1,152 @@
+package guru.nicks.commons.outbox.listener;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
+import guru.nicks.commons.outbox.domain.TaskSuccessLogging;
+import guru.nicks.commons.outbox.domain.TransactionOutboxFlushCompletedEvent;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskBlockedEvent;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskScheduledEvent;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.persistor.CoalescingPersistor;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.TransactionOutboxListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives task lifecycle callbacks from {@link TransactionOutbox}: logs them according to
+ * {@link TransactionOutboxProperties#getSuccessLogging()}, reports them to {@link OutboxMetrics} (if any), completes
+ * futures in {@link OutboxCompletionRegistry} (if any), and publishes {@link TransactionOutboxTaskScheduledEvent} and
+ * {@link TransactionOutboxTaskBlockedEvent}.
+ */
+@Slf4j
+public class TransactionOutboxTaskListener implements TransactionOutboxListener {
+
+    private static final int DEFAULT_SUCCESS_LOG_SAMPLE_RATE = 100;
+
+    private final TransactionOutboxProperties properties;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    @Nullable
+    private final OutboxMetrics metrics;
+    @Nullable
+    private final OutboxCompletionRegistry completionRegistry;
+
+    private final TaskSuccessLogging successLogging;
+    private final int successLogSampleRate;
+    private final AtomicLong successCount = new AtomicLong();
+    private final LongAdder unreportedSuccessCount = new LongAdder();
+
+    public TransactionOutboxTaskListener(TransactionOutboxProperties properties,
+            ApplicationEventPublisher applicationEventPublisher, @Nullable OutboxMetrics metrics,
+            @Nullable OutboxCompletionRegistry completionRegistry) {
+        this.properties = properties;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.metrics = metrics;
+        this.completionRegistry = completionRegistry;
+
+        successLogging = Objects.requireNonNullElse(properties.getSuccessLogging(), TaskSuccessLogging.ALL);
+        successLogSampleRate = Objects.requireNonNullElse(properties.getSuccessLogSampleRate(),
+                DEFAULT_SUCCESS_LOG_SAMPLE_RATE);
+    }
+
+    /**
+     * Called from a post-commit hook. Ignores tasks skipped by {@link CoalescingPersistor}.
+     */
+    @Override
+    public void scheduled(TransactionOutboxEntry task) {
+        if (CoalescingPersistor.isSkipped(task)) {
+            return;
+        }
+
+        if (metrics != null) {
+            metrics.taskScheduled(task);
+        }
+
+        applicationEventPublisher.publishEvent(new TransactionOutboxTaskScheduledEvent(task));
+    }
+
+    @Override
+    public void success(TransactionOutboxEntry task) {
+        switch (successLogging) {
+            case ALL -> logSuccess(task);
+            case SAMPLED -> {
+                if (successCount.incrementAndGet() % successLogSampleRate == 0) {
+                    logSuccess(task);
+                }
+            }
+            case SUMMARY -> unreportedSuccessCount.increment();
+            case OFF -> {
+                // nothing to log
+            }
+            default -> throw new IllegalStateException("Unknown success logging: " + successLogging);
+        }
+
+        if (metrics != null) {
+            metrics.taskSucceeded(task);
+        }
+
+        if (completionRegistry != null) {
+            completionRegistry.complete(task);
+        }
+    }
+
+    @Override
+    public void failure(TransactionOutboxEntry task, Throwable cause) {
+        if (metrics != null) {
+            metrics.taskFailed(task);
+        }
+    }
+
+    @Override
+    public void blocked(TransactionOutboxEntry task, Throwable cause) {
+        if (!properties.isUnblockBlockedTasks()) {
+            log.error("Outboxed task '{}' blocked after too many retry failures: {}",
+                    task.getId(), cause.toString());
+        }
+
+        if (metrics != null) {
+            metrics.taskBlocked(task);
+        }
+
+        applicationEventPublisher.publishEvent(new TransactionOutboxTaskBlockedEvent(task));
+    }
+
+    /**
+     * For {@link TaskSuccessLogging#SUMMARY}: logs the number of tasks succeeded since the previous call (if any).
+     * Called after each {@link TransactionOutboxBackgroundJob} invocation.
+     */
+    @EventListener(TransactionOutboxFlushCompletedEvent.class)
+    public void logSuccessSummary() {
+        if (successLogging != TaskSuccessLogging.SUMMARY) {
+            return;
+        }
+
+        long count = unreportedSuccessCount.sumThenReset();
+
+        if (count > 0) {
+            log.info("{} outboxed task(s) succeeded", count);
+        }
+    }
+
+    /**
+     * Doesn't touch the serialized invocation at INFO level - {@link TransactionOutboxEntry#toString()} is expensive.
+     */
+    private void logSuccess(TransactionOutboxEntry task) {
+        if (log.isDebugEnabled()) {
+            log.debug("Outboxed task succeeded: {}", task);
+        } else {
+            log.info("Outboxed task '{}' succeeded: {}.{}()", task.getId(),
+                    task.getInvocation().getClassName(), task.getInvocation().getMethodName());
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package guru.nicks.commons.outbox.metrics;
+
+import guru.nicks.commons.outbox.persistor.CoalescingPersistor;
+
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.Consumer;
+
+/**
+ * Reports task submissions and execution times to {@link OutboxMetrics}, delegating the actual submission. A task is
+ * counted as submitted once the delegate starts executing it, so tasks the delegate drops (a saturated executor or
+ * {@link guru.nicks.commons.outbox.submitter.VirtualThreadSubmitter} at its cap) and leaves to the background job aren't
+ * counted. Neither are tasks skipped by {@link CoalescingPersistor}, which the library submits right after commit
+ * although they aren't stored.
+ * <p>
+ * Closing this submitter closes the delegate, if it's {@link AutoCloseable}.
+ */
+@RequiredArgsConstructor
+public class MeteredSubmitter implements Submitter, AutoCloseable {
+
+    private final Submitter delegate;
+    private final OutboxMetrics metrics;
+
+    @Override
+    public void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
+        if (CoalescingPersistor.isSkipped(entry)) {
+            delegate.submit(entry, localExecutor);
+            return;
+        }
+
+        metrics.taskHandedOver();
+        delegate.submit(entry, task -> {
+            metrics.taskSubmitted();
+            long start = System.nanoTime();
+
+            try {
+                localExecutor.accept(task);
+            } finally {
+                metrics.taskExecuted(task, System.nanoTime() - start);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+}
@@ -0,0 +1,244 @@
+package guru.nicks.commons.outbox.metrics;
+
+import guru.nicks.commons.outbox.submitter.BulkSubmitter;
+
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Micrometer metrics of the outbox pipeline. Exists as a bean only if there's a {@link MeterRegistry} bean. Task
+ * metrics are tagged with {@code class} (bean name, as stored by the library) and {@code method}:
+ * <ul>
+ *     <li>{@code outbox.tasks} - counter, additionally tagged with {@code event}: {@code scheduled},
+ *         {@code succeeded}, {@code failed}, {@code blocked}</li>
+ *     <li>{@code outbox.task.execution} - timer (with histogram) of task execution, including its transaction</li>
+ *     <li>{@code outbox.task.lag} - timer (with histogram) from commit of the scheduling transaction to success; only
+ *         for tasks scheduled and executed in the same app</li>
+ *     <li>{@code outbox.flush} - timer of background flush cycles</li>
+ *     <li>{@code outbox.flush.tasks} - distribution summary of the number of tasks claimed per flush cycle (tasks
+ *         submitted right after commit in the meantime aren't included)</li>
+ *     <li>{@code outbox.idempotency.cache} - counter of unique request ID lookups, tagged with {@code result}:
+ *         {@code hit} (duplicate rejected without a DB round trip), {@code miss}</li>
+ * </ul>
+ */
+public class OutboxMetrics {
+
+    /**
+     * Max. number of tasks remembered for {@code outbox.task.lag}, the eldest are evicted first. Tasks executed by other
+     * apps are never reported here, so they're also evicted after {@link #MAX_TRACKED_TASK_AGE}.
+     */
+    private static final int MAX_TRACKED_TASKS = 100_000;
+    private static final Duration MAX_TRACKED_TASK_AGE = Duration.ofHours(1);
+
+    private final MeterRegistry registry;
+    private final Timer flushTimer;
+    private final DistributionSummary flushTasks;
+    private final Counter idempotencyCacheHits;
+    private final Counter idempotencyCacheMisses;
+
+    private final AtomicLong submittedTasks = new AtomicLong();
+
+    /**
+     * Counts tasks claimed by the flush running in the current thread, {@code null} if the thread isn't flushing.
+     */
+    private final ThreadLocal<LongAdder> flushedTasks = new ThreadLocal<>();
+    private final Map<String, Long> scheduledAtNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Tasks in {@link #scheduledAtNanos}, the eldest first. May also hold tasks already removed from there, until they
+     * reach the head.
+     */
+    private final Queue<TrackedTask> trackingOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Size of {@link #trackingOrder}, which can't report it in constant time.
+     */
+    private final AtomicInteger trackingOrderSize = new AtomicInteger();
+
+    public OutboxMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        flushTimer = Timer.builder("outbox.flush")
+                .description("Background flush cycle duration")
+                .register(registry);
+        flushTasks = DistributionSummary.builder("outbox.flush.tasks")
+                .description("Tasks submitted for execution per background flush cycle")
+                .register(registry);
+        idempotencyCacheHits = Counter.builder("outbox.idempotency.cache")
+                .description("Unique request ID lookups in the local cache")
+                .tag("result", "hit")
+                .register(registry);
+        idempotencyCacheMisses = Counter.builder("outbox.idempotency.cache")
+                .description("Unique request ID lookups in the local cache")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * Called from the post-commit hook of the scheduling transaction, so it never scans {@link #scheduledAtNanos}.
+     */
+    public void taskScheduled(TransactionOutboxEntry task) {
+        countTask(task, "scheduled");
+
+        long now = System.nanoTime();
+        scheduledAtNanos.put(task.getId(), now);
+        trackingOrder.add(new TrackedTask(task.getId(), now));
+        trackingOrderSize.incrementAndGet();
+        evictTrackedTasks(now);
+    }
+
+    public void taskSucceeded(TransactionOutboxEntry task) {
+        countTask(task, "succeeded");
+        Long scheduledAt = scheduledAtNanos.remove(task.getId());
+
+        if (scheduledAt != null) {
+            Timer.builder("outbox.task.lag")
+                    .description("Time from scheduling commit to successful execution")
+                    .tags(createTags(task))
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - scheduledAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void taskFailed(TransactionOutboxEntry task) {
+        countTask(task, "failed");
+    }
+
+    public void taskBlocked(TransactionOutboxEntry task) {
+        countTask(task, "blocked");
+        scheduledAtNanos.remove(task.getId());
+    }
+
+    /**
+     * Called by {@link MeteredSubmitter} when the executor starts the task, and by {@link BulkSubmitter} for each task
+     * of a successful chunk. Tasks the executor drops aren't reported.
+     */
+    public void taskSubmitted() {
+        submittedTasks.incrementAndGet();
+    }
+
+    /**
+     * Called by {@link MeteredSubmitter} once the task has been executed (successfully or not), and by
+     * {@link BulkSubmitter} for each task of a successful chunk, with its share of the chunk's execution time.
+     */
+    public void taskExecuted(TransactionOutboxEntry task, long durationNanos) {
+        Timer.builder("outbox.task.execution")
+                .description("Task execution time, including its transaction")
+                .tags(createTags(task))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Called by {@link MeteredSubmitter} when the library hands a task over for execution, in the thread which claimed
+     * it. Counted for {@code outbox.flush.tasks} if that thread is running {@link #countFlushedTasks}.
+     */
+    public void taskHandedOver() {
+        LongAdder counter = flushedTasks.get();
+
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * Runs a flush in the current thread, counting the tasks it claims.
+     *
+     * @param counter receives the number of tasks claimed, may be shared by parallel flushes
+     * @param flush   flush to run
+     * @return what the flush returned
+     */
+    public boolean countFlushedTasks(LongAdder counter, BooleanSupplier flush) {
+        flushedTasks.set(counter);
+
+        try {
+            return flush.getAsBoolean();
+        } finally {
+            flushedTasks.remove();
+        }
+    }
+
+    /**
+     * @return total number of tasks started so far, both right after commit and by background flushes
+     */
+    public long getSubmittedTaskCount() {
+        return submittedTasks.get();
+    }
+
+    public void flushCompleted(long durationNanos, long tasks) {
+        flushTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        flushTasks.record(tasks);
+    }
+
+    /**
+     * Called by {@code IdempotencyCachePersistor} when a duplicate unique request ID has been rejected without a DB
+     * round trip.
+     */
+    public void idempotencyCacheHit() {
+        idempotencyCacheHits.increment();
+    }
+
+    /**
+     * Called by {@code IdempotencyCachePersistor} when a unique request ID has been passed to the DB.
+     */
+    public void idempotencyCacheMiss() {
+        idempotencyCacheMisses.increment();
+    }
+
+    private void countTask(TransactionOutboxEntry task, String event) {
+        Counter.builder("outbox.tasks")
+                .description("Outbox task events")
+                .tags(createTags(task).and("event", event))
+                .register(registry)
+                .increment();
+    }
+
+    private Tags createTags(TransactionOutboxEntry task) {
+        return Tags.of(
+                "class", task.getInvocation().getClassName(),
+                "method", task.getInvocation().getMethodName());
+    }
+
+    /**
+     * Stops tracking the eldest tasks while they're done (succeeded or blocked), too old, or there are too many of them.
+     * Each call removes what the previous ones left at the head of {@link #trackingOrder}, so it's O(1) amortized.
+     * Concurrent calls may evict a little more than needed, which only leaves those tasks out of
+     * {@code outbox.task.lag}.
+     */
+    private void evictTrackedTasks(long now) {
+        long threshold = now - MAX_TRACKED_TASK_AGE.toNanos();
+        TrackedTask eldest;
+
+        while (((eldest = trackingOrder.peek()) != null)
+                && ((eldest.scheduledAt() - threshold < 0)
+                || (trackingOrderSize.get() > MAX_TRACKED_TASKS)
+                || !Objects.equals(scheduledAtNanos.get(eldest.id()), eldest.scheduledAt()))) {
+            if (trackingOrder.remove(eldest)) {
+                trackingOrderSize.decrementAndGet();
+                scheduledAtNanos.remove(eldest.id(), eldest.scheduledAt());
+            }
+        }
+    }
+
+    private record TrackedTask(String id, long scheduledAt) {
+    }
+
+}
@@ -0,0 +1,264 @@
+package guru.nicks.commons.outbox.partition;
+
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+import guru.nicks.commons.utils.text.TimeUtils;
+
+import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Tracks which apps (nodes) process the outbox table and which of its {@link #BUCKET_COUNT} buckets this node owns.
+ * Each node periodically records a heartbeat in a table next to the outbox one (see
+ * {@link OutboxSql#nodesTableName(String)}), removes nodes whose heartbeats have expired, and distributes buckets
+ * among the live nodes with rendezvous hashing, so only about {@code 1/N} of them move when a node joins or leaves.
+ * <p>
+ * Tasks are assigned to buckets by the first two hex digits of their IDs (random UUIDs), see
+ * {@link PartitionedDialect}. While membership changes propagate (up to one heartbeat interval), a bucket may be
+ * owned by two nodes, which is safe because tasks are locked before processing, or by none, which delays its tasks.
+ * Node clocks must be in sync within a small fraction of {@link TransactionOutboxProperties.Partitioning#getNodeTimeout()}.
+ * <p>
+ * The nodes table is created once, before the first heartbeat, in a transaction of its own (DDL commits implicitly on
+ * some DBs). If it already exists, no DDL is executed, so it can be created upfront by a user having DDL rights.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxNodeMembership implements SmartLifecycle {
+
+    /**
+     * Number of buckets tasks are spread across.
+     */
+    public static final int BUCKET_COUNT = 256;
+
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    // DI
+    private final SpringTransactionManager outboxTransactionManager;
+    private final TransactionOutboxProperties properties;
+
+    @Getter
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Buckets (two lowercase hex digits each) owned by this node, empty until the first heartbeat succeeds.
+     */
+    @Getter
+    private volatile Set<String> ownedBuckets = Set.of();
+
+    private volatile Thread heartbeatThread;
+
+    /**
+     * Assigns each bucket to the node having the highest hash of the node ID combined with the bucket number.
+     *
+     * @param nodeIds IDs of all live nodes
+     * @param nodeId  ID of the node to compute buckets for
+     * @return buckets owned by the node (two lowercase hex digits each)
+     */
+    public static Set<String> assignBuckets(Collection<String> nodeIds, String nodeId) {
+        Set<String> buckets = new TreeSet<>();
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            String owner = null;
+            long ownerWeight = Long.MIN_VALUE;
+
+            for (String candidate : nodeIds) {
+                long weight = weight(candidate, bucket);
+
+                if ((owner == null) || (weight > ownerWeight)
+                        || ((weight == ownerWeight) && (candidate.compareTo(owner) > 0))) {
+                    owner = candidate;
+                    ownerWeight = weight;
+                }
+            }
+
+            if (nodeId.equals(owner)) {
+                buckets.add(HEX_FORMAT.toHexDigits((byte) bucket));
+            }
+        }
+
+        return Set.copyOf(buckets);
+    }
+
+    @Override
+    public void start() {
+        log.debug("Outbox node {} will send heartbeats every {}", nodeId,
+                TimeUtils.humanFormatDuration(properties.getPartitioning().getHeartbeatInterval()));
+
+        heartbeatThread = Thread.ofPlatform()
+                .name("outbox-heartbeat")
+                .daemon(true)
+                .start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        Thread thread = heartbeatThread;
+        heartbeatThread = null;
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+
+        // let other nodes take over the buckets without waiting for the heartbeat to expire
+        try {
+            outboxTransactionManager.inTransactionThrows(tx -> leave(tx.connection()));
+        } catch (Exception e) {
+            log.warn("Failed to unregister outbox node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return heartbeatThread != null;
+    }
+
+    /**
+     * Creates the nodes table unless it already exists.
+     *
+     * @param connection DB connection
+     * @throws SQLException DB error
+     */
+    public void createNodesTable(Connection connection) throws SQLException {
+        String nodesTable = OutboxSql.nodesTableName(OutboxSql.getTableName(properties));
+        DatabaseMetaData metaData = connection.getMetaData();
+        int dotIndex = nodesTable.lastIndexOf('.');
+        String schema = (dotIndex < 0)
+                ? null
+                : OutboxSql.toStoredCase(metaData, nodesTable.substring(0, dotIndex));
+        String table = OutboxSql.toStoredCase(metaData, nodesTable.substring(dotIndex + 1));
+
+        // no DDL (and no DDL rights needed) if the table has been created upfront
+        try (ResultSet rs = metaData.getTables(null, schema, table, null)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(OutboxSql.createNodesTableDdl(properties.getDialect(), nodesTable));
+        }
+
+        log.info("Created outbox nodes table '{}'", nodesTable);
+    }
+
+    /**
+     * Records this node's heartbeat, removes expired nodes, and recomputes {@link #getOwnedBuckets()}. The nodes table
+     * must exist, see {@link #createNodesTable(Connection)}.
+     *
+     * @param connection DB connection
+     * @throws SQLException DB error
+     */
+    public void heartbeat(Connection connection) throws SQLException {
+        String nodesTable = OutboxSql.nodesTableName(OutboxSql.getTableName(properties));
+        Instant now = Instant.now();
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE " + nodesTable + " SET lastHeartbeat = ? WHERE nodeId = ?")) {
+            stmt.setTimestamp(1, Timestamp.from(now));
+            stmt.setString(2, nodeId);
+
+            if (stmt.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + nodesTable + " (nodeId, lastHeartbeat) VALUES (?, ?)")) {
+                    insert.setString(1, nodeId);
+                    insert.setTimestamp(2, Timestamp.from(now));
+                    insert.executeUpdate();
+                }
+            }
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM " + nodesTable + " WHERE lastHeartbeat < ?")) {
+            stmt.setTimestamp(1, Timestamp.from(now.minus(properties.getPartitioning().getNodeTimeout())));
+            stmt.executeUpdate();
+        }
+
+        List<String> nodeIds = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT nodeId FROM " + nodesTable)) {
+            while (rs.next()) {
+                nodeIds.add(rs.getString(1));
+            }
+        }
+
+        Set<String> buckets = assignBuckets(nodeIds, nodeId);
+
+        if (!buckets.equals(ownedBuckets)) {
+            log.info("Outbox node {} owns {} of {} buckets, {} node(s) alive", nodeId, buckets.size(), BUCKET_COUNT,
+                    nodeIds.size());
+            ownedBuckets = buckets;
+        }
+    }
+
+    private void leave(Connection connection) throws SQLException {
+        String nodesTable = OutboxSql.nodesTableName(OutboxSql.getTableName(properties));
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "DELETE FROM " + nodesTable + " WHERE nodeId = ?")) {
+            stmt.setString(1, nodeId);
+            stmt.executeUpdate();
+        }
+
+        ownedBuckets = Set.of();
+    }
+
+    private void run() {
+        var interval = properties.getPartitioning().getHeartbeatInterval();
+        boolean nodesTableCreated = false;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    // retried with the heartbeat until it succeeds
+                    if (!nodesTableCreated) {
+                        outboxTransactionManager.inTransactionThrows(tx -> createNodesTable(tx.connection()));
+                        nodesTableCreated = true;
+                    }
+
+                    outboxTransactionManager.inTransactionThrows(tx -> heartbeat(tx.connection()));
+                } catch (Exception e) {
+                    log.warn("Outbox node {} failed to send heartbeat (will retry in {}): {}", nodeId,
+                            TimeUtils.humanFormatDuration(interval), e.getMessage());
+                }
+
+                Thread.sleep(interval);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.debug("Outbox node {} stopped sending heartbeats", nodeId);
+    }
+
+    /**
+     * Mixes the node ID hash with the bucket number using the SplitMix64 finalizer. {@link String#hashCode()} is
+     * specified, so all nodes compute the same value.
+     */
+    private static long weight(String nodeId, int bucket) {
+        long z = ((long) nodeId.hashCode() << 32) | bucket;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
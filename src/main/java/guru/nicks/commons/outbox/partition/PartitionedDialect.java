@@ -0,0 +1,85 @@
+package guru.nicks.commons.outbox.partition;
+
+import guru.nicks.commons.outbox.sql.OutboxSql;
+
+import com.gruelbox.transactionoutbox.Dialect;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Delegate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Makes the library's claim query select only tasks belonging to the buckets owned by this app (see
+ * {@link OutboxNodeMembership}), so apps don't scan the same due rows and skip each other's locks. The claim query
+ * itself, its columns, and the row mapping stay the library's ones: {@link #getSelectBatch()} only adds ID ranges
+ * (see {@link OutboxSql#idRangesCondition(Set)}) to the query's {@code WHERE} clause. The library builds the claim
+ * query on each call, so ownership changes take effect on the next flush. Until the first heartbeat succeeds, all
+ * tasks are claimed as usual. Ordered tasks aren't partitioned.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class PartitionedDialect implements Dialect {
+
+    private static final String WHERE = " WHERE ";
+
+    @Delegate(types = Dialect.class, excludes = SelectBatchMethod.class)
+    private final Dialect delegate;
+
+    private final OutboxNodeMembership membership;
+
+    /**
+     * Query built for the buckets owned last time, rebuilt only when they change.
+     */
+    private volatile CachedQuery cachedQuery;
+
+    @Override
+    public String getSelectBatch() {
+        String query = delegate.getSelectBatch();
+        Set<String> buckets = membership.getOwnedBuckets();
+
+        if (buckets.isEmpty() || (buckets.size() == OutboxNodeMembership.BUCKET_COUNT)) {
+            return query;
+        }
+
+        CachedQuery cached = cachedQuery;
+
+        if ((cached != null) && (cached.buckets() == buckets) && cached.template().equals(query)) {
+            return cached.query();
+        }
+
+        int whereIndex = query.toUpperCase(Locale.ROOT).indexOf(WHERE);
+
+        // don't lose tasks if the library changes its query - all nodes just compete for them as usual
+        if (whereIndex < 0) {
+            log.warn("Claim query has no WHERE clause, claiming tasks of all buckets: {}", query);
+            return query;
+        }
+
+        int conditionIndex = whereIndex + WHERE.length();
+        String partitionedQuery = query.substring(0, conditionIndex)
+                + "(" + OutboxSql.idRangesCondition(buckets) + ") AND " + query.substring(conditionIndex);
+
+        cachedQuery = new CachedQuery(buckets, query, partitionedQuery);
+        return partitionedQuery;
+    }
+
+    /**
+     * @param buckets  buckets the query was built for (compared by identity, as they're replaced on change only)
+     * @param template library's query
+     * @param query    library's query with the bucket condition
+     */
+    private record CachedQuery(Set<String> buckets, String template, String query) {
+    }
+
+    /**
+     * Methods of {@link Dialect} overridden by this class, therefore not delegated.
+     */
+    private interface SelectBatchMethod {
+
+        String getSelectBatch();
+
+    }
+
+}
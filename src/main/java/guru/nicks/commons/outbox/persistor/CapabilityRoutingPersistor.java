@@ -0,0 +1,139 @@
+package guru.nicks.commons.outbox.persistor;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+
+import com.gruelbox.transactionoutbox.OptimisticLockException;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.spring.SpringInstantiator;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Delegate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Makes the app claim only tasks it's able to execute, i.e. those referring to beans (see {@link SpringInstantiator})
+ * present in the app. Other tasks are dropped from each batch selected by {@link TransactionOutboxBackgroundJob}, so
+ * they aren't executed and don't burn attempts. They're left for the apps having the appropriate beans.
+ * <p>
+ * The filtering can't be done in SQL, because the bean name is stored inside the serialized (and possibly compressed)
+ * invocation. Therefore foreign tasks are selected (and locked) along with the others, then pushed back by the given
+ * delay - without touching their number of attempts - and released when the claiming transaction ends. This way the
+ * next query gets past them instead of selecting them again: if a whole batch refers to foreign beans, further batches
+ * are selected, each limited to what's left of {@link #MAX_PUSHED_BACK_TASKS}. Each pushed back task is an
+ * {@code UPDATE} of a row locked until the claiming transaction ends, just like each task claimed by the library, so
+ * one call updates and locks at most the batch size or {@link #MAX_PUSHED_BACK_TASKS} foreign rows, whichever is
+ * greater.
+ * <p>
+ * The price is that the app owning a foreign task may see it up to the push-back delay later. Tasks whose beans exist
+ * in no app are never executed, they're just pushed back over and over.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class CapabilityRoutingPersistor implements Persistor {
+
+    /**
+     * Max. number of foreign tasks pushed back in one call, unless the first batch alone has more.
+     */
+    public static final int MAX_PUSHED_BACK_TASKS = 1_000;
+
+    @Delegate(types = Persistor.class, excludes = SelectMethods.class)
+    private final Persistor delegate;
+
+    /**
+     * Accepts bean names, as stored by the library in {@code Invocation#getClassName()}, that this app can execute.
+     */
+    private final Predicate<String> canExecute;
+
+    /**
+     * How far {@code nextAttemptTime} of foreign tasks is moved.
+     */
+    private final Duration pushBackDelay;
+
+    @Override
+    public List<TransactionOutboxEntry> selectBatch(Transaction tx, int batchSize, Instant now) throws Exception {
+        return claimExecutable(tx, batchSize, now, size -> delegate.selectBatch(tx, size, now));
+    }
+
+    @Override
+    public Collection<TransactionOutboxEntry> selectNextInTopics(Transaction tx, int batchSize, Instant now)
+            throws Exception {
+        return claimExecutable(tx, batchSize, now, size -> delegate.selectNextInTopics(tx, size, now));
+    }
+
+    /**
+     * Selects batches until one of them contains executable tasks, or there's nothing left to select, or
+     * {@link #MAX_PUSHED_BACK_TASKS} tasks have been pushed back. Foreign tasks are pushed back.
+     */
+    private List<TransactionOutboxEntry> claimExecutable(Transaction tx, int batchSize, Instant now,
+            BatchSelector selector) throws Exception {
+        int pushedBack = 0;
+        // the first batch is as large as the library asks for
+        int nextBatchSize = batchSize;
+
+        while (nextBatchSize > 0) {
+            Collection<TransactionOutboxEntry> entries = selector.select(nextBatchSize);
+            List<TransactionOutboxEntry> executable = new ArrayList<>(entries.size());
+
+            for (TransactionOutboxEntry entry : entries) {
+                if (canExecute.test(entry.getInvocation().getClassName())) {
+                    executable.add(entry);
+                } else {
+                    pushBack(tx, entry, now);
+                }
+            }
+
+            if (executable.size() < entries.size()) {
+                log.trace("Pushed back {} of {} outbox tasks referring to beans missing in this app",
+                        entries.size() - executable.size(), entries.size());
+            }
+
+            if (!executable.isEmpty() || entries.isEmpty()) {
+                return executable;
+            }
+
+            pushedBack += entries.size();
+            nextBatchSize = Math.min(batchSize, MAX_PUSHED_BACK_TASKS - pushedBack);
+        }
+
+        return List.of();
+    }
+
+    private void pushBack(Transaction tx, TransactionOutboxEntry entry, Instant now) throws Exception {
+        entry.setNextAttemptTime(now.plus(pushBackDelay));
+
+        try {
+            delegate.update(tx, entry);
+        } catch (OptimisticLockException e) {
+            // someone else has updated the task, nothing to push back
+            log.trace("Outbox task '{}' changed concurrently, not pushing it back", entry.getId());
+        }
+    }
+
+    @FunctionalInterface
+    private interface BatchSelector {
+
+        Collection<TransactionOutboxEntry> select(int batchSize) throws Exception;
+
+    }
+
+    /**
+     * Methods of {@link Persistor} overridden by this class, therefore not delegated.
+     */
+    private interface SelectMethods {
+
+        List<TransactionOutboxEntry> selectBatch(Transaction tx, int batchSize, Instant now) throws Exception;
+
+        Collection<TransactionOutboxEntry> selectNextInTopics(Transaction tx, int batchSize, Instant now)
+                throws Exception;
+
+    }
+
+}
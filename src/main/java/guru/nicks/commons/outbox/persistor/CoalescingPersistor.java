@@ -0,0 +1,188 @@
+package guru.nicks.commons.outbox.persistor;
+
+import guru.nicks.commons.outbox.OutboxActions;
+import guru.nicks.commons.outbox.annotation.CoalesceInTransaction;
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+import guru.nicks.commons.outbox.metrics.MeteredSubmitter;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.spring.SpringInstantiator;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Delegate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores identical invocations of methods annotated with {@link CoalesceInTransaction} only once per Spring
+ * transaction: the first one is saved, the subsequent ones are silently skipped. Invocations are identical if they
+ * refer to the same bean (see {@link SpringInstantiator}) and method, and their arguments are serialized the same way.
+ * MDC is ignored, so the first invocation's MDC is the one stored.
+ * <p>
+ * Ordered tasks, tasks with a unique request ID, and tracked tasks (see {@link OutboxActions#scheduleTracked(Class,
+ * java.time.Duration, java.util.function.Consumer)}) are never coalesced, as well as tasks saved outside of a Spring
+ * transaction with synchronization. A tracked task can't share another task's row: its future is completed by the MDC
+ * stored with its own invocation.
+ * <p>
+ * The library isn't aware of skipped tasks, so it still runs its post-commit hook for each of them:
+ * <ul>
+ *     <li>{@link TransactionOutboxTaskListener} and {@link MeteredSubmitter} check {@link #isSkipped} and neither
+ *     count skipped tasks nor publish events for them</li>
+ *     <li>they're still submitted for execution, and each one costs a short transaction trying to lock a row which
+ *     doesn't exist, therefore they're never executed</li>
+ * </ul>
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class CoalescingPersistor implements Persistor {
+
+    @Delegate(types = Persistor.class, excludes = SaveMethod.class)
+    private final Persistor delegate;
+
+    private final InvocationSerializer serializer;
+
+    /**
+     * Resolves bean names stored in invocations to bean types.
+     */
+    private final BeanFactory beanFactory;
+
+    /**
+     * Bean name, method name, and parameter types -> whether the method is annotated.
+     */
+    private final Map<List<Object>, Boolean> coalescedMethods = new ConcurrentHashMap<>();
+
+    /**
+     * Tells if the task has been skipped as a duplicate in the current transaction. Meant for the library's post-commit
+     * hooks, which run before the transaction's resources are unbound.
+     *
+     * @param entry task
+     * @return {@code true} if the task hasn't been stored
+     */
+    public static boolean isSkipped(TransactionOutboxEntry entry) {
+        var state = (TransactionState) TransactionSynchronizationManager.getResource(CoalescingPersistor.class);
+        return (state != null) && state.skippedTaskIds().contains(entry.getId());
+    }
+
+    @Override
+    public void save(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+        if ((entry.getTopic() != null) || (entry.getUniqueRequestId() != null)
+                || isTracked(entry.getInvocation())
+                || !TransactionSynchronizationManager.isSynchronizationActive()
+                || !isCoalesced(entry.getInvocation())) {
+            delegate.save(tx, entry);
+            return;
+        }
+
+        TransactionState state = getTransactionState();
+
+        if (!state.savedInvocations().add(createKey(entry.getInvocation()))) {
+            state.skippedTaskIds().add(entry.getId());
+            log.debug("Skipping outbox task '{}' identical to another one scheduled in the same transaction: {}.{}()",
+                    entry.getId(), entry.getInvocation().getClassName(), entry.getInvocation().getMethodName());
+            return;
+        }
+
+        delegate.save(tx, entry);
+    }
+
+    private static boolean isTracked(Invocation invocation) {
+        return (invocation.getMdc() != null) && invocation.getMdc().containsKey(OutboxCompletionRegistry.MDC_KEY);
+    }
+
+    private boolean isCoalesced(Invocation invocation) {
+        List<Object> methodKey = List.of(invocation.getClassName(), invocation.getMethodName(),
+                Arrays.asList(invocation.getParameterTypes()));
+
+        return coalescedMethods.computeIfAbsent(methodKey, key -> {
+            Class<?> beanType = beanFactory.containsBean(invocation.getClassName())
+                    ? beanFactory.getType(invocation.getClassName())
+                    : null;
+
+            if (beanType == null) {
+                return false;
+            }
+
+            Method method = ReflectionUtils.findMethod(ClassUtils.getUserClass(beanType), invocation.getMethodName(),
+                    invocation.getParameterTypes());
+            return (method != null) && AnnotatedElementUtils.hasAnnotation(method, CoalesceInTransaction.class);
+        });
+    }
+
+    /**
+     * MDC is left out on purpose.
+     */
+    private String createKey(Invocation invocation) {
+        var writer = new StringWriter();
+        serializer.serializeInvocation(new Invocation(invocation.getClassName(), invocation.getMethodName(),
+                invocation.getParameterTypes(), invocation.getArgs()), writer);
+        return writer.toString();
+    }
+
+    /**
+     * @return invocations saved and tasks skipped in the current transaction, unbound once it's completed
+     */
+    private static TransactionState getTransactionState() {
+        var state = (TransactionState) TransactionSynchronizationManager.getResource(CoalescingPersistor.class);
+
+        if (state == null) {
+            var newState = new TransactionState(new HashSet<>(), new HashSet<>());
+            TransactionSynchronizationManager.bindResource(CoalescingPersistor.class, newState);
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(CoalescingPersistor.class);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(CoalescingPersistor.class, newState);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CoalescingPersistor.class);
+                }
+            });
+
+            state = newState;
+        }
+
+        return state;
+    }
+
+    /**
+     * @param savedInvocations keys of invocations saved in the transaction
+     * @param skippedTaskIds   IDs of tasks skipped in the transaction
+     */
+    private record TransactionState(Set<String> savedInvocations, Set<String> skippedTaskIds) {
+    }
+
+    /**
+     * Methods of {@link Persistor} overridden by this class, therefore not delegated.
+     */
+    private interface SaveMethod {
+
+        void save(Transaction tx, TransactionOutboxEntry entry) throws Exception;
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package guru.nicks.commons.outbox.persistor;
+
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+
+import com.gruelbox.transactionoutbox.AlreadyScheduledException;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.RecentlyScheduledException;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import lombok.experimental.Delegate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejects tasks scheduled with a unique request ID already seen by this app recently, without a DB round trip and a
+ * unique constraint violation. Rejection is the same as the library's: {@link AlreadyScheduledException} (more
+ * precisely, {@link RecentlyScheduledException}) is thrown from {@link #save(Transaction, TransactionOutboxEntry)}.
+ * <p>
+ * A key is remembered once the transaction saving its task has been committed (so rolled back tasks can be scheduled
+ * again), or once the DB has rejected it as a duplicate. Keys are forgotten after the TTL, which therefore must not
+ * exceed the library's retention threshold, or when the cache is full (the least recently inserted ones). Forgotten
+ * keys are still checked by the DB. Lookups don't lock anything, so the cache doesn't serialize scheduling threads.
+ * <p>
+ * The cache is local: duplicates scheduled by different apps, or by the same app before the first transaction has been
+ * committed, are still rejected by the DB only.
+ */
+@Slf4j
+public class IdempotencyCachePersistor implements Persistor {
+
+    @Delegate(types = Persistor.class, excludes = SaveMethod.class)
+    private final Persistor delegate;
+
+    private final int maxSize;
+    private final Duration ttl;
+    @Nullable
+    private final OutboxMetrics metrics;
+
+    /**
+     * Key -> {@link System#nanoTime()} when it expires.
+     */
+    private final Map<String, Long> expiresAtNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Keys in insertion order, therefore the eldest key also expires first. A key remembered again appears twice; the
+     * outdated occurrence no longer matches {@link #expiresAtNanos} and is skipped once it reaches the head.
+     */
+    private final Queue<RememberedKey> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param delegate persistor to save tasks with
+     * @param maxSize  max. number of keys remembered
+     * @param ttl      how long keys are remembered
+     * @param metrics  receives cache hits and misses (optional)
+     */
+    public IdempotencyCachePersistor(Persistor delegate, int maxSize, Duration ttl, @Nullable OutboxMetrics metrics) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void save(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+        String key = entry.getUniqueRequestId();
+
+        if (key == null) {
+            delegate.save(tx, entry);
+            return;
+        }
+
+        if (isRemembered(key)) {
+            hits.increment();
+
+            if (metrics != null) {
+                metrics.idempotencyCacheHit();
+            }
+
+            log.debug("Rejecting outbox task with recently seen unique request ID '{}'", key);
+            throw new RecentlyScheduledException(key);
+        }
+
+        misses.increment();
+
+        if (metrics != null) {
+            metrics.idempotencyCacheMiss();
+        }
+
+        try {
+            delegate.save(tx, entry);
+        } catch (AlreadyScheduledException e) {
+            remember(key);
+            throw e;
+        }
+
+        tx.addPostCommitHook(() -> remember(key));
+    }
+
+    /**
+     * @return number of duplicates rejected by the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of unique request IDs passed to the DB
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private boolean isRemembered(String key) {
+        Long expiresAt = expiresAtNanos.get(key);
+
+        if (expiresAt == null) {
+            return false;
+        }
+
+        if (expiresAt - System.nanoTime() > 0) {
+            return true;
+        }
+
+        // unless remembered again in the meantime
+        expiresAtNanos.remove(key, expiresAt);
+        return false;
+    }
+
+    private void remember(String key) {
+        long expiresAt = System.nanoTime() + ttl.toNanos();
+        expiresAtNanos.put(key, expiresAt);
+        insertionOrder.add(new RememberedKey(key, expiresAt));
+        evict();
+    }
+
+    /**
+     * Removes expired keys and, if the cache is still full, the eldest ones. Concurrent calls may evict a little more
+     * than needed, which only makes the DB check those keys.
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        RememberedKey eldest;
+
+        while (((eldest = insertionOrder.peek()) != null)
+                && ((eldest.expiresAt() - now <= 0) || (expiresAtNanos.size() > maxSize))) {
+            if (insertionOrder.remove(eldest)) {
+                expiresAtNanos.remove(eldest.key(), eldest.expiresAt());
+            }
+        }
+    }
+
+    private record RememberedKey(String key, long expiresAt) {
+    }
+
+    /**
+     * Methods of {@link Persistor} overridden by this class, therefore not delegated.
+     */
+    private interface SaveMethod {
+
+        void save(Transaction tx, TransactionOutboxEntry entry) throws Exception;
+
+    }
+
+}
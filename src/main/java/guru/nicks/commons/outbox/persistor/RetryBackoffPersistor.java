@@ -0,0 +1,78 @@
+package guru.nicks.commons.outbox.persistor;
+
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.Delegate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replaces the library's fixed retry cadence ({@link TransactionOutboxProperties#getPerTaskRetryDelay()}) with
+ * exponential backoff computed from the task's number of failed attempts, optionally jittered and overridden per bean.
+ * <p>
+ * The library pushes {@code nextAttemptTime} forward by the fixed delay both when it claims a task (which serves as a
+ * lease preventing other apps from picking it up while it's running) and when the task fails. This class extends that
+ * delay by up to {@code perTaskRetryDelay * multiplier^(attempts - 1) - perTaskRetryDelay}, capped by the max. delay,
+ * so the lease is never shortened. With jitter, the extension is a uniformly random fraction of that value, which
+ * spreads out retries of tasks that failed at the same time.
+ */
+@RequiredArgsConstructor
+public class RetryBackoffPersistor implements Persistor {
+
+    @Delegate(types = Persistor.class, excludes = UpdateMethod.class)
+    private final Persistor delegate;
+
+    private final Duration baseDelay;
+    private final TransactionOutboxProperties.RetryBackoff defaultBackoff;
+
+    /**
+     * Keys are bean names, as stored by the library in {@code Invocation#getClassName()}.
+     */
+    private final Map<String, TransactionOutboxProperties.RetryBackoff> backoffOverrides;
+
+    @Override
+    public void update(Transaction tx, TransactionOutboxEntry entry) throws Exception {
+        if (!entry.isProcessed() && (entry.getAttempts() > 0) && (entry.getNextAttemptTime() != null)) {
+            var backoff = backoffOverrides.getOrDefault(entry.getInvocation().getClassName(), defaultBackoff);
+            entry.setNextAttemptTime(entry.getNextAttemptTime().plus(computeExtraDelay(entry.getAttempts(), backoff)));
+        }
+
+        delegate.update(tx, entry);
+    }
+
+    /**
+     * Computes delay to add to the library's fixed one.
+     *
+     * @param attempts number of failed attempts so far (positive)
+     * @param backoff  backoff settings
+     * @return delay (zero or positive)
+     */
+    public Duration computeExtraDelay(int attempts, TransactionOutboxProperties.RetryBackoff backoff) {
+        double baseMillis = baseDelay.toMillis();
+        double exponentialMillis = baseMillis * Math.pow(backoff.getMultiplier(), attempts - 1);
+        double cappedMillis = Math.min(exponentialMillis, backoff.getMaxDelay().toMillis());
+        long extraMillis = (long) Math.max(0, cappedMillis - baseMillis);
+
+        if (backoff.isJitter() && (extraMillis > 0)) {
+            extraMillis = ThreadLocalRandom.current().nextLong(extraMillis + 1);
+        }
+
+        return Duration.ofMillis(extraMillis);
+    }
+
+    /**
+     * Methods of {@link Persistor} overridden by this class, therefore not delegated.
+     */
+    private interface UpdateMethod {
+
+        void update(Transaction tx, TransactionOutboxEntry entry) throws Exception;
+
+    }
+
+}
@@ -0,0 +1,160 @@
+package guru.nicks.commons.outbox.serializer;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates invocations whose serialized form (produced by the delegate) is larger than the threshold in UTF-8 bytes,
+ * and stores them Base64-encoded after the {@value #MARKER} header. Smaller invocations are stored as is, and so are
+ * all rows written before compression was enabled - they're recognized by the absence of the header, which can't appear
+ * at the start of JSON or Base64.
+ * <p>
+ * {@link Deflater} and {@link Inflater} hold native memory and are costly to create, so they're kept in bounded pools
+ * (one slot per CPU) and {@code reset()} after each use. Instances not fitting into a full pool are released with
+ * {@code end()} right away instead of leaving that to GC. Chunk buffers are reused per thread.
+ */
+public class CompressingInvocationSerializer implements InvocationSerializer {
+
+    /**
+     * Header of compressed invocations.
+     */
+    public static final String MARKER = "DFL1:";
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private static final ThreadLocal<byte[]> CHUNK = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    private final InvocationSerializer delegate;
+    private final int thresholdBytes;
+
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * Constructor.
+     *
+     * @param delegate       serializer producing the uncompressed form
+     * @param thresholdBytes invocations whose serialized form is larger than this (in UTF-8) are compressed
+     */
+    public CompressingInvocationSerializer(InvocationSerializer delegate, int thresholdBytes) {
+        this.delegate = delegate;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    @Override
+    public void serializeInvocation(Invocation invocation, Writer writer) {
+        var text = new StringWriter();
+        delegate.serializeInvocation(invocation, text);
+        String value = text.toString();
+
+        // chars aren't bytes: non-ASCII text takes up to 3 bytes per char in UTF-8
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        try {
+            if (bytes.length <= thresholdBytes) {
+                writer.write(value);
+            } else {
+                writer.write(MARKER);
+                writer.write(Base64.getEncoder().encodeToString(deflate(bytes)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write invocation", e);
+        }
+    }
+
+    @Override
+    public Invocation deserializeInvocation(Reader reader) throws IOException {
+        var stored = new StringWriter();
+        reader.transferTo(stored);
+        String value = stored.toString();
+
+        if (!value.startsWith(MARKER)) {
+            return delegate.deserializeInvocation(new StringReader(value));
+        }
+
+        try {
+            byte[] compressed = Base64.getDecoder().decode(value.substring(MARKER.length()));
+            return delegate.deserializeInvocation(new StringReader(inflate(compressed)));
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted compressed invocation", e);
+        }
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        Deflater deflater = deflaters.poll();
+
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] chunk = CHUNK.get();
+            var out = new ByteArrayOutputStream(Math.min(bytes.length, CHUNK_SIZE));
+
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+
+            return out.toByteArray();
+        } finally {
+            deflater.reset();
+
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    private String inflate(byte[] compressed) throws DataFormatException {
+        Inflater inflater = inflaters.poll();
+
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+
+        try {
+            inflater.setInput(compressed);
+
+            byte[] chunk = CHUNK.get();
+            var out = new ByteArrayOutputStream(compressed.length * 4);
+
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+
+                if ((length == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compressed data");
+                }
+
+                out.write(chunk, 0, length);
+            }
+
+            return out.toString(StandardCharsets.UTF_8);
+        } finally {
+            inflater.reset();
+
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package guru.nicks.commons.outbox.sql;
+
+import guru.nicks.commons.outbox.domain.IndexProvisioning;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.sql.DataSource;
+
+/**
+ * Checks on startup if the outbox table has an index serving claim queries (such as the library's one or the one built
+ * by {@link OutboxSql#dueTasksIndexDdl(String, String)}) and warns or creates the latter if it's missing, depending on
+ * {@link TransactionOutboxProperties#getIndexProvisioning()}. Errors are logged, but don't prevent the app from
+ * starting.
+ * <p>
+ * The index is created on a separate autocommit connection, outside any transaction, because building an index locks
+ * the table:
+ * <ul>
+ *     <li>PostgreSQL: built {@code CONCURRENTLY}, so inserts aren't blocked, but it takes longer. If the build fails,
+ *         an invalid index is left behind - it's ignored by queries, but must be dropped manually before retrying,
+ *         as {@code IF NOT EXISTS} skips it.</li>
+ *     <li>MySQL: built with {@code LOCK=NONE}, so InnoDB allows concurrent writes (or fails instead of locking).</li>
+ *     <li>Other dialects: writes to the table are blocked while the index is being built, therefore it's created only
+ *         if the table has at most {@link #MAX_ROWS_FOR_BLOCKING_CREATE} rows. For bigger tables, a warning with the
+ *         DDL is logged instead, to be run in a maintenance window.</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxIndexProvisioner {
+
+    /**
+     * For dialects which can't build indexes without blocking writes: max. number of rows in the outbox table for which
+     * the index is still created, so writes aren't blocked for long.
+     */
+    public static final int MAX_ROWS_FOR_BLOCKING_CREATE = 10_000;
+
+    // DI
+    private final DataSource dataSource;
+    private final TransactionOutboxProperties properties;
+    /**
+     * Not used directly, but migrates the default outbox table (if needed) before this bean is initialized.
+     */
+    private final TransactionOutbox transactionOutbox;
+
+    @PostConstruct
+    private void init() {
+        IndexProvisioning mode = Objects.requireNonNullElse(properties.getIndexProvisioning(),
+                IndexProvisioning.CHECK);
+
+        if (mode == IndexProvisioning.OFF) {
+            return;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            // PostgreSQL can't create indexes concurrently inside a transaction
+            connection.setAutoCommit(true);
+            provision(connection, mode);
+        } catch (Exception e) {
+            log.warn("Failed to check outbox table indexes: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks if an index serving claim queries exists and, if there's none, creates one or logs a warning.
+     *
+     * @param connection DB connection in autocommit mode
+     * @param mode       what to do if the index is missing
+     * @return {@code true} if the index exists (or has been created)
+     * @throws SQLException DB error
+     */
+    public boolean provision(Connection connection, IndexProvisioning mode) throws SQLException {
+        String tableName = OutboxSql.getTableName(properties);
+        String indexName = findClaimIndex(connection.getMetaData(), tableName);
+
+        if (indexName != null) {
+            log.debug("Outbox table '{}' has index '{}' serving claim queries", tableName, indexName);
+            return true;
+        }
+
+        indexName = OutboxSql.dueTasksIndexName(tableName);
+        String ddl = OutboxSql.dueTasksIndexDdl(properties.getDialect(), tableName);
+
+        if (mode != IndexProvisioning.CREATE) {
+            log.warn("Outbox table '{}' lacks an index serving claim queries, they will get slower as the table grows. "
+                    + "Create it with: {}", tableName, ddl);
+            return false;
+        }
+
+        if (OutboxSql.blocksWritesWhileCreatingIndex(properties.getDialect())
+                && hasMoreRowsThan(connection, tableName, MAX_ROWS_FOR_BLOCKING_CREATE)) {
+            log.warn("Outbox table '{}' lacks an index serving claim queries, but has more than {} rows, so it's not "
+                            + "created automatically, as that would block writes to the table. Create it with: {}",
+                    tableName, MAX_ROWS_FOR_BLOCKING_CREATE, ddl);
+            return false;
+        }
+
+        log.info("Creating index '{}' on outbox table '{}'", indexName, tableName);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(ddl);
+        }
+
+        log.info("Created index '{}' on outbox table '{}'", indexName, tableName);
+        return true;
+    }
+
+    private static boolean hasMoreRowsThan(Connection connection, String tableName, int maxRows) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // portable LIMIT
+            stmt.setMaxRows(maxRows + 1);
+
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM " + tableName)) {
+                int rows = 0;
+
+                while (rs.next()) {
+                    if (++rows > maxRows) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Looks for an index whose leading columns serve the claim predicate: {@code processed} and {@code blocked} (in any
+     * order) followed by {@code nextAttemptTime}, such as the library's {@code IX_TXNO_OUTBOX_1}, or
+     * {@code nextAttemptTime} alone, such as the partial index created by this class (the index predicate isn't
+     * exposed by JDBC metadata). Column names are compared ignoring case because DBs differ in how they store unquoted
+     * identifiers. With {@link TransactionOutboxProperties#getPartitioning()}, the index must also contain {@code id},
+     * so the bucket condition is checked without reading rows.
+     *
+     * @return index name or {@code null} if there's no such index
+     */
+    private String findClaimIndex(DatabaseMetaData metaData, String tableName) throws SQLException {
+        int dotIndex = tableName.lastIndexOf('.');
+        String schema = (dotIndex < 0)
+                ? null
+                : OutboxSql.toStoredCase(metaData, tableName.substring(0, dotIndex));
+        String table = OutboxSql.toStoredCase(metaData, tableName.substring(dotIndex + 1));
+
+        // index name -> columns in their order in the index
+        Map<String, SortedMap<Short, String>> indexColumns = new HashMap<>();
+
+        try (ResultSet rs = metaData.getIndexInfo(null, schema, table, false, true)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String columnName = rs.getString("COLUMN_NAME");
+
+                // table statistics rows have no index name, expression-based index parts have no column name
+                if ((indexName != null) && (columnName != null)) {
+                    indexColumns.computeIfAbsent(indexName, name -> new TreeMap<>())
+                            .put(rs.getShort("ORDINAL_POSITION"), columnName.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+
+        boolean partitioned = properties.getPartitioning() != null;
+
+        return indexColumns.entrySet()
+                .stream()
+                .filter(entry -> servesClaimQuery(List.copyOf(entry.getValue().values()), partitioned))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static boolean servesClaimQuery(List<String> columns, boolean partitioned) {
+        if (partitioned && !columns.contains("id")) {
+            return false;
+        }
+
+        if (columns.get(0).equals("nextattempttime")) {
+            return true;
+        }
+
+        return (columns.size() >= 3)
+                && Set.copyOf(columns.subList(0, 2)).equals(Set.of("processed", "blocked"))
+                && columns.get(2).equals("nextattempttime");
+    }
+
+}
@@ -0,0 +1,210 @@
+package guru.nicks.commons.outbox.sql;
+
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+
+import com.gruelbox.transactionoutbox.Dialect;
+import lombok.experimental.UtilityClass;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * SQL for the outbox table which the library doesn't provide. {@link Dialect} names are those accepted by
+ * {@link TransactionOutboxProperties#getDialect()}.
+ */
+@UtilityClass
+public class OutboxSql {
+
+    /**
+     * Library's default outbox table name.
+     */
+    public static final String DEFAULT_TABLE_NAME = "TXNO_OUTBOX";
+
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    /**
+     * @param properties properties
+     * @return {@link TransactionOutboxProperties#getTableName()} or {@link #DEFAULT_TABLE_NAME}
+     */
+    public static String getTableName(TransactionOutboxProperties properties) {
+        return Objects.requireNonNullElse(properties.getTableName(), DEFAULT_TABLE_NAME);
+    }
+
+    /**
+     * Converts an unquoted identifier to the case the DB stores it in, as expected by {@link DatabaseMetaData} lookups.
+     *
+     * @param metaData   DB metadata
+     * @param identifier identifier
+     * @return converted identifier
+     * @throws SQLException DB error
+     */
+    public static String toStoredCase(DatabaseMetaData metaData, String identifier) throws SQLException {
+        if (metaData.storesUpperCaseIdentifiers()) {
+            return identifier.toUpperCase(Locale.ROOT);
+        }
+
+        return metaData.storesLowerCaseIdentifiers()
+                ? identifier.toLowerCase(Locale.ROOT)
+                : identifier;
+    }
+
+    /**
+     * @param tableName table name, possibly schema-qualified
+     * @return name of the index serving claim queries, see {@link #dueTasksIndexDdl(String, String)}
+     */
+    public static String dueTasksIndexName(String tableName) {
+        return "IX_" + tableName.substring(tableName.lastIndexOf('.') + 1) + "_DUE";
+    }
+
+    /**
+     * Builds DDL for the index serving claim queries, which look for unprocessed, unblocked tasks whose
+     * {@code nextAttemptTime} has come. Where supported (PostgreSQL, SQL Server), the index is partial, so it contains
+     * due tasks only and stays small no matter how many processed / blocked rows are retained. Elsewhere it's a
+     * composite one, with the equality columns first. All variants end with {@code id}, so the bucket condition of
+     * partitioned claim queries (see {@link #idRangesCondition(Set)}) is checked within the index too.
+     * <p>
+     * On PostgreSQL, the index is built {@code CONCURRENTLY}, which can't be done inside a transaction. On MySQL, it's
+     * built with {@code LOCK=NONE}, so concurrent writes are allowed. Elsewhere, writes are blocked while the index is
+     * being built, see {@link #blocksWritesWhileCreatingIndex(String)}.
+     *
+     * @param dialect   dialect name
+     * @param tableName table name
+     * @return SQL
+     * @throws IllegalArgumentException unknown dialect
+     */
+    public static String dueTasksIndexDdl(String dialect, String tableName) {
+        String indexName = dueTasksIndexName(tableName);
+
+        return switch (dialect) {
+            case "POSTGRESQL_9" -> "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName + " ON " + tableName
+                    + " (nextAttemptTime, id) WHERE processed = false AND blocked = false";
+            case "MS_SQL_SERVER" -> "CREATE INDEX " + indexName + " ON " + tableName
+                    + " (nextAttemptTime, id) WHERE processed = 0 AND blocked = 0";
+            // covering for the claim predicate, so only matching rows are read from the table
+            case "MY_SQL_5", "MY_SQL_8" -> "CREATE INDEX " + indexName + " ON " + tableName
+                    + " (blocked, processed, nextAttemptTime, id) ALGORITHM=INPLACE LOCK=NONE";
+            case "H2" -> "CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableName
+                    + " (blocked, processed, nextAttemptTime, id)";
+            case "ORACLE" -> "CREATE INDEX " + indexName + " ON " + tableName
+                    + " (blocked, processed, nextAttemptTime, id)";
+            default -> throw new IllegalArgumentException("Unknown dialect: '" + dialect + "'");
+        };
+    }
+
+    /**
+     * @param dialect dialect name
+     * @return {@code true} if {@link #dueTasksIndexDdl(String, String)} blocks writes to the table while the index is
+     *         being built
+     */
+    public static boolean blocksWritesWhileCreatingIndex(String dialect) {
+        return switch (dialect) {
+            case "POSTGRESQL_9", "MY_SQL_5", "MY_SQL_8" -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * @param tableName table name, possibly schema-qualified
+     * @return PostgreSQL channel notified on inserts into the table, see
+     *         {@link #postgresNotifyTriggerDdl(String)}
+     */
+    public static String notifyChannel(String tableName) {
+        return tableName.replace('.', '_').toLowerCase(Locale.ROOT) + "_inserted";
+    }
+
+    /**
+     * @param tableName table name, possibly schema-qualified
+     * @return name of the trigger built by {@link #postgresNotifyTriggerDdl(String)}
+     */
+    public static String postgresNotifyTriggerName(String tableName) {
+        return notifyChannel(tableName) + "_trigger";
+    }
+
+    /**
+     * Builds PostgreSQL DDL for a trigger notifying {@link #notifyChannel(String)} on inserts into the table. The
+     * trigger fires once per statement, and PostgreSQL delivers notifications on commit only, merging identical ones
+     * sent in the same transaction. The statements are idempotent.
+     *
+     * @param tableName table name
+     * @return SQL statements to execute in order
+     */
+    public static List<String> postgresNotifyTriggerDdl(String tableName) {
+        String channel = notifyChannel(tableName);
+        String functionName = channel + "_notify";
+        String triggerName = postgresNotifyTriggerName(tableName);
+
+        return List.of(
+                "CREATE OR REPLACE FUNCTION " + functionName + "() RETURNS trigger AS $$ "
+                        + "BEGIN PERFORM pg_notify('" + channel + "', ''); RETURN NULL; END; "
+                        + "$$ LANGUAGE plpgsql",
+                "DO $$ BEGIN "
+                        + "IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = '" + triggerName + "') THEN "
+                        + "CREATE TRIGGER " + triggerName + " AFTER INSERT ON " + tableName
+                        + " FOR EACH STATEMENT EXECUTE PROCEDURE " + functionName + "(); "
+                        + "END IF; END $$");
+    }
+
+    /**
+     * @param tableName outbox table name, possibly schema-qualified
+     * @return name of the table where apps processing the outbox table record their heartbeats
+     */
+    public static String nodesTableName(String tableName) {
+        return tableName + "_NODES";
+    }
+
+    /**
+     * Builds idempotent DDL for {@link #nodesTableName(String)}.
+     *
+     * @param dialect        dialect name
+     * @param nodesTableName table name
+     * @return SQL
+     * @throws IllegalArgumentException dialect doesn't support {@code CREATE TABLE IF NOT EXISTS}
+     */
+    public static String createNodesTableDdl(String dialect, String nodesTableName) {
+        return switch (dialect) {
+            case "POSTGRESQL_9", "MY_SQL_5", "MY_SQL_8", "H2" -> "CREATE TABLE IF NOT EXISTS " + nodesTableName
+                    + " (nodeId VARCHAR(36) NOT NULL PRIMARY KEY, lastHeartbeat TIMESTAMP(6) NOT NULL)";
+            default -> throw new IllegalArgumentException("Partitioning is not supported for dialect '"
+                    + dialect + "'");
+        };
+    }
+
+    /**
+     * Builds a condition selecting tasks whose IDs start with one of the given buckets, as ranges over {@code id}
+     * (adjacent buckets are merged), so it's checked within the index serving claim queries (see
+     * {@link #dueTasksIndexDdl(String, String)}) rather than by reading each row.
+     *
+     * @param buckets buckets (two lowercase hex digits each), not empty
+     * @return SQL condition without placeholders
+     */
+    public static String idRangesCondition(Set<String> buckets) {
+        int[] sorted = buckets.stream()
+                .mapToInt(HexFormat::fromHexDigits)
+                .sorted()
+                .toArray();
+        List<String> ranges = new ArrayList<>();
+
+        for (int i = 0; i < sorted.length; i++) {
+            int from = sorted[i];
+
+            while ((i + 1 < sorted.length) && (sorted[i + 1] == sorted[i] + 1)) {
+                i++;
+            }
+
+            // lowercase hex digits sort the same way in all collations; no upper bound past the last bucket
+            ranges.add((sorted[i] == 0xff)
+                    ? "id >= '" + HEX_FORMAT.toHexDigits((byte) from) + "'"
+                    : "(id >= '" + HEX_FORMAT.toHexDigits((byte) from) + "' AND id < '"
+                            + HEX_FORMAT.toHexDigits((byte) (sorted[i] + 1)) + "')");
+        }
+
+        return String.join(" OR ", ranges);
+    }
+
+}
@@ -0,0 +1,345 @@
+package guru.nicks.commons.outbox.submitter;
+
+import guru.nicks.commons.outbox.annotation.BulkCounterpart;
+import guru.nicks.commons.outbox.metrics.MeteredSubmitter;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.TransactionOutboxListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Executes tasks calling methods annotated with {@link BulkCounterpart} in chunks, passing all other tasks to the
+ * delegate submitter as is. Tasks are buffered per method until there are {@code chunkSize} of them, or until
+ * {@code linger} has passed since the first one was buffered. Then the whole chunk is handed over to the delegate (so it
+ * runs on the same executor and is rejected the same way) and executed in one transaction:
+ * <ol>
+ *     <li>the rows are locked the same way the library locks them before executing a single task (rows changed by
+ *         someone else in the meantime are left out)</li>
+ *     <li>the bulk method is called once with the arguments of all the locked tasks</li>
+ *     <li>the rows are settled the same way the library settles successful tasks: deleted, or marked as processed if
+ *         they have a unique request ID</li>
+ * </ol>
+ * If the bulk call fails, nothing is settled, and each task of the chunk is executed on its own (therefore failures are
+ * attributed to particular tasks and retried as usual). Whatever the bulk method did before failing outside of the
+ * transaction is then done again: for example, messages it had already sent to a broker are sent once more by the
+ * single method. Bulk methods should therefore fail before their first side effect, or the single method should be
+ * idempotent.
+ * <p>
+ * Buffered tasks have already been claimed for the per-task retry delay, so {@code linger} must be shorter than that
+ * delay, otherwise the background job of another app may claim them again while they're waiting. If the app stops
+ * before the chunk is executed (see {@link #close()}), they're retried after that delay, just like tasks rejected by a
+ * saturated executor.
+ * <p>
+ * Like {@link MeteredSubmitter} does for single tasks, each task of a successful chunk is reported to
+ * {@link OutboxMetrics} (if any) as submitted and executed, with an equal share of the chunk's execution time. Tasks
+ * executed one by one after a failed bulk call are reported by the submitter which passed them in.
+ */
+@Slf4j
+public class BulkSubmitter implements Submitter, AutoCloseable {
+
+    private final Submitter delegate;
+    private final Instantiator instantiator;
+    private final TransactionManager transactionManager;
+    private final Persistor persistor;
+    private final TransactionOutboxListener listener;
+    @Nullable
+    private final OutboxMetrics metrics;
+    private final int chunkSize;
+    private final Duration linger;
+    private final Duration retentionThreshold;
+
+    /**
+     * Bean name, method name, and parameter types -> bulk method, if any.
+     */
+    private final Map<List<Object>, Optional<Method>> bulkMethods = new ConcurrentHashMap<>();
+
+    /**
+     * Tasks waiting for their chunk to be complete, per bean name and bulk method. Guarded by itself.
+     */
+    private final Map<BufferKey, List<BufferedTask>> buffers = new HashMap<>();
+
+    private final ScheduledExecutorService lingerScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("outbox-bulk-linger").daemon(true).factory());
+
+    /**
+     * Once set, tasks are no longer buffered. Guarded by {@link #buffers}.
+     */
+    private boolean closed;
+
+    /**
+     * @param delegate           executes single tasks and chunks
+     * @param instantiator       resolves bean names stored in invocations to beans
+     * @param transactionManager runs each chunk in a transaction
+     * @param persistor          locks and settles rows
+     * @param listener           notified about tasks succeeded in chunks
+     * @param metrics            reports tasks executed in chunks, may be {@code null}
+     * @param chunkSize          max. number of tasks per bulk call
+     * @param linger             max. time to wait for a chunk to be complete
+     * @param perTaskRetryDelay  how long claimed tasks are leased to this app, must exceed {@code linger}
+     * @param retentionThreshold how long processed tasks with a unique request ID are retained
+     */
+    public BulkSubmitter(Submitter delegate, Instantiator instantiator, TransactionManager transactionManager,
+            Persistor persistor, TransactionOutboxListener listener, @Nullable OutboxMetrics metrics, int chunkSize,
+            Duration linger, Duration perTaskRetryDelay, Duration retentionThreshold) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        if (linger.compareTo(perTaskRetryDelay) >= 0) {
+            throw new IllegalArgumentException("Linger (" + linger + ") must be shorter than per-task retry delay ("
+                    + perTaskRetryDelay + ")");
+        }
+
+        this.delegate = delegate;
+        this.instantiator = instantiator;
+        this.transactionManager = transactionManager;
+        this.persistor = persistor;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.chunkSize = chunkSize;
+        this.linger = linger;
+        this.retentionThreshold = retentionThreshold;
+    }
+
+    @Override
+    public void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
+        Optional<Method> bulkMethod = findBulkMethod(entry.getInvocation());
+
+        if (bulkMethod.isEmpty()) {
+            delegate.submit(entry, localExecutor);
+            return;
+        }
+
+        var bufferKey = new BufferKey(entry.getInvocation().getClassName(), bulkMethod.get());
+        List<BufferedTask> chunk = null;
+        boolean buffered = false;
+        boolean firstInChunk = false;
+
+        synchronized (buffers) {
+            // after close, buffered tasks would never be submitted
+            if (!closed) {
+                List<BufferedTask> buffer = buffers.computeIfAbsent(bufferKey, key -> new ArrayList<>());
+                buffer.add(new BufferedTask(entry, localExecutor));
+                buffered = true;
+                firstInChunk = (buffer.size() == 1);
+
+                if (buffer.size() >= chunkSize) {
+                    chunk = buffers.remove(bufferKey);
+                }
+            }
+        }
+
+        if (!buffered) {
+            delegate.submit(entry, localExecutor);
+        } else if (chunk != null) {
+            submitChunk(bufferKey, chunk);
+        } else if (firstInChunk) {
+            scheduleLinger(bufferKey);
+        }
+    }
+
+    /**
+     * Stops buffering tasks: those waiting for their chunk are left to the background job (which retries them after
+     * their per-task retry delay), new ones are passed to the delegate submitter one by one. Called by Spring on
+     * shutdown if this submitter is (or is wrapped by {@link MeteredSubmitter} in) a bean.
+     */
+    @Override
+    public void close() {
+        int dropped;
+
+        synchronized (buffers) {
+            closed = true;
+            dropped = buffers.values().stream()
+                    .mapToInt(List::size)
+                    .sum();
+            buffers.clear();
+        }
+
+        lingerScheduler.shutdownNow();
+
+        if (dropped > 0) {
+            log.info("Left {} buffered outbox task(s) to the background job", dropped);
+        }
+    }
+
+    private void scheduleLinger(BufferKey bufferKey) {
+        try {
+            lingerScheduler.schedule(() -> submitBuffered(bufferKey), linger.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed in the meantime, the buffer has been dropped
+            log.debug("Bulk submitter closed, leaving buffered outbox tasks to the background job");
+        }
+    }
+
+    private void submitBuffered(BufferKey bufferKey) {
+        List<BufferedTask> chunk;
+
+        synchronized (buffers) {
+            chunk = buffers.remove(bufferKey);
+        }
+
+        if (chunk != null) {
+            submitChunk(bufferKey, chunk);
+        }
+    }
+
+    private void submitChunk(BufferKey bufferKey, List<BufferedTask> chunk) {
+        log.trace("Submitting chunk of {} outbox task(s) for {}.{}()", chunk.size(), bufferKey.beanName(),
+                bufferKey.bulkMethod().getName());
+        // if the delegate rejects the chunk, all its tasks are left to the background job, as single ones would be
+        delegate.submit(chunk.getFirst().entry(), first -> executeChunk(bufferKey, chunk));
+    }
+
+    private void executeChunk(BufferKey bufferKey, List<BufferedTask> chunk) {
+        Method bulkMethod = bufferKey.bulkMethod();
+        List<TransactionOutboxEntry> settled;
+        long start = System.nanoTime();
+
+        try {
+            settled = transactionManager.inTransactionReturnsThrows(tx -> {
+                List<TransactionOutboxEntry> locked = new ArrayList<>(chunk.size());
+
+                for (BufferedTask task : chunk) {
+                    if (persistor.lock(tx, task.entry())) {
+                        locked.add(task.entry());
+                    }
+                }
+
+                if (locked.isEmpty()) {
+                    return locked;
+                }
+
+                Object bean = instantiator.getInstance(bufferKey.beanName());
+                List<Object> args = locked.stream()
+                        .map(lockedEntry -> lockedEntry.getInvocation().getArgs()[0])
+                        .toList();
+                ReflectionUtils.invokeMethod(bulkMethod, bean, args);
+
+                Instant now = Instant.now();
+
+                for (TransactionOutboxEntry lockedEntry : locked) {
+                    settle(tx, lockedEntry, now);
+                }
+
+                return locked;
+            });
+        } catch (Exception e) {
+            log.warn("Bulk call {}() of {} outbox task(s) failed, executing them one by one: {}",
+                    bulkMethod.getName(), chunk.size(), e.toString());
+            chunk.forEach(task -> task.localExecutor().accept(task.entry()));
+            return;
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        for (TransactionOutboxEntry entry : settled) {
+            if (metrics != null) {
+                metrics.taskSubmitted();
+                metrics.taskExecuted(entry, elapsed / settled.size());
+            }
+
+            listener.success(entry);
+        }
+    }
+
+    /**
+     * Same as the library does after a single task has succeeded.
+     */
+    private void settle(Transaction tx, TransactionOutboxEntry entry, Instant now) throws Exception {
+        if (entry.getUniqueRequestId() == null) {
+            persistor.delete(tx, entry);
+        } else {
+            entry.setProcessed(true);
+            entry.setLastAttemptTime(now);
+            entry.setNextAttemptTime(now.plus(retentionThreshold));
+            persistor.update(tx, entry);
+        }
+    }
+
+    private Optional<Method> findBulkMethod(Invocation invocation) {
+        List<Object> methodKey = List.of(invocation.getClassName(), invocation.getMethodName(),
+                Arrays.asList(invocation.getParameterTypes()));
+
+        return bulkMethods.computeIfAbsent(methodKey, key -> {
+            if (invocation.getParameterTypes().length != 1) {
+                return Optional.empty();
+            }
+
+            Class<?> beanType = findBeanType(invocation.getClassName());
+
+            if (beanType == null) {
+                return Optional.empty();
+            }
+
+            Method method = ReflectionUtils.findMethod(beanType, invocation.getMethodName(),
+                    invocation.getParameterTypes());
+            BulkCounterpart annotation = (method == null)
+                    ? null
+                    : AnnotatedElementUtils.findMergedAnnotation(method, BulkCounterpart.class);
+
+            if (annotation == null) {
+                return Optional.empty();
+            }
+
+            Method bulkMethod = Optional
+                    .ofNullable(ReflectionUtils.findMethod(beanType, annotation.value(), List.class))
+                    .orElseGet(() -> ReflectionUtils.findMethod(beanType, annotation.value(), Collection.class));
+
+            if (bulkMethod == null) {
+                log.error("Bulk counterpart {}(List) of {}.{}() not found, executing tasks one by one",
+                        annotation.value(), beanType.getName(), method.getName());
+                return Optional.empty();
+            }
+
+            ReflectionUtils.makeAccessible(bulkMethod);
+            return Optional.of(bulkMethod);
+        });
+    }
+
+    /**
+     * @return {@code null} if the bean is missing in this app (the library will fail the task as usual)
+     */
+    @Nullable
+    private Class<?> findBeanType(String beanName) {
+        try {
+            return ClassUtils.getUserClass(instantiator.getInstance(beanName));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private record BufferKey(String beanName, Method bulkMethod) {
+    }
+
+    private record BufferedTask(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
+    }
+
+}
@@ -0,0 +1,86 @@
+package guru.nicks.commons.outbox.submitter;
+
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Executes each task on a new virtual thread, which suits I/O-bound tasks (HTTP calls, message broker sends): thousands
+ * of them can wait for responses at the same time without occupying thousands of OS threads. Concurrency is capped by
+ * a semaphore rather than by a pool size; once the cap is reached, tasks are not executed immediately but left to the
+ * background job (the same as tasks rejected by a saturated executor), so nothing is queued in memory.
+ * <p>
+ * <b>Pinning:</b> before JDK 24, a virtual thread blocking inside a {@code synchronized} block pins its carrier thread,
+ * so the number of tasks really running in parallel drops to the number of carriers (CPU cores by default). Each task
+ * is executed in its own transaction, therefore the JDBC driver and the connection pool must not block inside
+ * {@code synchronized} blocks: PostgreSQL JDBC 42.6+, MySQL Connector/J 9+ and HikariCP 5+ use
+ * {@link java.util.concurrent.locks.ReentrantLock} instead. On older JDKs, pinning is reported by running with
+ * {@code -Djdk.tracePinnedThreads=full}, on any JDK - by the {@code jdk.VirtualThreadPinned} JFR event.
+ * <p>
+ * The cap should also take the DB connection pool size into account: tasks waiting for a connection don't pin
+ * carriers, but they do hold permits.
+ */
+@Slf4j
+public class VirtualThreadSubmitter implements Submitter {
+
+    public static final int DEFAULT_MAX_CONCURRENT_TASKS = 1000;
+
+    private static final ThreadFactory THREAD_FACTORY = Thread.ofVirtual()
+            .name("outbox-task-", 0)
+            .factory();
+
+    private final Semaphore permits;
+    private final int maxConcurrentTasks;
+
+    /**
+     * @param maxConcurrentTasks max. number of tasks executed at the same time
+     */
+    public VirtualThreadSubmitter(int maxConcurrentTasks) {
+        if (maxConcurrentTasks < 1) {
+            throw new IllegalArgumentException("Max. concurrent tasks must be positive");
+        }
+
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        permits = new Semaphore(maxConcurrentTasks);
+
+        if (Runtime.version().feature() < 24) {
+            log.info("Outbox tasks run on virtual threads, which can pin carrier threads inside synchronized blocks "
+                    + "on JDK {} - run with -Djdk.tracePinnedThreads=full to check JDBC code paths",
+                    Runtime.version().feature());
+        }
+    }
+
+    @Override
+    public void submit(TransactionOutboxEntry entry, Consumer<TransactionOutboxEntry> localExecutor) {
+        if (!permits.tryAcquire()) {
+            log.debug("{} outbox tasks are already running, leaving task {} to background job",
+                    maxConcurrentTasks, entry.getId());
+            return;
+        }
+
+        try {
+            THREAD_FACTORY.newThread(() -> {
+                try {
+                    localExecutor.accept(entry);
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of tasks being executed right now
+     */
+    public int getActiveTaskCount() {
+        return maxConcurrentTasks - permits.availablePermits();
+    }
+
+}
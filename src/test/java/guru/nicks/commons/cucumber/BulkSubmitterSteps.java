@@ -0,0 +1,231 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.annotation.BulkCounterpart;
+import guru.nicks.commons.outbox.metrics.MeteredSubmitter;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.submitter.BulkSubmitter;
+
+import com.gruelbox.transactionoutbox.Instantiator;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.ThrowingTransactionalSupplier;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.TransactionOutboxListener;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link BulkSubmitter}.
+ */
+public class BulkSubmitterSteps {
+
+    @Mock
+    private Instantiator instantiator;
+    @Mock
+    private TransactionManager transactionManager;
+    @Mock
+    private Transaction transaction;
+    @Mock
+    private Persistor persistor;
+    @Mock
+    private TransactionOutboxListener listener;
+    private AutoCloseable closeableMocks;
+
+    private final MessageService messageService = new MessageService();
+    private SimpleMeterRegistry meterRegistry;
+    private OutboxMetrics metrics;
+    private BulkSubmitter bulkSubmitter;
+    private MeteredSubmitter submitter;
+    private Duration linger;
+
+    @Before
+    public void beforeEachScenario() throws Exception {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+
+        when(instantiator.getInstance("messageService"))
+                .thenReturn(messageService);
+        when(persistor.lock(any(Transaction.class), any(TransactionOutboxEntry.class)))
+                .thenReturn(true);
+        when(transactionManager.inTransactionReturnsThrows(any()))
+                .thenAnswer(invocation -> invocation.<ThrowingTransactionalSupplier<?, ?>>getArgument(0)
+                        .doWork(transaction));
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        if (bulkSubmitter != null) {
+            bulkSubmitter.close();
+        }
+
+        closeableMocks.close();
+    }
+
+    @Given("bulk submitter with chunk size {int} and linger {word}")
+    public void bulkSubmitterWithChunkSizeAndLinger(int chunkSize, String linger) {
+        this.linger = Duration.parse(linger);
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new OutboxMetrics(meterRegistry);
+
+        bulkSubmitter = createBulkSubmitter(chunkSize, this.linger, Duration.ofMinutes(1), metrics);
+        // same order as in the auto-configuration
+        submitter = new MeteredSubmitter(bulkSubmitter, metrics);
+    }
+
+    @Then("creating bulk submitter with linger {word} and per-task retry delay {word} should fail")
+    public void creatingBulkSubmitterShouldFail(String linger, String perTaskRetryDelay) {
+        assertThatThrownBy(() -> createBulkSubmitter(5, Duration.parse(linger), Duration.parse(perTaskRetryDelay),
+                null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("must be shorter than per-task retry delay");
+    }
+
+    @When("bulk submitter is closed")
+    public void bulkSubmitterIsClosed() throws Exception {
+        submitter.close();
+    }
+
+    @Given("bulk method fails")
+    public void bulkMethodFails() {
+        messageService.bulkFailure = true;
+    }
+
+    @When("{int} tasks calling {string} are submitted")
+    public void tasksCallingAreSubmitted(int count, String method) {
+        submitTasks(count, method, false);
+    }
+
+    @When("{int} tasks with unique request IDs calling {string} are submitted")
+    public void tasksWithUniqueRequestIdsCallingAreSubmitted(int count, String method) {
+        submitTasks(count, method, true);
+    }
+
+    @When("chunks have lingered")
+    public void chunksHaveLingered() throws InterruptedException {
+        Thread.sleep(linger.multipliedBy(5));
+    }
+
+    @Then("bulk method should have been called {int} time(s) with {int} messages in total")
+    public void bulkMethodShouldHaveBeenCalled(int calls, int messages) {
+        assertThat(messageService.bulkCalls.get())
+                .as("bulk calls")
+                .isEqualTo(calls);
+        assertThat(messageService.bulkMessages.get())
+                .as("messages sent in bulk")
+                .isEqualTo(messages);
+    }
+
+    @Then("single method should have been called {int} time(s)")
+    public void singleMethodShouldHaveBeenCalled(int calls) {
+        assertThat(messageService.singleCalls.get())
+                .as("single calls")
+                .isEqualTo(calls);
+    }
+
+    @Then("{int} tasks should have been deleted")
+    public void tasksShouldHaveBeenDeleted(int count) throws Exception {
+        verify(persistor, times(count)).delete(any(Transaction.class), any(TransactionOutboxEntry.class));
+    }
+
+    @Then("{int} tasks should have been marked as processed")
+    public void tasksShouldHaveBeenMarkedAsProcessed(int count) throws Exception {
+        verify(persistor, times(count)).update(any(Transaction.class), argThat(TransactionOutboxEntry::isProcessed));
+    }
+
+    @Then("{int} tasks should have succeeded")
+    public void tasksShouldHaveSucceeded(int count) {
+        verify(listener, times(count)).success(any(TransactionOutboxEntry.class));
+    }
+
+    @Then("{int} tasks should have been reported as submitted and executed")
+    public void tasksShouldHaveBeenReportedAsSubmittedAndExecuted(int count) {
+        assertThat(metrics.getSubmittedTaskCount())
+                .as("submitted tasks")
+                .isEqualTo(count);
+        assertThat(meterRegistry.find("outbox.task.execution").timers().stream()
+                .mapToLong(Timer::count)
+                .sum())
+                .as("executed tasks")
+                .isEqualTo(count);
+    }
+
+    private BulkSubmitter createBulkSubmitter(int chunkSize, Duration linger, Duration perTaskRetryDelay,
+            OutboxMetrics metrics) {
+        return new BulkSubmitter((entry, localExecutor) -> localExecutor.accept(entry), instantiator,
+                transactionManager, persistor, listener, metrics, chunkSize, linger, perTaskRetryDelay,
+                Duration.ofDays(7));
+    }
+
+    private void submitTasks(int count, String method, boolean unique) {
+        for (int i = 0; i < count; i++) {
+            var entry = TransactionOutboxEntry.builder()
+                    .id(UUID.randomUUID().toString())
+                    .uniqueRequestId(unique ? UUID.randomUUID().toString() : null)
+                    .invocation(new Invocation("messageService", method, new Class<?>[]{String.class},
+                            new Object[]{"message-" + i}))
+                    .build();
+
+            // what the library does for a single task
+            submitter.submit(entry, task -> {
+                try {
+                    MessageService.class.getMethod(method, String.class)
+                            .invoke(messageService, task.getInvocation().getArgs()[0]);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Outboxed bean.
+     */
+    public static class MessageService {
+
+        private final AtomicInteger singleCalls = new AtomicInteger();
+        private final AtomicInteger bulkCalls = new AtomicInteger();
+        private final AtomicInteger bulkMessages = new AtomicInteger();
+        private volatile boolean bulkFailure;
+
+        @BulkCounterpart("sendAll")
+        public void send(String message) {
+            singleCalls.incrementAndGet();
+        }
+
+        public void sendAll(List<String> messages) {
+            if (bulkFailure) {
+                throw new IllegalStateException("Broker unavailable");
+            }
+
+            bulkCalls.incrementAndGet();
+            bulkMessages.addAndGet(messages.size());
+        }
+
+        public void publish(String message) {
+            singleCalls.incrementAndGet();
+        }
+
+    }
+
+}
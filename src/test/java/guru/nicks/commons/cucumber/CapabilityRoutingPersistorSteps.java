@@ -0,0 +1,158 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.persistor.CapabilityRoutingPersistor;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link CapabilityRoutingPersistor}.
+ */
+public class CapabilityRoutingPersistorSteps {
+
+    @Mock
+    private Persistor delegate;
+    @Mock
+    private Transaction transaction;
+    private AutoCloseable closeableMocks;
+
+    private static final Duration PUSH_BACK_DELAY = Duration.ofMinutes(1);
+
+    private CapabilityRoutingPersistor persistor;
+    private List<TransactionOutboxEntry> batch;
+    private Collection<TransactionOutboxEntry> selected;
+    private Instant now;
+
+    @Before
+    public void beforeEachScenario() {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        closeableMocks.close();
+    }
+
+    @Given("beans present in the app are {string}")
+    public void beansPresentInTheAppAre(String beans) {
+        persistor = new CapabilityRoutingPersistor(delegate, Set.of(beans.split(","))::contains, PUSH_BACK_DELAY);
+    }
+
+    @Given("selected batch refers to beans {string}")
+    public void selectedBatchRefersToBeans(String beans) throws Exception {
+        batch = createBatch(beans);
+
+        // pushed back tasks aren't selected again
+        when(delegate.selectBatch(any(Transaction.class), anyInt(), any(Instant.class)))
+                .thenReturn(batch, List.of());
+        when(delegate.selectNextInTopics(any(Transaction.class), anyInt(), any(Instant.class)))
+                .thenReturn(batch, List.of());
+    }
+
+    @Given("selected batches refer to beans {string} and then to beans {string}")
+    public void selectedBatchesReferToBeans(String firstBeans, String secondBeans) throws Exception {
+        batch = createBatch(firstBeans);
+
+        when(delegate.selectBatch(any(Transaction.class), anyInt(), any(Instant.class)))
+                .thenReturn(batch, createBatch(secondBeans), List.of());
+    }
+
+    @Given("every selected batch is full of tasks referring to bean {string}")
+    public void everySelectedBatchIsFullOfTasksReferringToBean(String bean) throws Exception {
+        when(delegate.selectBatch(any(Transaction.class), anyInt(), any(Instant.class)))
+                .thenAnswer(invocation -> createBatch(String.join(",",
+                        Collections.nCopies(invocation.<Integer>getArgument(1), bean))));
+    }
+
+    @When("batch is selected")
+    public void batchIsSelected() throws Exception {
+        now = Instant.now();
+        selected = persistor.selectBatch(transaction, 100, now);
+    }
+
+    @When("batch of {int} is selected")
+    public void batchOfIsSelected(int batchSize) throws Exception {
+        now = Instant.now();
+        selected = persistor.selectBatch(transaction, batchSize, now);
+    }
+
+    @When("next tasks in topics are selected")
+    public void nextTasksInTopicsAreSelected() throws Exception {
+        now = Instant.now();
+        selected = persistor.selectNextInTopics(transaction, 100, now);
+    }
+
+    @Then("selected tasks should refer to beans {string}")
+    public void selectedTasksShouldReferToBeans(String beans) {
+        assertThat(selected)
+                .extracting(entry -> entry.getInvocation().getClassName())
+                .containsExactly(beans.split(","));
+    }
+
+    @Then("no tasks should be selected")
+    public void noTasksShouldBeSelected() {
+        assertThat(selected)
+                .isEmpty();
+    }
+
+    @Then("{int} task(s) referring to missing beans should be pushed back without burning attempts")
+    public void tasksShouldBePushedBack(int count) throws Exception {
+        verify(delegate, times(count)).update(eq(transaction), argThat(entry ->
+                entry.getNextAttemptTime().equals(now.plus(PUSH_BACK_DELAY)) && (entry.getAttempts() == 0)));
+    }
+
+    @Then("{int} batches should be selected")
+    public void batchesShouldBeSelected(int count) throws Exception {
+        verify(delegate, times(count)).selectBatch(any(Transaction.class), anyInt(), any(Instant.class));
+    }
+
+    @Then("{int} batch(es) of {int} should be selected")
+    public void batchesOfShouldBeSelected(int count, int batchSize) throws Exception {
+        verify(delegate, times(count)).selectBatch(any(Transaction.class), eq(batchSize), any(Instant.class));
+    }
+
+    @Then("tasks referring to present beans should not be updated")
+    public void tasksReferringToPresentBeansShouldNotBeUpdated() throws Exception {
+        verify(delegate, never()).update(eq(transaction), argThat(entry ->
+                !entry.getInvocation().getClassName().equals("billingService")));
+    }
+
+    private List<TransactionOutboxEntry> createBatch(String beans) {
+        return Arrays.stream(beans.split(","))
+                .map(bean -> TransactionOutboxEntry.builder()
+                        .id(UUID.randomUUID().toString())
+                        .invocation(new Invocation(bean, "someMethod", new Class<?>[0], new Object[0]))
+                        .nextAttemptTime(Instant.now())
+                        .build())
+                .toList();
+    }
+
+}
@@ -0,0 +1,163 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.annotation.CoalesceInTransaction;
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskScheduledEvent;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.persistor.CoalescingPersistor;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Step definitions for testing {@link CoalescingPersistor}.
+ */
+public class CoalescingPersistorSteps {
+
+    @Mock
+    private Persistor delegate;
+    @Mock
+    private Transaction transaction;
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+    private AutoCloseable closeableMocks;
+
+    private CoalescingPersistor persistor;
+    private SimpleMeterRegistry meterRegistry;
+    private final List<TransactionOutboxEntry> scheduledTasks = new ArrayList<>();
+
+    @Before
+    public void beforeEachScenario() {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+
+        var beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("cacheService", new CacheService());
+        persistor = new CoalescingPersistor(delegate, InvocationSerializer.createDefaultJsonSerializer(), beanFactory);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        theTransactionIsCompleted();
+        closeableMocks.close();
+    }
+
+    @Given("a transaction is active")
+    public void aTransactionIsActive() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @When("the transaction is completed")
+    public void theTransactionIsCompleted() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    }
+
+    @When("method {string} is scheduled with argument {string}")
+    public void methodIsScheduledWithArgument(String method, String argument) throws Exception {
+        save(createTask(method, argument, null));
+    }
+
+    @When("method {string} is scheduled with argument {string} in topic {string}")
+    public void methodIsScheduledWithArgumentInTopic(String method, String argument, String topic) throws Exception {
+        save(createTask(method, argument, topic));
+    }
+
+    @When("method {string} is scheduled with argument {string} and tracked")
+    public void methodIsScheduledWithArgumentAndTracked(String method, String argument) throws Exception {
+        var task = createTask(method, argument, null);
+        task.getInvocation().getMdc().put(OutboxCompletionRegistry.MDC_KEY, UUID.randomUUID().toString());
+        save(task);
+    }
+
+    @When("the task listener is notified of the scheduled tasks")
+    public void theTaskListenerIsNotifiedOfTheScheduledTasks() {
+        meterRegistry = new SimpleMeterRegistry();
+        var listener = new TransactionOutboxTaskListener(TransactionOutboxProperties.builder().build(),
+                applicationEventPublisher, new OutboxMetrics(meterRegistry), null);
+
+        // as the library's post-commit hook does, before the transaction's resources are unbound
+        scheduledTasks.forEach(listener::scheduled);
+    }
+
+    @Then("task #{int} should be reported as skipped: {booleanValue}")
+    public void taskShouldBeReportedAsSkipped(int number, boolean skipped) {
+        assertThat(CoalescingPersistor.isSkipped(scheduledTasks.get(number - 1)))
+                .isEqualTo(skipped);
+    }
+
+    @Then("the task listener should have counted and published {int} scheduled task(s)")
+    public void theTaskListenerShouldHaveCountedAndPublishedScheduledTasks(int count) {
+        assertThat(meterRegistry.find("outbox.tasks").tag("event", "scheduled").counter())
+                .isNotNull()
+                .satisfies(counter -> assertThat(counter.count()).isEqualTo(count));
+        verify(applicationEventPublisher, times(count)).publishEvent(any(TransactionOutboxTaskScheduledEvent.class));
+    }
+
+    @Then("{int} tasks should have been saved")
+    public void tasksShouldHaveBeenSaved(int count) throws Exception {
+        verify(delegate, times(count)).save(any(Transaction.class), any(TransactionOutboxEntry.class));
+    }
+
+    private void save(TransactionOutboxEntry task) throws Exception {
+        scheduledTasks.add(task);
+        persistor.save(transaction, task);
+    }
+
+    private static TransactionOutboxEntry createTask(String method, String argument, String topic) {
+        return TransactionOutboxEntry.builder()
+                .id(UUID.randomUUID().toString())
+                .topic(topic)
+                .invocation(new Invocation("cacheService", method, new Class<?>[]{String.class},
+                        new Object[]{argument}, new HashMap<>()))
+                .build();
+    }
+
+    /**
+     * Outboxed bean.
+     */
+    public static class CacheService {
+
+        @CoalesceInTransaction
+        public void refresh(String entityId) {
+            // nothing to do
+        }
+
+        public void publish(String entityId) {
+            // nothing to do
+        }
+
+    }
+
+}
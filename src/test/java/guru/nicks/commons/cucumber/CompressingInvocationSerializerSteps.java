@@ -0,0 +1,153 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.serializer.CompressingInvocationSerializer;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Step definitions for testing {@link CompressingInvocationSerializer}.
+ */
+public class CompressingInvocationSerializerSteps {
+
+    private final InvocationSerializer plainSerializer = InvocationSerializer.createDefaultJsonSerializer();
+    private CompressingInvocationSerializer serializer;
+    private String argument;
+    private String stored;
+    private Invocation deserialized;
+    private List<String> roundTripMismatches;
+
+    @Given("compressing invocation serializer with threshold {int}")
+    public void compressingInvocationSerializerWithThreshold(int threshold) {
+        serializer = new CompressingInvocationSerializer(plainSerializer, threshold);
+    }
+
+    @When("an invocation with a {int}-character argument is serialized and deserialized")
+    public void anInvocationIsSerializedAndDeserialized(int length) throws Exception {
+        var writer = new StringWriter();
+        serializer.serializeInvocation(createInvocation(length), writer);
+        stored = writer.toString();
+
+        deserialized = serializer.deserializeInvocation(new StringReader(stored));
+    }
+
+    @When("an invocation with a {int}-character non-ASCII argument is serialized and deserialized")
+    public void anInvocationWithNonAsciiArgumentIsSerializedAndDeserialized(int length) throws Exception {
+        argument = "\u0436".repeat(length);
+        var writer = new StringWriter();
+        serializer.serializeInvocation(new Invocation("someBean", "someMethod", new Class<?>[]{String.class},
+                new Object[]{argument}), writer);
+        stored = writer.toString();
+
+        deserialized = serializer.deserializeInvocation(new StringReader(stored));
+    }
+
+    @When("an uncompressed invocation with a {int}-character argument is deserialized")
+    public void anUncompressedInvocationIsDeserialized(int length) throws Exception {
+        var writer = new StringWriter();
+        plainSerializer.serializeInvocation(createInvocation(length), writer);
+        stored = writer.toString();
+
+        deserialized = serializer.deserializeInvocation(new StringReader(stored));
+    }
+
+    @When("{int} threads serialize and deserialize {int} distinct invocations each")
+    public void threadsSerializeAndDeserializeDistinctInvocations(int threadCount, int invocationCount)
+            throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(threadCount)) {
+            List<Future<List<String>>> futures = new ArrayList<>();
+
+            for (int t = 0; t < threadCount; t++) {
+                int threadIndex = t;
+
+                futures.add(executor.submit(() -> {
+                    List<String> mismatches = new ArrayList<>();
+
+                    for (int i = 0; i < invocationCount; i++) {
+                        // different sizes and contents, so leftovers of a previous use would show
+                        String expected = (threadIndex + "-" + i + "-").repeat(1000 + (i * 37));
+                        var writer = new StringWriter();
+                        serializer.serializeInvocation(new Invocation("someBean", "someMethod",
+                                new Class<?>[]{String.class}, new Object[]{expected}), writer);
+                        Object actual = serializer.deserializeInvocation(new StringReader(writer.toString()))
+                                .getArgs()[0];
+
+                        if (!expected.equals(actual)) {
+                            mismatches.add(threadIndex + "/" + i);
+                        }
+                    }
+
+                    return mismatches;
+                }));
+            }
+
+            roundTripMismatches = new ArrayList<>();
+
+            for (Future<List<String>> future : futures) {
+                roundTripMismatches.addAll(future.get());
+            }
+        }
+    }
+
+    @When("a corrupted compressed invocation is deserialized")
+    public void aCorruptedCompressedInvocationIsDeserialized() {
+        String corrupted = CompressingInvocationSerializer.MARKER
+                + Base64.getEncoder().encodeToString("not deflated".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> serializer.deserializeInvocation(new StringReader(corrupted)))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Then("all round trips should return the original arguments")
+    public void allRoundTripsShouldReturnTheOriginalArguments() {
+        assertThat(roundTripMismatches)
+                .as("mismatched round trips")
+                .isEmpty();
+    }
+
+    @Then("the deserialized invocation should have the same argument")
+    public void theDeserializedInvocationShouldHaveTheSameArgument() {
+        assertThat(deserialized.getArgs())
+                .as("args")
+                .containsExactly(argument);
+    }
+
+    @Then("the stored invocation should be compressed")
+    public void theStoredInvocationShouldBeCompressed() {
+        assertThat(stored)
+                .as("stored")
+                .startsWith(CompressingInvocationSerializer.MARKER)
+                .hasSizeLessThan(argument.length());
+    }
+
+    @Then("the stored invocation should be uncompressed")
+    public void theStoredInvocationShouldBeUncompressed() {
+        assertThat(stored)
+                .as("stored")
+                .doesNotStartWith(CompressingInvocationSerializer.MARKER)
+                .contains(argument);
+    }
+
+    private Invocation createInvocation(int length) {
+        argument = "x".repeat(length);
+        return new Invocation("someBean", "someMethod", new Class<?>[]{String.class}, new Object[]{argument});
+    }
+
+}
@@ -0,0 +1,228 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.persistor.IdempotencyCachePersistor;
+
+import com.gruelbox.transactionoutbox.AlreadyScheduledException;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Step definitions for testing {@link IdempotencyCachePersistor}.
+ */
+public class IdempotencyCachePersistorSteps {
+
+    @Mock
+    private Persistor delegate;
+    @Mock
+    private Transaction transaction;
+    @Captor
+    private ArgumentCaptor<Runnable> postCommitHookCaptor;
+    private AutoCloseable closeableMocks;
+
+    private MeterRegistry meterRegistry;
+    private IdempotencyCachePersistor persistor;
+    private Exception lastException;
+    private final Set<String> concurrentRequestIds = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void beforeEachScenario() {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        closeableMocks.close();
+    }
+
+    @Given("idempotency cache persistor remembers keys for {word}")
+    public void idempotencyCachePersistorRemembersKeysFor(String ttl) {
+        idempotencyCachePersistorRemembersKeysFor(100, ttl);
+    }
+
+    @Given("idempotency cache persistor remembers {int} keys for {word}")
+    public void idempotencyCachePersistorRemembersKeysFor(int maxSize, String ttl) {
+        meterRegistry = new SimpleMeterRegistry();
+        persistor = new IdempotencyCachePersistor(delegate, maxSize, Duration.parse(ttl),
+                new OutboxMetrics(meterRegistry));
+    }
+
+    @Given("the DB rejects request ID {string} as a duplicate")
+    public void theDbRejectsRequestIdAsADuplicate(String requestId) throws Exception {
+        doThrow(mock(AlreadyScheduledException.class))
+                .when(delegate)
+                .save(any(Transaction.class), argThat(entry -> requestId.equals(entry.getUniqueRequestId())));
+    }
+
+    @When("a task with request ID {string} is saved and committed")
+    public void aTaskWithRequestIdIsSavedAndCommitted(String requestId) throws Exception {
+        persistor.save(transaction, createTask(requestId));
+        commit();
+    }
+
+    @When("a task without request ID is saved and committed")
+    public void aTaskWithoutRequestIdIsSavedAndCommitted() throws Exception {
+        persistor.save(transaction, createTask(null));
+        commit();
+    }
+
+    @When("a task with request ID {string} is saved")
+    public void aTaskWithRequestIdIsSaved(String requestId) {
+        save(createTask(requestId));
+    }
+
+    @When("a task without request ID is saved")
+    public void aTaskWithoutRequestIdIsSaved() {
+        save(createTask(null));
+    }
+
+    @When("{int} ms pass")
+    public void msPass(int millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Then("the task should be rejected as already scheduled")
+    public void theTaskShouldBeRejectedAsAlreadyScheduled() {
+        assertThat(lastException)
+                .as("lastException")
+                .isInstanceOf(AlreadyScheduledException.class);
+    }
+
+    @Then("the task should not be rejected")
+    public void theTaskShouldNotBeRejected() {
+        assertThat(lastException)
+                .as("lastException")
+                .isNull();
+    }
+
+    @When("{int} threads save and commit {int} tasks each with distinct request IDs")
+    public void threadsSaveAndCommitTasksWithDistinctRequestIds(int threads, int tasksPerThread) throws Exception {
+        // post-commit hooks run right away
+        var committingTransaction = mock(Transaction.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(committingTransaction).addPostCommitHook(any());
+
+        var start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int thread = 0; thread < threads; thread++) {
+                int threadIndex = thread;
+
+                futures.add(executor.submit(() -> {
+                    start.await();
+
+                    for (int i = 0; i < tasksPerThread; i++) {
+                        String requestId = "req-" + threadIndex + "-" + i;
+                        concurrentRequestIds.add(requestId);
+                        persistor.save(committingTransaction, createTask(requestId));
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Then("each of those request IDs should be rejected as already scheduled")
+    public void eachOfThoseRequestIdsShouldBeRejectedAsAlreadyScheduled() {
+        assertThat(concurrentRequestIds)
+                .allSatisfy(requestId -> {
+                    save(createTask(requestId));
+                    assertThat(lastException)
+                            .as("exception for " + requestId)
+                            .isInstanceOf(AlreadyScheduledException.class);
+                });
+    }
+
+    @Then("{int} task(s) should have reached the DB")
+    public void tasksShouldHaveReachedTheDb(int count) throws Exception {
+        verify(delegate, times(count)).save(any(Transaction.class), any(TransactionOutboxEntry.class));
+    }
+
+    @Then("idempotency cache hits should be {int} and misses {int}")
+    public void idempotencyCacheHitsShouldBeAndMisses(int hits, int misses) {
+        assertThat(persistor.getHitCount())
+                .as("hits")
+                .isEqualTo(hits);
+        assertThat(persistor.getMissCount())
+                .as("misses")
+                .isEqualTo(misses);
+        assertThat(meterRegistry.get("outbox.idempotency.cache").tag("result", "hit").counter().count())
+                .as("hit metric")
+                .isEqualTo(hits);
+        assertThat(meterRegistry.get("outbox.idempotency.cache").tag("result", "miss").counter().count())
+                .as("miss metric")
+                .isEqualTo(misses);
+    }
+
+    private void save(TransactionOutboxEntry task) {
+        lastException = null;
+
+        try {
+            persistor.save(transaction, task);
+        } catch (Exception e) {
+            lastException = e;
+        }
+    }
+
+    /**
+     * Runs post-commit hooks registered so far, as the library does once the transaction has been committed.
+     */
+    private void commit() {
+        verify(transaction, atLeast(0)).addPostCommitHook(postCommitHookCaptor.capture());
+        postCommitHookCaptor.getAllValues().forEach(Runnable::run);
+    }
+
+    private static TransactionOutboxEntry createTask(String requestId) {
+        return TransactionOutboxEntry.builder()
+                .id(UUID.randomUUID().toString())
+                .uniqueRequestId(requestId)
+                .invocation(new Invocation("someBean", "someMethod", new Class<?>[0], new Object[0]))
+                .build();
+    }
+
+}
@@ -1,7 +1,9 @@
 package guru.nicks.commons.cucumber;
 
 import guru.nicks.commons.cucumber.world.TextWorld;
+import guru.nicks.commons.outbox.CachingOutboxActions;
 import guru.nicks.commons.outbox.OutboxActions;
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
 
 import com.gruelbox.transactionoutbox.TransactionOutbox;
 import io.cucumber.java.After;
@@ -13,18 +15,25 @@ import io.cucumber.java.en.When;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.Value;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.slf4j.MDC;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -39,15 +48,20 @@ public class OutboxActionsSteps {
     @Mock
     private TransactionOutbox transactionOutbox;
     @Mock
+    private TransactionOutbox.ParameterizedScheduleBuilder scheduleBuilder;
+    @Mock
     private PlatformTransactionManager transactionManager;
     @Mock
     private TransactionStatus transactionStatus;
     private AutoCloseable closeableMocks;
 
     private TestOutboxActions testOutboxActions;
+    private OutboxActions outboxActionsUnderTest;
     private Object proxy;
+    private Object anotherProxy;
     private AtomicBoolean actionExecuted;
     private String actionParameter;
+    private CompletableFuture<Void> trackedFuture;
 
     /**
      * Applies local {@code @Mock/@Spy}.
@@ -75,8 +89,19 @@ public class OutboxActionsSteps {
         actionExecuted = new AtomicBoolean(false);
         testOutboxActions = new TestOutboxActions(transactionOutbox, actionExecuted);
 
+        outboxActionsUnderTest = testOutboxActions;
+
         // mock the proxy behavior
         when(transactionOutbox.schedule(any())).thenAnswer(invocation -> testOutboxActions);
+        when(transactionOutbox.with()).thenReturn(scheduleBuilder);
+        when(scheduleBuilder.ordered(anyString())).thenReturn(scheduleBuilder);
+        when(scheduleBuilder.schedule(any())).thenAnswer(invocation -> testOutboxActions);
+    }
+
+    @Given("a caching OutboxActions implementation is available")
+    public void aCachingOutboxActionsImplementationIsAvailable() {
+        anOutboxActionsImplementationIsAvailable();
+        outboxActionsUnderTest = new CachingTestOutboxActions(transactionOutbox);
     }
 
     @Given("a transaction is started")
@@ -87,7 +112,25 @@ public class OutboxActionsSteps {
     @When("an outbox proxy is created for the target class")
     public void anOutboxProxyIsCreatedForTheTargetClass() {
         try {
-            proxy = testOutboxActions.createProxyFor(TestOutboxActions.class);
+            proxy = outboxActionsUnderTest.createProxyFor(TestOutboxActions.class);
+        } catch (Exception e) {
+            textWorld.setLastException(e);
+        }
+    }
+
+    @When("another outbox proxy is created for the same target class")
+    public void anotherOutboxProxyIsCreatedForTheSameTargetClass() {
+        try {
+            anotherProxy = outboxActionsUnderTest.createProxyFor(TestOutboxActions.class);
+        } catch (Exception e) {
+            textWorld.setLastException(e);
+        }
+    }
+
+    @When("an ordered outbox proxy is created for the target class with key {string}")
+    public void anOrderedOutboxProxyIsCreatedForTheTargetClassWithKey(String orderingKey) {
+        try {
+            proxy = outboxActionsUnderTest.createOrderedProxyFor(TestOutboxActions.class, orderingKey);
         } catch (Exception e) {
             textWorld.setLastException(e);
         }
@@ -103,6 +146,21 @@ public class OutboxActionsSteps {
         }
     }
 
+    @Given("OutboxActions has a completion registry")
+    public void outboxActionsHasACompletionRegistry() {
+        testOutboxActions.setCompletionRegistry(new OutboxCompletionRegistry(10, Duration.ofSeconds(30)));
+    }
+
+    @When("an action is scheduled with tracking")
+    public void anActionIsScheduledWithTracking() {
+        try {
+            trackedFuture = outboxActionsUnderTest.scheduleTracked(TestOutboxActions.class,
+                    TestOutboxActions::executeEmptyAction);
+        } catch (Exception e) {
+            textWorld.setLastException(e);
+        }
+    }
+
     @When("the transaction is committed")
     public void theTransactionIsCommitted() {
         // simulate transaction commit
@@ -144,6 +202,62 @@ public class OutboxActionsSteps {
         assertThat(proxy).as("proxy").isInstanceOf(TestOutboxActions.class);
     }
 
+    @Then("both Outbox proxies should be the same instance")
+    public void bothOutboxProxiesShouldBeTheSameInstance() {
+        assertThat(anotherProxy).as("anotherProxy").isSameAs(proxy);
+    }
+
+    @Then("the Outbox proxy should have been built {int} time(s)")
+    public void theOutboxProxyShouldHaveBeenBuilt(int times) {
+        verify(transactionOutbox, times(times)).schedule(TestOutboxActions.class);
+    }
+
+    @Then("the Outbox proxy should have been built with ordering key {string}")
+    public void theOutboxProxyShouldHaveBeenBuiltWithOrderingKey(String orderingKey) {
+        verify(scheduleBuilder).ordered(orderingKey);
+        verify(scheduleBuilder).schedule(TestOutboxActions.class);
+    }
+
+    @Then("the ordered proxy should be rejected")
+    public void theOrderedProxyShouldBeRejected() {
+        assertThat(textWorld.getLastException())
+                .as("lastException")
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Ordering key");
+    }
+
+    @Then("the action should have been scheduled with a completion ID")
+    public void theActionShouldHaveBeenScheduledWithACompletionId() {
+        assertThat(testOutboxActions.getLastCompletionId())
+                .as("lastCompletionId")
+                .isNotBlank();
+        assertThat(MDC.get(OutboxCompletionRegistry.MDC_KEY))
+                .as("MDC after scheduling")
+                .isNull();
+    }
+
+    @Then("the tracked action future should be pending")
+    public void theTrackedActionFutureShouldBePending() {
+        assertThat(trackedFuture)
+                .as("trackedFuture")
+                .isNotDone();
+    }
+
+    @Given("the caching OutboxActions has a completion registry injected")
+    public void theCachingOutboxActionsHasACompletionRegistryInjected() {
+        ((CachingOutboxActions) outboxActionsUnderTest).setCompletionRegistry(
+                new OutboxCompletionRegistry(10, Duration.ofSeconds(30)));
+    }
+
+    @Then("tracked scheduling should fail with a clear error before anything is scheduled")
+    public void trackedSchedulingShouldFailWithAClearError() {
+        assertThat(textWorld.getLastException())
+                .as("lastException")
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("getCompletionRegistry()");
+        verify(transactionOutbox, times(0)).schedule(any());
+    }
+
     @Then("the outboxed action should be executed successfully")
     public void theActionShouldBeExecutedSuccessfully() {
         assertThat(actionExecuted.get()).as("actionExecuted").isTrue();
@@ -173,12 +287,23 @@ public class OutboxActionsSteps {
         private final TransactionOutbox transactionOutbox;
         @Getter
         private String lastParameter;
+        @Getter
+        private String lastCompletionId;
+        @Setter
+        private OutboxCompletionRegistry completionRegistry;
 
         public TestOutboxActions(TransactionOutbox transactionOutbox, AtomicBoolean actionExecuted) {
             this.transactionOutbox = transactionOutbox;
             this.actionExecuted = actionExecuted;
         }
 
+        @Override
+        public OutboxCompletionRegistry getCompletionRegistry() {
+            return (completionRegistry == null)
+                    ? OutboxActions.super.getCompletionRegistry()
+                    : completionRegistry;
+        }
+
         public TestOutboxActions getProxy() {
             return createProxyFor(TestOutboxActions.class);
         }
@@ -186,6 +311,7 @@ public class OutboxActionsSteps {
         protected void executeEmptyAction() {
             actionExecuted.set(true);
             lastParameter = null;
+            lastCompletionId = MDC.get(OutboxCompletionRegistry.MDC_KEY);
         }
 
         protected void executeActionWithParameter(String parameter) {
@@ -195,6 +321,17 @@ public class OutboxActionsSteps {
 
     }
 
+    /**
+     * Test implementation of {@link CachingOutboxActions}.
+     */
+    @RequiredArgsConstructor
+    public static class CachingTestOutboxActions extends CachingOutboxActions {
+
+        @Getter(onMethod_ = @Override)
+        private final TransactionOutbox transactionOutbox;
+
+    }
+
     /**
      * Action data for parameterized tests.
      */
@@ -0,0 +1,152 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.completion.OutboxCompletionRegistry;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Step definitions for testing {@link OutboxCompletionRegistry} along with {@link TransactionOutboxTaskListener}.
+ */
+public class OutboxCompletionRegistrySteps {
+
+    private OutboxCompletionRegistry registry;
+    private TransactionOutboxTaskListener listener;
+
+    private String trackedId;
+    private CompletableFuture<Void> trackedFuture;
+    private CompletableFuture<Void> otherFuture;
+    private CompletableFuture<String> dependentActionThreadName;
+
+    @Given("completion registry allows {int} pending future(s)")
+    public void completionRegistryAllowsPendingFutures(int maxPending) {
+        registry = new OutboxCompletionRegistry(maxPending, Duration.ofSeconds(30));
+
+        var properties = TransactionOutboxProperties.builder()
+                .dialect("POSTGRESQL_9")
+                .blockAfterAttempts(3)
+                .backgroundJobInitialDelay(Duration.ofSeconds(1))
+                .backgroundJobRestartDelay(Duration.ofSeconds(1))
+                .perTaskRetryDelay(Duration.ofSeconds(1))
+                .build();
+        listener = new TransactionOutboxTaskListener(properties, mock(ApplicationEventPublisher.class), null,
+                registry);
+    }
+
+    @When("a tracked task is registered with timeout {word}")
+    public void aTrackedTaskIsRegisteredWithTimeout(String timeout) {
+        trackedFuture = registry.register(Duration.parse(timeout), id -> trackedId = id);
+    }
+
+    @When("another tracked task is registered with timeout {word}")
+    public void anotherTrackedTaskIsRegisteredWithTimeout(String timeout) {
+        otherFuture = registry.register(Duration.parse(timeout), id -> {
+        });
+    }
+
+    @When("the tracked task succeeds")
+    public void theTrackedTaskSucceeds() {
+        listener.success(createTask(Map.of(OutboxCompletionRegistry.MDC_KEY, trackedId)));
+    }
+
+    @When("an untracked task succeeds")
+    public void anUntrackedTaskSucceeds() {
+        listener.success(createTask(Map.of()));
+    }
+
+    @When("the tracked task succeeds in thread {string}")
+    public void theTrackedTaskSucceedsInThread(String threadName) throws InterruptedException {
+        var task = createTask(Map.of(OutboxCompletionRegistry.MDC_KEY, trackedId));
+        Thread thread = Thread.ofPlatform()
+                .name(threadName)
+                .start(() -> listener.success(task));
+        thread.join();
+    }
+
+    @When("the caller waits for the tracked future in a dependent action")
+    public void theCallerWaitsForTheTrackedFutureInADependentAction() {
+        dependentActionThreadName = trackedFuture.thenApply(result -> Thread.currentThread().getName());
+    }
+
+    @Then("the tracked future should be completed")
+    public void theTrackedFutureShouldBeCompleted() {
+        // completed asynchronously
+        assertThat(trackedFuture)
+                .as("trackedFuture")
+                .succeedsWithin(Duration.ofSeconds(5));
+    }
+
+    @Then("the dependent action should not run in thread {string}")
+    public void theDependentActionShouldNotRunInThread(String threadName) {
+        assertThat(dependentActionThreadName)
+                .as("dependentActionThreadName")
+                .succeedsWithin(Duration.ofSeconds(5))
+                .isNotEqualTo(threadName);
+    }
+
+    @Then("the tracked future should not be completed")
+    public void theTrackedFutureShouldNotBeCompleted() {
+        assertThat(trackedFuture)
+                .as("trackedFuture")
+                .isNotDone();
+    }
+
+    @Then("the tracked future should time out")
+    public void theTrackedFutureShouldTimeOut() {
+        assertThat(trackedFuture)
+                .as("trackedFuture")
+                .failsWithin(Duration.ofSeconds(5))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(TimeoutException.class);
+    }
+
+    @Then("the other tracked future should be rejected")
+    public void theOtherTrackedFutureShouldBeRejected() {
+        assertThat(otherFuture)
+                .as("otherFuture")
+                .isCompletedExceptionally()
+                .failsWithin(Duration.ZERO)
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Then("completion registry should have {int} pending future(s)")
+    public void completionRegistryShouldHavePendingFutures(int count) throws InterruptedException {
+        // futures are removed right after their completion, possibly in another thread
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while ((registry.getPendingCount() > count) && (System.nanoTime() < deadline)) {
+            Thread.sleep(10);
+        }
+
+        assertThat(registry.getPendingCount())
+                .as("pendingCount")
+                .isEqualTo(count);
+    }
+
+    private static TransactionOutboxEntry createTask(Map<String, String> mdc) {
+        return TransactionOutboxEntry.builder()
+                .id(UUID.randomUUID().toString())
+                .invocation(new Invocation("someBean", "someMethod", new Class<?>[0], new Object[0], mdc))
+                .build();
+    }
+
+}
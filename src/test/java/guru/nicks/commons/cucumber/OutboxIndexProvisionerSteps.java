@@ -0,0 +1,221 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.domain.IndexProvisioning;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.sql.OutboxIndexProvisioner;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+
+import com.gruelbox.transactionoutbox.DefaultPersistor;
+import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutbox;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Step definitions for testing {@link OutboxIndexProvisioner} against an in-memory H2 database.
+ */
+public class OutboxIndexProvisionerSteps {
+
+    /**
+     * Same columns as the library creates, also used by other H2-based steps.
+     */
+    static final String CREATE_TABLE_SQL = """
+            CREATE TABLE TXNO_OUTBOX (
+                id VARCHAR(36) PRIMARY KEY,
+                uniqueRequestId VARCHAR(250),
+                invocation VARCHAR(4000),
+                topic VARCHAR(250) DEFAULT '*' NOT NULL,
+                seq INT,
+                lastAttemptTime TIMESTAMP(6),
+                nextAttemptTime TIMESTAMP(6),
+                attempts INT,
+                blocked BOOLEAN,
+                processed BOOLEAN,
+                version INT
+            )""";
+
+    /**
+     * Same predicate as the library's claim query.
+     */
+    private static final String CLAIM_SQL = "SELECT id FROM TXNO_OUTBOX WHERE nextAttemptTime < ? "
+            + "AND blocked = false AND processed = false AND topic = '*' LIMIT 100";
+
+    private Connection connection;
+    private TransactionOutboxProperties.Partitioning partitioning;
+    private OutboxIndexProvisioner provisioner;
+    private String ddl;
+    private boolean indexPresent;
+
+    @After
+    public void afterEachScenario() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Given("an H2 outbox table without the claim index containing {int} processed tasks and {int} due tasks")
+    public void anH2OutboxTable(int processedTasks, int dueTasks) throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID());
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_TABLE_SQL);
+        }
+
+        insertTasks(processedTasks, true);
+        insertTasks(dueTasks, false);
+        createProvisioner();
+    }
+
+    @Given("an H2 outbox table migrated by the library")
+    public void anH2OutboxTableMigratedByTheLibrary() throws Exception {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID());
+        // keeps the in-memory DB alive while the library migrates it using its own connections
+        connection = dataSource.getConnection();
+
+        DefaultPersistor.builder()
+                .dialect(Dialect.H2)
+                .build()
+                .migrate(TransactionManager.fromDataSource(dataSource));
+        createProvisioner();
+    }
+
+    @Given("partitioning is enabled for the index provisioner")
+    public void partitioningIsEnabledForTheIndexProvisioner() {
+        partitioning = TransactionOutboxProperties.Partitioning.builder()
+                .heartbeatInterval(Duration.ofSeconds(10))
+                .nodeTimeout(Duration.ofMinutes(1))
+                .build();
+        createProvisioner();
+    }
+
+    @Then("the outbox table should have {int} index(es) on column {string}")
+    public void theOutboxTableShouldHaveIndexesOnColumn(int count, String columnName) throws Exception {
+        Set<String> indexNames = new HashSet<>();
+
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(null, null, "TXNO_OUTBOX", false, true)) {
+            while (rs.next()) {
+                if (columnName.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                    indexNames.add(rs.getString("INDEX_NAME"));
+                }
+            }
+        }
+
+        assertThat(indexNames)
+                .as("indexes on " + columnName)
+                .hasSize(count);
+    }
+
+    private void createProvisioner() {
+        var properties = TransactionOutboxProperties.builder()
+                .dialect("H2")
+                .blockAfterAttempts(3)
+                .backgroundJobInitialDelay(Duration.ofSeconds(1))
+                .backgroundJobRestartDelay(Duration.ofSeconds(1))
+                .perTaskRetryDelay(Duration.ofSeconds(1))
+                .partitioning(partitioning)
+                .build();
+        provisioner = new OutboxIndexProvisioner(mock(DataSource.class), properties,
+                mock(TransactionOutbox.class));
+    }
+
+    @When("indexes are provisioned in {word} mode")
+    public void indexesAreProvisionedInMode(String mode) throws Exception {
+        indexPresent = provisioner.provision(connection, IndexProvisioning.valueOf(mode));
+    }
+
+    @When("claim index DDL is built for dialect {string}")
+    public void claimIndexDdlIsBuilt(String dialect) {
+        ddl = OutboxSql.dueTasksIndexDdl(dialect, OutboxSql.DEFAULT_TABLE_NAME);
+    }
+
+    @Then("the index should be reported as missing")
+    public void theIndexShouldBeReportedAsMissing() {
+        assertThat(indexPresent).isFalse();
+    }
+
+    @Then("the index should be reported as present")
+    public void theIndexShouldBeReportedAsPresent() {
+        assertThat(indexPresent).isTrue();
+    }
+
+    @Then("the outbox table should have index {string}")
+    public void theOutboxTableShouldHaveIndex(String indexName) throws Exception {
+        assertThat(hasIndex(indexName)).isTrue();
+    }
+
+    @Then("the outbox table should not have index {string}")
+    public void theOutboxTableShouldNotHaveIndex(String indexName) throws Exception {
+        assertThat(hasIndex(indexName)).isFalse();
+    }
+
+    @Then("the claim query plan should use index {string}")
+    public void theClaimQueryPlanShouldUseIndex(String indexName) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN " + CLAIM_SQL)) {
+            stmt.setTimestamp(1, Timestamp.from(Instant.now()));
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getString(1))
+                        .as("query plan")
+                        .containsIgnoringCase(indexName);
+            }
+        }
+    }
+
+    @Then("the DDL should contain {string}")
+    public void theDdlShouldContain(String fragment) {
+        assertThat(ddl).contains(fragment);
+    }
+
+    private boolean hasIndex(String indexName) throws Exception {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(null, null, "TXNO_OUTBOX", false, true)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void insertTasks(int count, boolean processed) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO TXNO_OUTBOX "
+                + "(id, invocation, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version) "
+                + "VALUES (?, '{}', ?, ?, 0, false, ?, 1)")) {
+            Instant now = Instant.now();
+
+            for (int i = 0; i < count; i++) {
+                stmt.setString(1, UUID.randomUUID().toString());
+                stmt.setTimestamp(2, Timestamp.from(now));
+                stmt.setTimestamp(3, Timestamp.from(now.minusSeconds(60)));
+                stmt.setBoolean(4, processed);
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+}
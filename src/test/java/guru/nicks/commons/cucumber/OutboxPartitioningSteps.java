@@ -0,0 +1,243 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.partition.OutboxNodeMembership;
+import guru.nicks.commons.outbox.partition.PartitionedDialect;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+
+import com.gruelbox.transactionoutbox.DefaultPersistor;
+import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.InvocationSerializer;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link OutboxNodeMembership} and {@link PartitionedDialect}.
+ */
+public class OutboxPartitioningSteps {
+
+    private final InvocationSerializer serializer = InvocationSerializer.createDefaultJsonSerializer();
+    private final TransactionOutboxProperties properties = TransactionOutboxProperties.builder()
+            .dialect("H2")
+            .blockAfterAttempts(3)
+            .backgroundJobInitialDelay(Duration.ofSeconds(1))
+            .backgroundJobRestartDelay(Duration.ofSeconds(1))
+            .perTaskRetryDelay(Duration.ofSeconds(1))
+            .partitioning(TransactionOutboxProperties.Partitioning.builder()
+                    .heartbeatInterval(Duration.ofSeconds(10))
+                    .nodeTimeout(Duration.ofMinutes(1))
+                    .build())
+            .build();
+
+    private Connection connection;
+    private final List<String> nodeIds = new ArrayList<>();
+    private final Map<String, Set<String>> bucketsByNode = new HashMap<>();
+    private Map<String, Set<String>> bucketsByNodeBefore;
+    private final List<OutboxNodeMembership> memberships = new ArrayList<>();
+    private final Set<String> taskIds = new HashSet<>();
+    private final List<String> selectedTaskIds = new ArrayList<>();
+    private String condition;
+
+    @After
+    public void afterEachScenario() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @When("buckets are assigned among {int} nodes")
+    public void bucketsAreAssignedAmongNodes(int count) {
+        IntStream.range(0, count).forEach(i -> nodeIds.add(UUID.randomUUID().toString()));
+        assignBuckets();
+    }
+
+    @When("another node joins")
+    public void anotherNodeJoins() {
+        bucketsByNodeBefore = new HashMap<>(bucketsByNode);
+        nodeIds.add(UUID.randomUUID().toString());
+        assignBuckets();
+    }
+
+    @Then("each bucket should be owned by exactly one node")
+    public void eachBucketShouldBeOwnedByExactlyOneNode() {
+        List<String> allBuckets = bucketsByNode.values()
+                .stream()
+                .flatMap(Set::stream)
+                .toList();
+
+        assertThat(allBuckets)
+                .hasSize(OutboxNodeMembership.BUCKET_COUNT)
+                .doesNotHaveDuplicates();
+    }
+
+    @Then("each node should own about 1\\/{int} of the buckets")
+    public void eachNodeShouldOwnAboutOfTheBuckets(int nodes) {
+        double fairShare = (double) OutboxNodeMembership.BUCKET_COUNT / nodes;
+
+        assertThat(bucketsByNode.values())
+                .allSatisfy(buckets -> assertThat((double) buckets.size())
+                        .isBetween(fairShare * 0.25, fairShare * 2));
+    }
+
+    @Then("existing nodes should only lose buckets to the new node")
+    public void existingNodesShouldOnlyLoseBucketsToTheNewNode() {
+        bucketsByNodeBefore.forEach((nodeId, bucketsBefore) ->
+                assertThat(bucketsBefore)
+                        .as("buckets of node %s before the new one joined", nodeId)
+                        .containsAll(bucketsByNode.get(nodeId)));
+    }
+
+    @Given("an H2 database with the outbox table")
+    public void anH2DatabaseWithTheOutboxTable() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID());
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(OutboxIndexProvisionerSteps.CREATE_TABLE_SQL);
+        }
+    }
+
+    @Given("a node whose heartbeat expired")
+    public void aNodeWhoseHeartbeatExpired() throws Exception {
+        String nodesTable = OutboxSql.nodesTableName(OutboxSql.DEFAULT_TABLE_NAME);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(OutboxSql.createNodesTableDdl("H2", nodesTable));
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO " + nodesTable + " (nodeId, lastHeartbeat) VALUES (?, ?)")) {
+            stmt.setString(1, UUID.randomUUID().toString());
+            stmt.setTimestamp(2, Timestamp.from(Instant.now().minus(Duration.ofHours(1))));
+            stmt.executeUpdate();
+        }
+    }
+
+    @Given("{int} due tasks in the outbox table")
+    public void dueTasksInTheOutboxTable(int count) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO TXNO_OUTBOX "
+                + "(id, invocation, nextAttemptTime, attempts, blocked, processed, version) "
+                + "VALUES (?, ?, ?, 0, false, false, 1)")) {
+            var writer = new StringWriter();
+            serializer.serializeInvocation(new Invocation("someBean", "someMethod", new Class<?>[0], new Object[0]),
+                    writer);
+
+            for (int i = 0; i < count; i++) {
+                String id = UUID.randomUUID().toString();
+                taskIds.add(id);
+
+                stmt.setString(1, id);
+                stmt.setString(2, writer.toString());
+                stmt.setTimestamp(3, Timestamp.from(Instant.now().minusSeconds(60)));
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    @When("{int} node(s) send(s) heartbeats twice")
+    public void nodesSendHeartbeatsTwice(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            memberships.add(new OutboxNodeMembership(mock(SpringTransactionManager.class), properties));
+        }
+
+        for (var membership : memberships) {
+            membership.createNodesTable(connection);
+        }
+
+        // the first round lets each node know about all the others
+        for (int round = 0; round < 2; round++) {
+            for (var membership : memberships) {
+                membership.heartbeat(connection);
+            }
+        }
+
+        memberships.forEach(membership -> bucketsByNode.put(membership.getNodeId(), membership.getOwnedBuckets()));
+    }
+
+    @When("each node selects a batch of {int} tasks")
+    public void eachNodeSelectsABatchOfTasks(int batchSize) throws Exception {
+        var tx = mock(Transaction.class);
+        when(tx.connection())
+                .thenReturn(connection);
+
+        for (var membership : memberships) {
+            var persistor = DefaultPersistor.builder()
+                    .dialect(new PartitionedDialect(Dialect.H2, membership))
+                    .serializer(serializer)
+                    .build();
+
+            persistor.selectBatch(tx, batchSize, Instant.now())
+                    .stream()
+                    .map(TransactionOutboxEntry::getId)
+                    .forEach(selectedTaskIds::add);
+        }
+    }
+
+    @When("ID ranges condition is built for buckets {string}")
+    public void idRangesConditionIsBuiltForBuckets(String buckets) {
+        condition = OutboxSql.idRangesCondition(Set.of(buckets.split(",")));
+    }
+
+    @Then("the condition should be {string}")
+    public void theConditionShouldBe(String expected) {
+        assertThat(condition).isEqualTo(expected);
+    }
+
+    @Then("the nodes table should contain {int} node(s)")
+    public void theNodesTableShouldContainNodes(int count) throws Exception {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM "
+                     + OutboxSql.nodesTableName(OutboxSql.DEFAULT_TABLE_NAME))) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(count);
+        }
+    }
+
+    @Then("the node should own all buckets")
+    public void theNodeShouldOwnAllBuckets() {
+        assertThat(memberships.getFirst().getOwnedBuckets())
+                .hasSize(OutboxNodeMembership.BUCKET_COUNT);
+    }
+
+    @Then("each task should be selected by exactly one node")
+    public void eachTaskShouldBeSelectedByExactlyOneNode() {
+        assertThat(selectedTaskIds)
+                .doesNotHaveDuplicates()
+                .containsExactlyInAnyOrderElementsOf(taskIds);
+    }
+
+    private void assignBuckets() {
+        bucketsByNode.clear();
+        nodeIds.forEach(nodeId -> bucketsByNode.put(nodeId, OutboxNodeMembership.assignBuckets(nodeIds, nodeId)));
+    }
+
+}
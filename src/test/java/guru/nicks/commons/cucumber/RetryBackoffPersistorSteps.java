@@ -0,0 +1,110 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.persistor.RetryBackoffPersistor;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Step definitions for testing {@link RetryBackoffPersistor}.
+ */
+public class RetryBackoffPersistorSteps {
+
+    @Mock
+    private Persistor delegate;
+    @Mock
+    private Transaction transaction;
+    private AutoCloseable closeableMocks;
+
+    private Duration baseDelay;
+    private TransactionOutboxProperties.RetryBackoff defaultBackoff;
+    private final Map<String, TransactionOutboxProperties.RetryBackoff> backoffOverrides = new HashMap<>();
+
+    private Instant originalNextAttemptTime;
+    private TransactionOutboxEntry entry;
+
+    @Before
+    public void beforeEachScenario() {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        closeableMocks.close();
+    }
+
+    @Given("per-task retry delay is {int} seconds")
+    public void perTaskRetryDelayIs(int seconds) {
+        baseDelay = Duration.ofSeconds(seconds);
+    }
+
+    @Given("default retry backoff with multiplier {double}, max. delay {int} seconds, and jitter {booleanValue}")
+    public void defaultRetryBackoff(double multiplier, int maxDelaySeconds, boolean jitter) {
+        defaultBackoff = createBackoff(multiplier, maxDelaySeconds, jitter);
+    }
+
+    @Given("retry backoff for bean {string} with multiplier {double}, max. delay {int} seconds, and jitter "
+            + "{booleanValue}")
+    public void retryBackoffForBean(String bean, double multiplier, int maxDelaySeconds, boolean jitter) {
+        backoffOverrides.put(bean, createBackoff(multiplier, maxDelaySeconds, jitter));
+    }
+
+    @When("task of bean {string} with {int} failed attempts is updated")
+    public void taskWithFailedAttemptsIsUpdated(String bean, int attempts) throws Exception {
+        originalNextAttemptTime = Instant.now().plus(baseDelay);
+
+        entry = TransactionOutboxEntry.builder()
+                .id(UUID.randomUUID().toString())
+                .invocation(new Invocation(bean, "someMethod", new Class<?>[0], new Object[0]))
+                .lastAttemptTime(Instant.now())
+                .nextAttemptTime(originalNextAttemptTime)
+                .attempts(attempts)
+                .build();
+
+        new RetryBackoffPersistor(delegate, baseDelay, defaultBackoff, backoffOverrides)
+                .update(transaction, entry);
+    }
+
+    @Then("next attempt time should be extended by {int} to {int} seconds")
+    public void nextAttemptTimeShouldBeExtendedBy(int minSeconds, int maxSeconds) {
+        Duration extension = Duration.between(originalNextAttemptTime, entry.getNextAttemptTime());
+
+        assertThat(extension)
+                .as("extension")
+                .isBetween(Duration.ofSeconds(minSeconds), Duration.ofSeconds(maxSeconds));
+    }
+
+    @Then("the update should be delegated")
+    public void theUpdateShouldBeDelegated() throws Exception {
+        verify(delegate).update(transaction, entry);
+    }
+
+    private TransactionOutboxProperties.RetryBackoff createBackoff(double multiplier, int maxDelaySeconds,
+            boolean jitter) {
+        return TransactionOutboxProperties.RetryBackoff.builder()
+                .multiplier(multiplier)
+                .maxDelay(Duration.ofSeconds(maxDelaySeconds))
+                .jitter(jitter)
+                .build();
+    }
+
+}
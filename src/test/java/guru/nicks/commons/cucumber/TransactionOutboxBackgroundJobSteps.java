@@ -2,23 +2,37 @@ package guru.nicks.commons.cucumber;
 
 import guru.nicks.commons.cucumber.world.TextWorld;
 import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.domain.TransactionOutboxFlushCompletedEvent;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskScheduledEvent;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
 
 import com.gruelbox.transactionoutbox.TransactionOutbox;
 import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
 
-import java.lang.reflect.Field;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Step definitions for testing {@link TransactionOutboxBackgroundJob}.
@@ -33,9 +47,20 @@ public class TransactionOutboxBackgroundJobSteps {
     private TransactionOutboxBackgroundJob backgroundJob;
     private Duration initialDelay;
     private Duration restartDelay;
+    private Duration minRestartDelay;
+    private int flushThreads = 1;
+
+    @SuppressWarnings("unchecked")
+    private final ObjectProvider<OutboxMetrics> outboxMetricsProvider = mock(ObjectProvider.class);
+    private final ApplicationEventPublisher applicationEventPublisher = mock(ApplicationEventPublisher.class);
+    private MeterRegistry meterRegistry;
+    private OutboxMetrics metrics;
+    private int tasksClaimedPerFlush;
+    private int tasksCommittedPerFlush;
 
     private TransactionOutbox transactionOutbox;
     private AtomicInteger flushCallCount;
+    private Set<String> flushThreadNames;
 
     @Given("the transaction outbox background job is initialized")
     public void theTransactionOutboxBackgroundJobIsInitialized() {
@@ -54,22 +79,36 @@ public class TransactionOutboxBackgroundJobSteps {
         restartDelay = parseDuration(delay);
     }
 
-    @When("the background job is set up")
-    public void theBackgroundJobIsSetUp() {
-        // set the fields using reflection
-        try {
-            backgroundJob = new TransactionOutboxBackgroundJob(transactionOutbox);
+    @Given("the min restart delay is set to {string}")
+    public void theMinRestartDelayIsSetTo(String delay) {
+        minRestartDelay = parseDuration(delay);
+    }
 
-            Field initialDelayField = backgroundJob.getClass().getDeclaredField("initialDelay");
-            initialDelayField.setAccessible(true);
-            initialDelayField.set(backgroundJob, initialDelay);
+    @Given("outbox metrics are enabled")
+    public void outboxMetricsAreEnabled() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new OutboxMetrics(meterRegistry);
+        when(outboxMetricsProvider.getIfAvailable())
+                .thenReturn(metrics);
+    }
 
-            Field restartDelayField = backgroundJob.getClass().getDeclaredField("restartDelay");
-            restartDelayField.setAccessible(true);
-            restartDelayField.set(backgroundJob, restartDelay);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to set fields via reflection", e);
-        }
+    @Given("each flush finding tasks claims {int} task(s) while {int} task(s) are submitted after commit")
+    public void eachFlushFindingTasksClaimsTasks(int claimedTasks, int committedTasks) {
+        tasksClaimedPerFlush = claimedTasks;
+        tasksCommittedPerFlush = committedTasks;
+    }
+
+    @Given("the number of flush threads is {int}")
+    public void theNumberOfFlushThreadsIs(int threads) {
+        flushThreads = threads;
+    }
+
+    @When("the background job is set up")
+    public void theBackgroundJobIsSetUp() {
+        backgroundJob = new TransactionOutboxBackgroundJob(transactionOutbox, outboxMetricsProvider,
+                applicationEventPublisher, initialDelay, restartDelay,
+                (minRestartDelay != null) ? minRestartDelay : restartDelay, flushThreads);
+        backgroundJob.init();
     }
 
     @When("the background job retries failed tasks")
@@ -81,6 +120,32 @@ public class TransactionOutboxBackgroundJobSteps {
         }
     }
 
+    @When("the background job retries failed tasks {int} times")
+    public void theBackgroundJobRetriesFailedTasksTimes(int times) {
+        for (int i = 0; i < times; i++) {
+            theBackgroundJobRetriesFailedTasks();
+        }
+    }
+
+    @When("a transaction scheduling a task is committed")
+    public void aTransactionSchedulingATaskIsCommitted() {
+        backgroundJob.onTaskScheduled(new TransactionOutboxTaskScheduledEvent(mock(TransactionOutboxEntry.class)));
+    }
+
+    @When("there are no tasks to process")
+    public void thereAreNoTasksToProcess() {
+        flushResults.clear();
+        setupOutboxFlushBehavior();
+    }
+
+    @When("new tasks arrive")
+    public void newTasksArrive() {
+        // the outbox already created reads these on each flush
+        flushResults.add(true);
+        flushResults.add(false);
+        flushCallCount.set(0);
+    }
+
     @When("there are tasks to process")
     public void thereAreTasksToProcess() {
         // setup outbox to return true once then false (indicating tasks were processed)
@@ -101,12 +166,124 @@ public class TransactionOutboxBackgroundJobSteps {
         }
     }
 
+    @When("a flush completion listener throws an exception")
+    public void aFlushCompletionListenerThrowsAnException() {
+        doThrow(new RuntimeException("Test exception from a flush completion listener"))
+                .when(applicationEventPublisher).publishEvent(any(TransactionOutboxFlushCompletedEvent.class));
+    }
+
+    @When("there is a backlog of {int} task batches")
+    public void thereIsABacklogOfTaskBatches(int backlogSize) {
+        flushCallCount = new AtomicInteger();
+        flushThreadNames = ConcurrentHashMap.newKeySet();
+
+        transactionOutbox = new TransactionOutbox() {
+            @Override
+            public void initialize() {
+                // do nothing
+            }
+
+            @Override
+            public <T> T schedule(Class<T> clazz) {
+                return null;
+            }
+
+            @Override
+            public ParameterizedScheduleBuilder with() {
+                return null;
+            }
+
+            @Override
+            public boolean flush(Executor executor) {
+                flushThreadNames.add(Thread.currentThread().getName());
+                // each call claims one batch until the backlog is drained
+                return flushCallCount.incrementAndGet() <= backlogSize;
+            }
+
+            @Override
+            public boolean flushTopics(Executor executor, List<String> topicNames) {
+                return false;
+            }
+
+            @Override
+            public boolean unblock(String entryId) {
+                return false;
+            }
+
+            @Override
+            public boolean unblock(String entryId, Object transactionContext) {
+                return false;
+            }
+
+            @Override
+            public void processNow(TransactionOutboxEntry entry) {
+                // do nothing
+            }
+        };
+    }
+
     @Then("all tasks should be processed")
     public void allTasksShouldBeProcessed() {
         // verify flush was called the expected number of times
         assertThat(flushCallCount.get()).isEqualTo(2);
     }
 
+    @Then("flush completion should be published")
+    public void flushCompletionShouldBePublished() {
+        verify(applicationEventPublisher, atLeastOnce())
+                .publishEvent(any(TransactionOutboxFlushCompletedEvent.class));
+    }
+
+    @Then("flush completion should be published {int} times")
+    public void flushCompletionShouldBePublishedTimes(int times) {
+        verify(applicationEventPublisher, times(times))
+                .publishEvent(any(TransactionOutboxFlushCompletedEvent.class));
+    }
+
+    @Then("the outbox should be flushed {int} times")
+    public void theOutboxShouldBeFlushedTimes(int times) {
+        assertThat(flushCallCount.get())
+                .as("flushCallCount")
+                .isEqualTo(times);
+    }
+
+    @Then("the next invocation should be delayed by {string}")
+    public void theNextInvocationShouldBeDelayedBy(String delay) {
+        assertThat(backgroundJob.getCurrentDelay())
+                .as("currentDelay")
+                .isEqualTo(parseDuration(delay));
+    }
+
+    @Then("{int} flush cycle(s) should be recorded in metrics")
+    public void flushCyclesShouldBeRecordedInMetrics(int cycles) {
+        assertThat(meterRegistry.get("outbox.flush").timer().count())
+                .as("outbox.flush")
+                .isEqualTo(cycles);
+        assertThat(meterRegistry.get("outbox.flush.tasks").summary().count())
+                .as("outbox.flush.tasks")
+                .isEqualTo(cycles);
+    }
+
+    @Then("{int} tasks should be recorded as claimed by flushes")
+    public void tasksShouldBeRecordedAsClaimedByFlushes(int tasks) {
+        assertThat(meterRegistry.get("outbox.flush.tasks").summary().totalAmount())
+                .as("outbox.flush.tasks")
+                .isEqualTo(tasks);
+    }
+
+    @Then("the backlog of {int} task batches should be drained by flush workers")
+    public void theBacklogShouldBeDrainedByFlushWorkers(int backlogSize) {
+        // each worker stops after its first empty flush
+        assertThat(flushCallCount.get())
+                .as("flushCallCount")
+                .isEqualTo(backlogSize + flushThreads);
+
+        assertThat(flushThreadNames)
+                .as("flushThreadNames")
+                .isNotEmpty()
+                .allMatch(name -> name.startsWith("outbox-flush-"));
+    }
+
     /**
      * Sets up the behavior of the outbox.flush() method based on flushResults.
      */
@@ -134,6 +311,26 @@ public class TransactionOutboxBackgroundJobSteps {
                 boolean result = flushResults.isEmpty()
                         ? false
                         : flushResults.get(flushCallCount.getAndIncrement() % flushResults.size());
+
+                if (result) {
+                    // as the library does via MeteredSubmitter: claimed tasks in this thread, committed ones elsewhere
+                    for (int i = 0; i < tasksClaimedPerFlush; i++) {
+                        metrics.taskHandedOver();
+                    }
+
+                    Thread committer = Thread.ofVirtual().start(() -> {
+                        for (int i = 0; i < tasksCommittedPerFlush; i++) {
+                            metrics.taskHandedOver();
+                        }
+                    });
+
+                    try {
+                        committer.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
                 return result;
             }
 
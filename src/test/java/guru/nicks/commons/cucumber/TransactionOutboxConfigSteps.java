@@ -2,10 +2,19 @@ package guru.nicks.commons.cucumber;
 
 import guru.nicks.commons.cucumber.world.TextWorld;
 import guru.nicks.commons.outbox.config.CommonsOutboxAutoConfiguration;
+import guru.nicks.commons.outbox.domain.ExecutionMode;
 import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.partition.OutboxNodeMembership;
+import guru.nicks.commons.outbox.submitter.BulkSubmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gruelbox.transactionoutbox.Dialect;
+import com.gruelbox.transactionoutbox.Persistor;
+import com.gruelbox.transactionoutbox.Submitter;
+import com.gruelbox.transactionoutbox.ThrowingTransactionalSupplier;
+import com.gruelbox.transactionoutbox.Transaction;
 import com.gruelbox.transactionoutbox.TransactionOutbox;
 import com.gruelbox.transactionoutbox.spring.SpringInstantiator;
 import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
@@ -13,14 +22,33 @@ import io.cucumber.java.After;
 import io.cucumber.java.Before;
 import io.cucumber.java.DataTableType;
 import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @RequiredArgsConstructor
 public class TransactionOutboxConfigSteps {
@@ -34,10 +62,27 @@ public class TransactionOutboxConfigSteps {
     private SpringInstantiator outboxInstantiator;
     @Mock
     private ApplicationEventPublisher applicationEventPublisher;
+    @Mock
+    private ObjectProvider<ExecutorService> outboxDispatchExecutorProvider;
+    @Mock
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+    @Mock
+    private ObjectProvider<OutboxMetrics> outboxMetricsProvider;
+    @Mock
+    private ObjectProvider<OutboxNodeMembership> outboxNodeMembershipProvider;
+    @Mock
+    private Persistor persistor;
+    @Mock
+    private Transaction transaction;
     private AutoCloseable closeableMocks;
 
     private TransactionOutboxProperties properties;
     private CommonsOutboxAutoConfiguration config;
+    private MeterRegistry meterRegistry;
+    private ExecutorService dispatchExecutor;
+    private CountDownLatch dispatchLatch;
+    private TransactionOutbox transactionOutbox;
+    private Submitter submitter;
 
     @Before
     public void beforeEachScenario() {
@@ -46,6 +91,18 @@ public class TransactionOutboxConfigSteps {
 
     @After
     public void afterEachScenario() throws Exception {
+        if (dispatchLatch != null) {
+            dispatchLatch.countDown();
+        }
+
+        if (dispatchExecutor != null) {
+            dispatchExecutor.shutdownNow();
+        }
+
+        if (submitter instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+
         closeableMocks.close();
     }
 
@@ -83,14 +140,141 @@ public class TransactionOutboxConfigSteps {
 
     @When("transaction outbox is created")
     public void theTransactionOutboxBeanIsCreated() {
-        var persistor = config.persistor(properties, str -> Dialect.POSTGRESQL_9, new ObjectMapper());
+        var persistor = config.persistor(properties, str -> Dialect.POSTGRESQL_9, new ObjectMapper(),
+                mock(BeanFactory.class), outboxNodeMembershipProvider, outboxMetricsProvider);
 
-        TransactionOutbox transactionOutbox = config.transactionOutbox(
+        createTransactionOutbox(persistor);
+    }
+
+    @When("transaction outbox is created with a stub persistor")
+    public void transactionOutboxIsCreatedWithStubPersistor() throws Exception {
+        when(outboxTransactionManager.inTransactionReturnsThrows(any()))
+                .thenAnswer(invocation -> invocation.<ThrowingTransactionalSupplier<?, ?>>getArgument(0)
+                        .doWork(transaction));
+
+        createTransactionOutbox(persistor);
+    }
+
+    private void createTransactionOutbox(Persistor outboxPersistor) {
+        var listener = new TransactionOutboxTaskListener(properties, applicationEventPublisher, null, null);
+        submitter = config.outboxSubmitter(properties, outboxTransactionManager, outboxInstantiator, outboxPersistor,
+                listener, outboxDispatchExecutorProvider, outboxMetricsProvider);
+
+        transactionOutbox = config.transactionOutbox(
                 outboxTransactionManager,
                 outboxInstantiator,
-                persistor,
-                applicationEventPublisher,
-                properties);
+                outboxPersistor,
+                listener,
+                properties,
+                submitter);
+    }
+
+    @Given("bulk execution with chunk size {int} and linger {word}")
+    public void bulkExecutionWithChunkSizeAndLinger(int chunkSize, String linger) {
+        properties = properties.toBuilder()
+                .bulk(TransactionOutboxProperties.Bulk.builder()
+                        .chunkSize(chunkSize)
+                        .linger(Duration.parse(linger))
+                        .build())
+                .build();
+    }
+
+    @Then("outbox submitter should be a bulk submitter")
+    public void outboxSubmitterShouldBeABulkSubmitter() {
+        assertThat(submitter)
+                .as("submitter")
+                .isInstanceOf(BulkSubmitter.class);
+    }
+
+    @Then("creating transaction outbox should fail with {string}")
+    public void creatingTransactionOutboxShouldFailWith(String message) {
+        assertThatThrownBy(this::theTransactionOutboxBeanIsCreated)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(message);
+    }
+
+    @When("transaction outbox is flushed")
+    public void transactionOutboxIsFlushed() {
+        transactionOutbox.flush();
+    }
+
+    @Then("due tasks should be claimed in batches of {int}")
+    public void dueTasksShouldBeClaimedInBatchesOf(int batchSize) throws Exception {
+        verify(persistor, atLeastOnce()).selectBatch(any(), eq(batchSize), any());
+        verify(persistor, never()).selectBatch(any(), intThat(size -> size != batchSize), any());
+    }
+
+    @Given("flush batch size is {int}")
+    public void flushBatchSizeIs(int flushBatchSize) {
+        properties = properties.toBuilder()
+                .flushBatchSize(flushBatchSize)
+                .build();
+    }
+
+    @Given("execution mode is virtual with {int} max concurrent tasks")
+    public void executionModeIsVirtual(int maxConcurrentTasks) {
+        properties = properties.toBuilder()
+                .executionMode(ExecutionMode.VIRTUAL)
+                .maxConcurrentTasks(maxConcurrentTasks)
+                .build();
+    }
+
+    @Given("dispatch executor has {int} thread(s), queue capacity {int}, and virtual threads {booleanValue}")
+    public void dispatchExecutorHas(int threads, int queueCapacity, boolean virtualThreads) {
+        properties = properties.toBuilder()
+                .dispatch(TransactionOutboxProperties.Dispatch.builder()
+                        .threads(threads)
+                        .queueCapacity(queueCapacity)
+                        .virtualThreads(virtualThreads)
+                        .build())
+                .build();
+
+        meterRegistry = new SimpleMeterRegistry();
+        when(meterRegistryProvider.getIfAvailable())
+                .thenReturn(meterRegistry);
+    }
+
+    @When("dispatch executor is created")
+    public void dispatchExecutorIsCreated() {
+        dispatchExecutor = config.outboxDispatchExecutor(properties, meterRegistryProvider);
+    }
+
+    @When("dispatch executor is saturated")
+    public void dispatchExecutorIsSaturated() {
+        dispatchLatch = new CountDownLatch(1);
+        TransactionOutboxProperties.Dispatch dispatch = properties.getDispatch();
+
+        for (int i = 0; i < dispatch.getThreads() + dispatch.getQueueCapacity(); i++) {
+            dispatchExecutor.execute(() -> {
+                try {
+                    dispatchLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    @Then("dispatch executor should report metrics for {int} thread(s)")
+    public void dispatchExecutorShouldReportMetrics(int threads) {
+        var maxPoolSize = meterRegistry.find("executor.pool.max")
+                .tag("name", "outbox.dispatch")
+                .gauge();
+
+        assertThat(maxPoolSize)
+                .as("executor.pool.max")
+                .isNotNull();
+        assertThat(maxPoolSize.value())
+                .as("executor.pool.max")
+                .isEqualTo(threads);
+    }
+
+    @Then("dispatch executor should reject new tasks")
+    public void dispatchExecutorShouldRejectNewTasks() {
+        assertThatThrownBy(() -> dispatchExecutor.execute(() -> {
+        }))
+                .as("rejection")
+                .isInstanceOf(RejectedExecutionException.class);
     }
 
 }
@@ -0,0 +1,169 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.TransactionOutboxBackgroundJob;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.listener.TransactionOutboxNotificationListener;
+import guru.nicks.commons.outbox.sql.OutboxSql;
+
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link TransactionOutboxNotificationListener}.
+ */
+public class TransactionOutboxNotificationListenerSteps {
+
+    @Mock
+    private DataSource dataSource;
+    @Mock
+    private Connection connection;
+    @Mock
+    private Statement statement;
+    @Mock
+    private PreparedStatement triggerQuery;
+    @Mock
+    private ResultSet triggerQueryResult;
+    @Mock
+    private PGConnection pgConnection;
+    @Mock
+    private TransactionOutboxBackgroundJob backgroundJob;
+    private AutoCloseable closeableMocks;
+
+    private TransactionOutboxNotificationListener listener;
+    private String channel;
+    private List<String> ddl;
+
+    @Before
+    public void beforeEachScenario() throws Exception {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+
+        when(dataSource.getConnection())
+                .thenReturn(connection);
+        when(connection.createStatement())
+                .thenReturn(statement);
+        when(connection.prepareStatement(anyString()))
+                .thenReturn(triggerQuery);
+        when(triggerQuery.executeQuery())
+                .thenReturn(triggerQueryResult);
+        when(connection.unwrap(PGConnection.class))
+                .thenReturn(pgConnection);
+        when(pgConnection.getNotifications(anyInt()))
+                .thenReturn(new PGNotification[0]);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        closeableMocks.close();
+    }
+
+    @When("notification channel is built for table {string}")
+    public void notificationChannelIsBuiltForTable(String tableName) {
+        channel = OutboxSql.notifyChannel(tableName);
+    }
+
+    @Then("the channel should be {string}")
+    public void theChannelShouldBe(String expected) {
+        assertThat(channel).isEqualTo(expected);
+    }
+
+    @When("notification trigger DDL is built for table {string}")
+    public void notificationTriggerDdlIsBuiltForTable(String tableName) {
+        ddl = OutboxSql.postgresNotifyTriggerDdl(tableName);
+    }
+
+    @Then("the DDL should notify channel {string}")
+    public void theDdlShouldNotifyChannel(String expected) {
+        assertThat(ddl.getFirst()).contains("pg_notify('" + expected + "'");
+    }
+
+    @Then("the trigger should be created only if it doesn't exist")
+    public void theTriggerShouldBeCreatedOnlyIfItDoesNotExist() {
+        assertThat(ddl.getLast())
+                .contains("IF NOT EXISTS")
+                .contains("CREATE TRIGGER");
+    }
+
+    @Given("outbox notification listener for dialect {string}")
+    public void outboxNotificationListenerForDialect(String dialect) {
+        var properties = TransactionOutboxProperties.builder()
+                .dialect(dialect)
+                .notifyWakeUp(true)
+                .blockAfterAttempts(3)
+                .backgroundJobInitialDelay(Duration.ofSeconds(1))
+                .backgroundJobRestartDelay(Duration.ofSeconds(1))
+                .perTaskRetryDelay(Duration.ofSeconds(1))
+                .build();
+
+        listener = new TransactionOutboxNotificationListener(dataSource, properties, backgroundJob);
+    }
+
+    @Given("the notification trigger exists")
+    public void theNotificationTriggerExists() throws Exception {
+        when(triggerQueryResult.next())
+                .thenReturn(true);
+    }
+
+    @Given("the notification trigger can't be created")
+    public void theNotificationTriggerCannotBeCreated() throws Exception {
+        when(statement.execute(startsWith("CREATE")))
+                .thenThrow(new SQLException("permission denied for schema public"));
+    }
+
+    @When("the listener is started")
+    public void theListenerIsStarted() {
+        listener.start();
+    }
+
+    @When("the listener is stopped")
+    public void theListenerIsStopped() {
+        listener.stop();
+    }
+
+    @Then("the listener running state should be {booleanValue}")
+    public void theListenerRunningStateShouldBe(boolean running) {
+        assertThat(listener.isRunning()).isEqualTo(running);
+    }
+
+    @Then("the background job should be woken up")
+    public void theBackgroundJobShouldBeWokenUp() throws Exception {
+        verify(statement, timeout(5000)).execute("LISTEN txno_outbox_inserted");
+        verify(backgroundJob, timeout(5000).atLeastOnce()).wakeUp();
+    }
+
+    @Then("the notification trigger should be created")
+    public void theNotificationTriggerShouldBeCreated() throws Exception {
+        verify(triggerQuery).setString(1, "txno_outbox_inserted_trigger");
+        verify(statement).execute(startsWith("CREATE OR REPLACE FUNCTION"));
+    }
+
+    @Then("the notification trigger should not be created")
+    public void theNotificationTriggerShouldNotBeCreated() throws Exception {
+        verify(statement, never()).execute(startsWith("CREATE"));
+    }
+
+}
@@ -2,6 +2,11 @@ package guru.nicks.commons.cucumber;
 
 import guru.nicks.commons.outbox.config.CommonsOutboxAutoConfiguration;
 import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+import guru.nicks.commons.outbox.partition.OutboxNodeMembership;
+import guru.nicks.commons.outbox.partition.PartitionedDialect;
+import guru.nicks.commons.outbox.persistor.CapabilityRoutingPersistor;
+import guru.nicks.commons.outbox.persistor.IdempotencyCachePersistor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.gruelbox.transactionoutbox.DefaultPersistor;
@@ -15,19 +20,31 @@ import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 
 import java.time.Duration;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class TransactionOutboxPersistorSteps {
 
     @Spy
     private ObjectMapper objectMapper;
+    @Mock
+    private BeanFactory beanFactory;
+    @Mock
+    private ObjectProvider<OutboxNodeMembership> outboxNodeMembershipProvider;
+    @Mock
+    private ObjectProvider<OutboxMetrics> outboxMetricsProvider;
     @Captor
     private ArgumentCaptor<TransactionOutboxJacksonModule> moduleCaptor;
     private AutoCloseable closeableMocks;
@@ -60,9 +77,56 @@ public class TransactionOutboxPersistorSteps {
         config = new CommonsOutboxAutoConfiguration();
     }
 
+    @Given("capability routing is enabled")
+    public void capabilityRoutingIsEnabled() {
+        properties = properties.toBuilder()
+                .capabilityRouting(true)
+                .build();
+    }
+
+    @Given("partitioning is enabled")
+    public void partitioningIsEnabled() {
+        when(outboxNodeMembershipProvider.getIfAvailable())
+                .thenReturn(mock(OutboxNodeMembership.class));
+    }
+
+    @Given("idempotency cache holds {int} keys for {word}")
+    public void idempotencyCacheHoldsKeysFor(int maxSize, String ttl) {
+        properties = properties.toBuilder()
+                .idempotencyCache(TransactionOutboxProperties.IdempotencyCache.builder()
+                        .maxSize(maxSize)
+                        .ttl(Duration.parse(ttl))
+                        .build())
+                .build();
+    }
+
+    @Given("outbox table name is {string}")
+    public void outboxTableNameIs(String tableName) {
+        properties = properties.toBuilder()
+                .tableName(tableName)
+                .build();
+    }
+
     @When("a persistor is created")
     public void persistorIsCreated() {
-        persistor = config.persistor(properties, str -> Dialect.POSTGRESQL_9, objectMapper);
+        persistor = config.persistor(properties, str -> Dialect.POSTGRESQL_9, objectMapper, beanFactory,
+                outboxNodeMembershipProvider, outboxMetricsProvider);
+    }
+
+    @Then("creating a persistor should fail with {string}")
+    public void creatingAPersistorShouldFailWith(String message) {
+        assertThatThrownBy(this::persistorIsCreated)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(message);
+    }
+
+    @Then("the persistor should use a partitioned dialect")
+    public void thePersistorShouldUseAPartitionedDialect() {
+        assertThat(persistor)
+                .as("persistor")
+                .isInstanceOf(DefaultPersistor.class)
+                .extracting("dialect")
+                .isInstanceOf(PartitionedDialect.class);
     }
 
     @Then("the persistor should be properly configured")
@@ -79,6 +143,38 @@ public class TransactionOutboxPersistorSteps {
                 .isInstanceOf(TransactionOutboxJacksonModule.class);
     }
 
+    @Then("the persistor should route tasks by capability")
+    public void thePersistorShouldRouteTasksByCapability() {
+        assertThat(persistor)
+                .as("persistor")
+                .isInstanceOf(CapabilityRoutingPersistor.class);
+    }
+
+    @Then("the persistor should check the idempotency cache first")
+    public void thePersistorShouldCheckTheIdempotencyCacheFirst() {
+        assertThat(persistor)
+                .as("persistor")
+                .isInstanceOf(IdempotencyCachePersistor.class)
+                .extracting("delegate")
+                .isInstanceOf(CapabilityRoutingPersistor.class);
+    }
+
+    @Then("the persistor should use table {string}")
+    public void thePersistorShouldUseTable(String tableName) {
+        assertThat(persistor)
+                .as("persistor")
+                .extracting("tableName")
+                .isEqualTo(tableName);
+    }
+
+    @Then("the persistor should migrate the table: {booleanValue}")
+    public void thePersistorShouldMigrateTheTable(boolean migrate) {
+        assertThat(persistor)
+                .as("persistor")
+                .extracting("migrate")
+                .isEqualTo(migrate);
+    }
+
     @Then("the persistor should use Jackson serialization")
     public void thePersistorShouldUseJacksonSerialization() {
         assertThat(persistor)
@@ -0,0 +1,203 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.TransactionOutboxPurgeJob;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+
+import com.gruelbox.transactionoutbox.ThrowingTransactionalSupplier;
+import com.gruelbox.transactionoutbox.Transaction;
+import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link TransactionOutboxPurgeJob}.
+ */
+public class TransactionOutboxPurgeJobSteps {
+
+    @Mock
+    private SpringTransactionManager transactionManager;
+    @Mock
+    private Transaction transaction;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement selectStatement;
+    @Mock
+    private PreparedStatement deleteStatement;
+    private AutoCloseable closeableMocks;
+
+    private String dialect = "POSTGRESQL_9";
+    private int batchSize;
+    private int purgedRows;
+    private Connection h2Connection;
+
+    @Before
+    public void beforeEachScenario() throws Exception {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+
+        when(transactionManager.inTransactionReturnsThrows(any()))
+                .thenAnswer(invocation -> invocation.<ThrowingTransactionalSupplier<?, ?>>getArgument(0)
+                        .doWork(transaction));
+        when(transaction.connection())
+                .thenReturn(connection);
+        when(connection.prepareStatement(startsWith("SELECT")))
+                .thenReturn(selectStatement);
+        when(connection.prepareStatement(startsWith("DELETE")))
+                .thenReturn(deleteStatement);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        if (h2Connection != null) {
+            h2Connection.close();
+        }
+
+        closeableMocks.close();
+    }
+
+    @Given("purge batch size is {int}")
+    public void purgeBatchSizeIs(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Given("SELECT statements find {string} rows")
+    public void selectStatementsFindRows(String counts) throws Exception {
+        int[] rowCounts = parseCounts(counts);
+        ResultSet[] results = new ResultSet[rowCounts.length];
+
+        for (int i = 0; i < results.length; i++) {
+            ResultSet rs = mock(ResultSet.class);
+            var remaining = new AtomicInteger(rowCounts[i]);
+
+            when(rs.next())
+                    .thenAnswer(invocation -> remaining.getAndDecrement() > 0);
+            when(rs.getString(1))
+                    .thenAnswer(invocation -> UUID.randomUUID().toString());
+            results[i] = rs;
+        }
+
+        when(selectStatement.executeQuery())
+                .thenReturn(results[0], Arrays.copyOfRange(results, 1, results.length));
+    }
+
+    @Given("DELETE statements delete {string} rows")
+    public void deleteStatementsDeleteRows(String counts) throws Exception {
+        Integer[] results = Arrays.stream(parseCounts(counts))
+                .boxed()
+                .toArray(Integer[]::new);
+
+        when(deleteStatement.executeUpdate())
+                .thenReturn(results[0], Arrays.copyOfRange(results, 1, results.length));
+    }
+
+    @Given("an H2 outbox table containing tasks:")
+    public void anH2OutboxTableContainingTasks(List<Map<String, String>> tasks) throws Exception {
+        dialect = "H2";
+        h2Connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID());
+
+        try (Statement stmt = h2Connection.createStatement()) {
+            stmt.execute(OutboxIndexProvisionerSteps.CREATE_TABLE_SQL);
+        }
+
+        when(transaction.connection())
+                .thenReturn(h2Connection);
+
+        Instant now = Instant.now();
+
+        try (PreparedStatement stmt = h2Connection.prepareStatement("INSERT INTO TXNO_OUTBOX "
+                + "(id, invocation, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version) "
+                + "VALUES (?, '{}', ?, ?, 0, ?, ?, 1)")) {
+            for (Map<String, String> task : tasks) {
+                stmt.setString(1, task.get("id"));
+                stmt.setTimestamp(2, Timestamp.from(now.plus(Duration.parse(task.get("lastAttemptTime")))));
+                stmt.setTimestamp(3, Timestamp.from(now.plus(Duration.parse(task.get("nextAttemptTime")))));
+                stmt.setBoolean(4, Boolean.parseBoolean(task.get("blocked")));
+                stmt.setBoolean(5, Boolean.parseBoolean(task.get("processed")));
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    @When("purge is run")
+    public void purgeIsRun() throws Exception {
+        var properties = TransactionOutboxProperties.builder()
+                .dialect(dialect)
+                .blockAfterAttempts(3)
+                .backgroundJobInitialDelay(Duration.ofSeconds(1))
+                .backgroundJobRestartDelay(Duration.ofSeconds(1))
+                .perTaskRetryDelay(Duration.ofSeconds(1))
+                .purge(TransactionOutboxProperties.Purge.builder()
+                        .interval(Duration.ofHours(1))
+                        .blockedRetention(Duration.ofDays(30))
+                        .batchSize(batchSize)
+                        .pauseBetweenBatches(Duration.ZERO)
+                        .build())
+                .build();
+
+        purgedRows = new TransactionOutboxPurgeJob(transactionManager, properties).purge();
+    }
+
+    @Then("{int} rows should be purged")
+    public void rowsShouldBePurged(int rows) {
+        assertThat(purgedRows).isEqualTo(rows);
+    }
+
+    @Then("the outbox table should contain tasks {string}")
+    public void theOutboxTableShouldContainTasks(String ids) throws Exception {
+        List<String> remaining = new ArrayList<>();
+
+        try (Statement stmt = h2Connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM TXNO_OUTBOX")) {
+            while (rs.next()) {
+                remaining.add(rs.getString(1));
+            }
+        }
+
+        assertThat(remaining)
+                .as("remaining tasks")
+                .containsExactlyInAnyOrder(ids.split(",\\s*"));
+    }
+
+    @Then("{int} SELECT statements and {int} DELETE statement(s) should be executed")
+    public void statementsShouldBeExecuted(int selectCount, int deleteCount) throws Exception {
+        verify(selectStatement, times(selectCount)).executeQuery();
+        verify(deleteStatement, times(deleteCount)).executeUpdate();
+    }
+
+    private static int[] parseCounts(String counts) {
+        return Arrays.stream(counts.split(",\\s*"))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+}
@@ -0,0 +1,198 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.cucumber.world.TextWorld;
+import guru.nicks.commons.outbox.domain.TaskSuccessLogging;
+import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskBlockedEvent;
+import guru.nicks.commons.outbox.domain.TransactionOutboxTaskScheduledEvent;
+import guru.nicks.commons.outbox.listener.TransactionOutboxTaskListener;
+import guru.nicks.commons.outbox.metrics.MeteredSubmitter;
+import guru.nicks.commons.outbox.metrics.OutboxMetrics;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.After;
+import io.cucumber.java.Before;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Step definitions for testing {@link TransactionOutboxTaskListener} and {@link OutboxMetrics}.
+ */
+@RequiredArgsConstructor
+public class TransactionOutboxTaskListenerSteps {
+
+    // DI
+    private final TextWorld textWorld;
+
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Mock
+    private TransactionOutboxEntry task;
+    private AutoCloseable closeableMocks;
+
+    private MeterRegistry meterRegistry;
+    private OutboxMetrics metrics;
+    private TransactionOutboxTaskListener listener;
+
+    @Before
+    public void beforeEachScenario() {
+        closeableMocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @After
+    public void afterEachScenario() throws Exception {
+        closeableMocks.close();
+    }
+
+    @Given("a task listener with metrics enabled")
+    public void aTaskListenerWithMetricsEnabled() {
+        createListener(null);
+    }
+
+    @Given("a task listener with metrics enabled and success logging {word}")
+    public void aTaskListenerWithMetricsEnabledAndSuccessLogging(String successLogging) {
+        createListener(TaskSuccessLogging.valueOf(successLogging));
+    }
+
+    @When("{int} tasks succeed and the success summary is logged")
+    public void tasksSucceedAndTheSuccessSummaryIsLogged(int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                listener.success(task);
+            }
+
+            listener.logSuccessSummary();
+        } catch (Exception e) {
+            textWorld.setLastException(e);
+        }
+    }
+
+    private void createListener(TaskSuccessLogging successLogging) {
+        var properties = TransactionOutboxProperties.builder()
+                .dialect("POSTGRESQL_9")
+                .blockAfterAttempts(3)
+                .backgroundJobInitialDelay(Duration.ofSeconds(1))
+                .backgroundJobRestartDelay(Duration.ofSeconds(1))
+                .perTaskRetryDelay(Duration.ofSeconds(1))
+                .successLogging(successLogging)
+                .successLogSampleRate(3)
+                .build();
+
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new OutboxMetrics(meterRegistry);
+        listener = new TransactionOutboxTaskListener(properties, applicationEventPublisher, metrics, null);
+
+        when(task.getId())
+                .thenReturn(UUID.randomUUID().toString());
+        when(task.getInvocation())
+                .thenReturn(new Invocation("someBean", "someMethod", new Class<?>[0], new Object[0]));
+    }
+
+    @When("the task is scheduled")
+    public void theTaskIsScheduled() {
+        listener.scheduled(task);
+    }
+
+    @When("the task is executed through the metered submitter")
+    public void theTaskIsExecutedThroughTheMeteredSubmitter() {
+        var submitter = new MeteredSubmitter((entry, localExecutor) -> localExecutor.accept(entry), metrics);
+        submitter.submit(task, entry -> {
+        });
+    }
+
+    @When("the task is dropped by a saturated submitter behind the metered submitter")
+    public void theTaskIsDroppedByASaturatedSubmitterBehindTheMeteredSubmitter() {
+        // same as VirtualThreadSubmitter at its cap: the task is left to the background job
+        var submitter = new MeteredSubmitter((entry, localExecutor) -> {
+        }, metrics);
+        submitter.submit(task, entry -> {
+        });
+    }
+
+    @When("the task succeeds")
+    public void theTaskSucceeds() {
+        listener.success(task);
+    }
+
+    @When("the task fails")
+    public void theTaskFails() {
+        listener.failure(task, new RuntimeException("Test exception"));
+    }
+
+    @When("the task is blocked")
+    public void theTaskIsBlocked() {
+        listener.blocked(task, new RuntimeException("Test exception"));
+    }
+
+    @Then("the task metric {string} should be {int}")
+    public void theTaskMetricShouldBe(String event, int count) {
+        var counter = meterRegistry.find("outbox.tasks")
+                .tags("class", "someBean", "method", "someMethod", "event", event)
+                .counter();
+
+        assertThat((counter == null) ? 0 : counter.count())
+                .as(event)
+                .isEqualTo(count);
+    }
+
+    @Then("the task execution time should be recorded")
+    public void theTaskExecutionTimeShouldBeRecorded() {
+        assertThat(meterRegistry.get("outbox.task.execution").timer().count())
+                .as("outbox.task.execution")
+                .isEqualTo(1);
+        assertThat(metrics.getSubmittedTaskCount())
+                .as("submittedTaskCount")
+                .isEqualTo(1);
+    }
+
+    @Then("no task should be counted as submitted")
+    public void noTaskShouldBeCountedAsSubmitted() {
+        assertThat(metrics.getSubmittedTaskCount())
+                .as("submittedTaskCount")
+                .isZero();
+        assertThat(meterRegistry.find("outbox.task.execution").timer())
+                .as("outbox.task.execution")
+                .isNull();
+    }
+
+    @Then("the task lag should be recorded")
+    public void theTaskLagShouldBeRecorded() {
+        assertThat(meterRegistry.get("outbox.task.lag").timer().count())
+                .as("outbox.task.lag")
+                .isEqualTo(1);
+    }
+
+    @Then("the task lag should not be recorded")
+    public void theTaskLagShouldNotBeRecorded() {
+        assertThat(meterRegistry.find("outbox.task.lag").timer())
+                .as("outbox.task.lag")
+                .isNull();
+    }
+
+    @Then("a task scheduled event should be published")
+    public void aTaskScheduledEventShouldBePublished() {
+        verify(applicationEventPublisher).publishEvent(any(TransactionOutboxTaskScheduledEvent.class));
+    }
+
+    @Then("a task blocked event should be published")
+    public void aTaskBlockedEventShouldBePublished() {
+        verify(applicationEventPublisher).publishEvent(any(TransactionOutboxTaskBlockedEvent.class));
+    }
+
+}
@@ -1,53 +1,87 @@
 package guru.nicks.commons.cucumber;
 
+import guru.nicks.commons.cucumber.world.TextWorld;
 import guru.nicks.commons.outbox.domain.TransactionOutboxProperties;
 import guru.nicks.commons.outbox.domain.TransactionOutboxTaskBlockedEvent;
 import guru.nicks.commons.outbox.listener.TransactionOutboxTaskBlockedListener;
 
+import com.gruelbox.transactionoutbox.ThrowingTransactionalSupplier;
+import com.gruelbox.transactionoutbox.Transaction;
 import com.gruelbox.transactionoutbox.TransactionOutbox;
 import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import com.gruelbox.transactionoutbox.spring.SpringTransactionManager;
 import io.cucumber.java.After;
 import io.cucumber.java.Before;
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import io.cucumber.java.en.When;
+import lombok.RequiredArgsConstructor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.UUID;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
- * Step definitions for testing {@link TransactionOutboxTaskBlockedListener}.
+ * Step definitions for testing {@link TransactionOutboxTaskBlockedListener}. Quarantine is tested against an in-memory
+ * H2 database.
  */
+@RequiredArgsConstructor
 public class TransactionOutboxTaskUnblockerListenerSteps {
 
+    // DI
+    private final TextWorld textWorld;
+
     @Mock
     private TransactionOutbox transactionOutbox;
     @Mock
     private TransactionOutboxEntry transactionOutboxEntry;
+    @Mock
+    private SpringTransactionManager transactionManager;
+    @Mock
+    private Transaction transaction;
     private AutoCloseable closeableMocks;
 
+    private Connection connection;
+    private TransactionOutboxProperties properties;
     private TransactionOutboxTaskBlockedListener listener;
     private String taskId;
 
     @Before
-    public void beforeEachScenario() {
+    public void beforeEachScenario() throws Exception {
         closeableMocks = MockitoAnnotations.openMocks(this);
+
+        when(transactionManager.inTransactionReturnsThrows(any()))
+                .thenAnswer(invocation -> invocation.<ThrowingTransactionalSupplier<?, ?>>getArgument(0)
+                        .doWork(transaction));
     }
 
     @After
     public void afterEachScenario() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+
         closeableMocks.close();
     }
 
     @Given("transaction outbox properties with unblock blocked tasks set to {booleanValue}")
     public void transactionOutboxPropertiesWithUnblockBlockedTasksSetTo(boolean unblockBlockedTasks) {
-        var properties = TransactionOutboxProperties.builder()
+        properties = TransactionOutboxProperties.builder()
                 .useJackson(false)
                 .unblockBlockedTasks(unblockBlockedTasks)
                 .blockAfterAttempts(3)
@@ -60,7 +94,61 @@ public class TransactionOutboxTaskUnblockerListenerSteps {
         when(transactionOutboxEntry.getId())
                 .thenReturn(taskId);
 
-        listener = new TransactionOutboxTaskBlockedListener(properties, transactionOutbox);
+        createListener();
+    }
+
+    @Given("quarantine with initial cooldown {string}, max cooldown {string} and {int} unblocks per flush")
+    public void quarantineWithCooldowns(String initialCooldown, String maxCooldown, int maxUnblocksPerFlush)
+            throws Exception {
+        properties = TransactionOutboxProperties.builder()
+                .dialect("H2")
+                .useJackson(false)
+                .unblockBlockedTasks(true)
+                .quarantine(TransactionOutboxProperties.Quarantine.builder()
+                        .initialCooldown(Duration.parse(initialCooldown))
+                        .maxCooldown(Duration.parse(maxCooldown))
+                        .maxUnblocksPerFlush(maxUnblocksPerFlush)
+                        .build())
+                .blockAfterAttempts(3)
+                .backgroundJobInitialDelay(Duration.ofSeconds(1))
+                .backgroundJobRestartDelay(Duration.ofSeconds(1))
+                .perTaskRetryDelay(Duration.ofSeconds(1))
+                .build();
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID());
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(OutboxIndexProvisionerSteps.CREATE_TABLE_SQL);
+        }
+
+        when(transaction.connection())
+                .thenReturn(connection);
+
+        createListener();
+    }
+
+    @Given("a blocked task in the outbox table")
+    public void aBlockedTaskInTheOutboxTable() throws Exception {
+        taskId = insertBlockedTask();
+        when(transactionOutboxEntry.getId())
+                .thenReturn(taskId);
+    }
+
+    @Given("the outbox table is unavailable")
+    public void theOutboxTableIsUnavailable() throws Exception {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE TXNO_OUTBOX");
+        }
+    }
+
+    @When("{int} different tasks are blocked")
+    public void differentTasksAreBlocked(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            var entry = mock(TransactionOutboxEntry.class);
+            when(entry.getId())
+                    .thenReturn(insertBlockedTask());
+            listener.onApplicationEvent(new TransactionOutboxTaskBlockedEvent(entry));
+        }
     }
 
     @When("a transaction outbox task blocked event is received")
@@ -69,6 +157,37 @@ public class TransactionOutboxTaskUnblockerListenerSteps {
         listener.onApplicationEvent(event);
     }
 
+    @When("the task is blocked {int} times")
+    public void theTaskIsBlockedTimes(int times) {
+        for (int i = 0; i < times; i++) {
+            aTransactionOutboxTaskBlockedEventIsReceived();
+        }
+    }
+
+    @When("quarantined tasks are released")
+    public void quarantinedTasksAreReleased() {
+        try {
+            listener.releaseQuarantinedTasks();
+        } catch (Exception e) {
+            textWorld.setLastException(e);
+        }
+    }
+
+    @When("the app is restarted")
+    public void theAppIsRestarted() {
+        createListener();
+    }
+
+    @When("the quarantine of the task expires")
+    public void theQuarantineOfTheTaskExpires() throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "UPDATE TXNO_OUTBOX SET nextAttemptTime = ? WHERE id = ?")) {
+            stmt.setTimestamp(1, Timestamp.from(Instant.now().minusSeconds(1)));
+            stmt.setString(2, taskId);
+            stmt.executeUpdate();
+        }
+    }
+
     @Then("the task should be unblocked")
     public void theTaskShouldBeUnblocked() {
         verify(transactionOutbox).unblock(taskId);
@@ -79,4 +198,79 @@ public class TransactionOutboxTaskUnblockerListenerSteps {
         verify(transactionOutbox, never()).unblock(taskId);
     }
 
+    @Then("the task should be unblocked in the outbox table")
+    public void theTaskShouldBeUnblockedInTheOutboxTable() throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT blocked, attempts FROM TXNO_OUTBOX WHERE id = ?")) {
+            stmt.setString(1, taskId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getBoolean("blocked")).as("blocked").isFalse();
+                assertThat(rs.getInt("attempts")).as("attempts").isZero();
+            }
+        }
+    }
+
+    @Then("{int} task(s) should be unblocked in the outbox table")
+    public void tasksShouldBeUnblockedInTheOutboxTable(int count) throws Exception {
+        assertThat(countTasks(false)).isEqualTo(count);
+    }
+
+    @Then("{int} task(s) should remain blocked in the outbox table")
+    public void tasksShouldRemainBlockedInTheOutboxTable(int count) throws Exception {
+        assertThat(countTasks(true)).isEqualTo(count);
+    }
+
+    @Then("the task should be quarantined for {string}")
+    public void theTaskShouldBeQuarantinedFor(String cooldown) throws Exception {
+        Instant expected = Instant.now().plus(Duration.parse(cooldown));
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT blocked, nextAttemptTime FROM TXNO_OUTBOX WHERE id = ?")) {
+            stmt.setString(1, taskId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getBoolean("blocked")).as("blocked").isTrue();
+                assertThat(rs.getTimestamp("nextAttemptTime").toInstant())
+                        .as("nextAttemptTime")
+                        .isBetween(expected.minusSeconds(60), expected);
+            }
+        }
+    }
+
+    private void createListener() {
+        listener = new TransactionOutboxTaskBlockedListener(properties, transactionOutbox, transactionManager);
+    }
+
+    private String insertBlockedTask() throws Exception {
+        String id = UUID.randomUUID().toString();
+
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO TXNO_OUTBOX "
+                + "(id, invocation, lastAttemptTime, nextAttemptTime, attempts, blocked, processed, version) "
+                + "VALUES (?, '{}', ?, ?, 3, true, false, 1)")) {
+            Instant now = Instant.now();
+            stmt.setString(1, id);
+            stmt.setTimestamp(2, Timestamp.from(now));
+            // set by the library when the last attempt failed
+            stmt.setTimestamp(3, Timestamp.from(now.plusSeconds(1)));
+            stmt.executeUpdate();
+        }
+
+        return id;
+    }
+
+    private int countTasks(boolean blocked) throws Exception {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT COUNT(*) FROM TXNO_OUTBOX WHERE blocked = ?")) {
+            stmt.setBoolean(1, blocked);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
 }
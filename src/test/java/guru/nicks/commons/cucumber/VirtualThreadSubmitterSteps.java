@@ -0,0 +1,240 @@
+package guru.nicks.commons.cucumber;
+
+import guru.nicks.commons.outbox.submitter.VirtualThreadSubmitter;
+
+import com.gruelbox.transactionoutbox.Invocation;
+import com.gruelbox.transactionoutbox.TransactionManager;
+import com.gruelbox.transactionoutbox.TransactionOutboxEntry;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import jdk.jfr.consumer.RecordingStream;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Step definitions for testing {@link VirtualThreadSubmitter}.
+ */
+public class VirtualThreadSubmitterSteps {
+
+    private VirtualThreadSubmitter submitter;
+    private int maxConcurrentTasks;
+
+    /**
+     * Released once slow tasks should finish.
+     */
+    private final CountDownLatch finishLatch = new CountDownLatch(1);
+    private final AtomicInteger virtualThreadExecutions = new AtomicInteger();
+    private CountDownLatch finishedLatch;
+
+    private Connection keepAliveConnection;
+    private TransactionManager transactionManager;
+    private RecordingStream recordingStream;
+    /**
+     * Stack traces of {@code jdk.VirtualThreadPinned} events.
+     */
+    private final List<String> pinnedStackTraces = new CopyOnWriteArrayList<>();
+
+    @After
+    public void afterEachScenario() throws Exception {
+        finishLatch.countDown();
+
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+
+        if (keepAliveConnection != null) {
+            keepAliveConnection.close();
+        }
+    }
+
+    @Given("an H2 database for virtual thread tasks")
+    public void anH2DatabaseForVirtualThreadTasks() throws Exception {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID());
+        keepAliveConnection = dataSource.getConnection();
+
+        try (Statement stmt = keepAliveConnection.createStatement()) {
+            stmt.execute("CREATE TABLE TASK_RESULT (id VARCHAR(36) PRIMARY KEY)");
+        }
+
+        transactionManager = TransactionManager.fromDataSource(dataSource);
+    }
+
+    @Given("JFR records pinned virtual threads")
+    public void jfrRecordsPinnedVirtualThreads() {
+        recordingStream = new RecordingStream();
+        // the default threshold hides short pinning
+        recordingStream.enable("jdk.VirtualThreadPinned")
+                .withThreshold(Duration.ZERO)
+                .withStackTrace();
+        recordingStream.onEvent("jdk.VirtualThreadPinned", event ->
+                pinnedStackTraces.add(String.valueOf(event.getStackTrace())));
+        recordingStream.startAsync();
+    }
+
+    @When("{int} task(s) run(s) H2 transactions waiting {int} ms inside")
+    public void tasksRunH2TransactionsWaitingInside(int count, int waitMillis) throws Exception {
+        finishedLatch = new CountDownLatch(count);
+
+        for (int i = 0; i < count; i++) {
+            submitter.submit(createEntry(), task -> {
+                try {
+                    // the library's own JDBC transaction handling, as used for each task
+                    transactionManager.inTransactionThrows(tx -> {
+                        try (PreparedStatement stmt = tx.connection().prepareStatement(
+                                "INSERT INTO TASK_RESULT (id) VALUES (?)")) {
+                            stmt.setString(1, task.getId());
+                            stmt.executeUpdate();
+                        }
+
+                        // stands for I/O done by the task, parks the virtual thread
+                        Thread.sleep(waitMillis);
+                    });
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    finishedLatch.countDown();
+                }
+            });
+        }
+
+        assertThat(finishedLatch.await(30, TimeUnit.SECONDS))
+                .as("all tasks finished")
+                .isTrue();
+    }
+
+    @When("a task waits {int} ms inside a synchronized block")
+    public void aTaskWaitsInsideASynchronizedBlock(int waitMillis) throws Exception {
+        finishedLatch = new CountDownLatch(1);
+        Object monitor = new Object();
+
+        submitter.submit(createEntry(), task -> {
+            try {
+                synchronized (monitor) {
+                    Thread.sleep(waitMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finishedLatch.countDown();
+            }
+        });
+
+        assertThat(finishedLatch.await(10, TimeUnit.SECONDS))
+                .as("task finished")
+                .isTrue();
+    }
+
+    @Then("the H2 table should contain {int} task result(s)")
+    public void theH2TableShouldContainTaskResults(int count) throws Exception {
+        try (Statement stmt = keepAliveConnection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM TASK_RESULT")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(count);
+        }
+    }
+
+    @Then("no virtual thread should have been pinned")
+    public void noVirtualThreadShouldHaveBeenPinned() {
+        // delivers all recorded events
+        recordingStream.stop();
+
+        assertThat(pinnedStackTraces)
+                .as("pinned virtual threads")
+                .isEmpty();
+    }
+
+    @Then("pinning should be detected on JDKs pinning inside synchronized blocks")
+    public void pinningShouldBeDetectedOnJdksPinningInsideSynchronizedBlocks() {
+        recordingStream.stop();
+
+        // JDK 24+ doesn't pin virtual threads blocking inside synchronized blocks
+        assertThat(pinnedStackTraces)
+                .as("pinned virtual threads")
+                .hasSize((Runtime.version().feature() < 24) ? 1 : 0);
+    }
+
+    @Given("virtual thread submitter allows {int} concurrent task(s)")
+    public void virtualThreadSubmitterAllows(int maxConcurrentTasks) {
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        submitter = new VirtualThreadSubmitter(maxConcurrentTasks);
+    }
+
+    @When("{int} slow task(s) is/are submitted")
+    public void slowTasksAreSubmitted(int count) {
+        // the rest are left to the background job
+        int expectedStarts = Math.min(count, maxConcurrentTasks);
+        finishedLatch = new CountDownLatch(expectedStarts);
+
+        for (int i = 0; i < count; i++) {
+            submitter.submit(createEntry(), task -> {
+                try {
+                    finishLatch.await();
+
+                    if (Thread.currentThread().isVirtual()) {
+                        virtualThreadExecutions.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finishedLatch.countDown();
+                }
+            });
+        }
+    }
+
+    @When("slow tasks are finished")
+    public void slowTasksAreFinished() throws InterruptedException {
+        finishLatch.countDown();
+
+        assertThat(finishedLatch.await(10, TimeUnit.SECONDS))
+                .as("all started tasks finished")
+                .isTrue();
+    }
+
+    @Then("{int} task(s) should have been executed on virtual threads")
+    public void tasksShouldHaveBeenExecutedOnVirtualThreads(int count) {
+        assertThat(virtualThreadExecutions.get())
+                .as("tasks executed on virtual threads")
+                .isEqualTo(count);
+    }
+
+    @Then("virtual thread submitter should have {int} active task(s)")
+    public void virtualThreadSubmitterShouldHaveActiveTasks(int count) throws InterruptedException {
+        if (count == 0) {
+            // permits are released right after the latch is counted down
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+            while ((submitter.getActiveTaskCount() > 0) && (System.nanoTime() < deadline)) {
+                Thread.sleep(10);
+            }
+        }
+
+        assertThat(submitter.getActiveTaskCount())
+                .as("active tasks")
+                .isEqualTo(count);
+    }
+
+    private static TransactionOutboxEntry createEntry() {
+        return TransactionOutboxEntry.builder()
+                .id(UUID.randomUUID().toString())
+                .invocation(new Invocation("someService", "someMethod", new Class<?>[0], new Object[0]))
+                .build();
+    }
+
+}
@@ -0,0 +1,71 @@
+@db #@disabled
+Feature: BulkSubmitter
+  Tasks calling methods with a bulk counterpart are executed in chunks, one bulk call per chunk.
+
+  Scenario: Complete chunk is executed by one bulk call
+    Given bulk submitter with chunk size 5 and linger PT10S
+    When 5 tasks calling "send" are submitted
+    Then bulk method should have been called 1 time with 5 messages in total
+    And single method should have been called 0 times
+    And 5 tasks should have been deleted
+    And 5 tasks should have succeeded
+
+  Scenario: Incomplete chunk is executed after the linger time
+    Given bulk submitter with chunk size 5 and linger PT0.1S
+    When 3 tasks calling "send" are submitted
+    Then bulk method should have been called 0 times with 0 messages in total
+    When chunks have lingered
+    Then bulk method should have been called 1 time with 3 messages in total
+    And 3 tasks should have been deleted
+
+  Scenario: Chunk exceeding the chunk size is split
+    Given bulk submitter with chunk size 2 and linger PT0.1S
+    When 5 tasks calling "send" are submitted
+    And chunks have lingered
+    Then bulk method should have been called 3 times with 5 messages in total
+    And 5 tasks should have been deleted
+
+  Scenario: Tasks are executed one by one if the bulk call fails
+    Given bulk submitter with chunk size 3 and linger PT10S
+    And bulk method fails
+    When 3 tasks calling "send" are submitted
+    Then single method should have been called 3 times
+    And 0 tasks should have been deleted
+    And 0 tasks should have succeeded
+
+  Scenario: Tasks with a unique request ID are marked as processed
+    Given bulk submitter with chunk size 2 and linger PT10S
+    When 2 tasks with unique request IDs calling "send" are submitted
+    Then bulk method should have been called 1 time with 2 messages in total
+    And 2 tasks should have been marked as processed
+
+  Scenario: Tasks calling methods without a bulk counterpart are passed through
+    Given bulk submitter with chunk size 5 and linger PT10S
+    When 2 tasks calling "publish" are submitted
+    Then bulk method should have been called 0 times with 0 messages in total
+    And single method should have been called 2 times
+
+  Scenario: Each task of a chunk is reported to metrics
+    Given bulk submitter with chunk size 3 and linger PT10S
+    When 3 tasks calling "send" are submitted
+    Then bulk method should have been called 1 time with 3 messages in total
+    And 3 tasks should have been reported as submitted and executed
+
+  Scenario: Tasks executed one by one after a failed bulk call are reported once each
+    Given bulk submitter with chunk size 3 and linger PT10S
+    And bulk method fails
+    When 3 tasks calling "send" are submitted
+    Then single method should have been called 3 times
+    And 3 tasks should have been reported as submitted and executed
+
+  Scenario: Linger must be shorter than the per-task retry delay
+    Then creating bulk submitter with linger PT1M and per-task retry delay PT1M should fail
+
+  Scenario: Closed submitter drops buffered tasks and passes new ones through
+    Given bulk submitter with chunk size 5 and linger PT0.1S
+    When 3 tasks calling "send" are submitted
+    And bulk submitter is closed
+    And chunks have lingered
+    Then bulk method should have been called 0 times with 0 messages in total
+    When 2 tasks calling "send" are submitted
+    Then single method should have been called 2 times
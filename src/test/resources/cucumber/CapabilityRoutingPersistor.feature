@@ -0,0 +1,45 @@
+@db #@disabled
+Feature: CapabilityRoutingPersistor
+  Only tasks referring to beans present in the app are claimed, the rest are pushed back for other apps.
+
+  Background:
+    Given beans present in the app are "orderService,mailService"
+
+  Scenario: Tasks referring to missing beans are skipped
+    Given selected batch refers to beans "orderService,billingService,mailService,billingService"
+    When batch is selected
+    Then selected tasks should refer to beans "orderService,mailService"
+    And 2 tasks referring to missing beans should be pushed back without burning attempts
+    And tasks referring to present beans should not be updated
+
+  Scenario: Ordered tasks referring to missing beans are skipped
+    Given selected batch refers to beans "billingService,mailService"
+    When next tasks in topics are selected
+    Then selected tasks should refer to beans "mailService"
+    And 1 task referring to missing beans should be pushed back without burning attempts
+
+  Scenario: Nothing is claimed if all tasks refer to missing beans
+    Given selected batch refers to beans "billingService"
+    When batch is selected
+    Then no tasks should be selected
+    And 1 task referring to missing beans should be pushed back without burning attempts
+    And 2 batches should be selected
+
+  Scenario: Tasks behind a batch of foreign tasks are claimed
+    Given selected batches refer to beans "billingService,billingService" and then to beans "billingService,orderService"
+    When batch is selected
+    Then selected tasks should refer to beans "orderService"
+    And 3 tasks referring to missing beans should be pushed back without burning attempts
+
+  Scenario Outline: Pushing back foreign tasks is bounded
+    Given every selected batch is full of tasks referring to bean "billingService"
+    When batch of <batchSize> is selected
+    Then no tasks should be selected
+    And <pushedBack> tasks referring to missing beans should be pushed back without burning attempts
+    And <fullBatches> batches of <batchSize> should be selected
+    And <batches> batches should be selected
+    Examples:
+      | batchSize | pushedBack | fullBatches | batches |
+      | 100       | 1000       | 10          | 10      |
+      | 300       | 1000       | 3           | 4       |
+      | 5000      | 5000       | 1           | 1       |
@@ -0,0 +1,50 @@
+@db #@disabled
+Feature: CoalescingPersistor
+  Identical calls of annotated methods in one transaction are stored as a single task.
+
+  Scenario Outline: Identical calls are coalesced only for annotated methods
+    Given a transaction is active
+    When method "<method>" is scheduled with argument "42"
+    And method "<method>" is scheduled with argument "42"
+    And method "<method>" is scheduled with argument "43"
+    Then <tasks> tasks should have been saved
+    Examples:
+      | method  | tasks |
+      | refresh | 2     |
+      | publish | 3     |
+
+  Scenario: Each transaction stores its own task
+    Given a transaction is active
+    When method "refresh" is scheduled with argument "42"
+    And the transaction is completed
+    And a transaction is active
+    And method "refresh" is scheduled with argument "42"
+    Then 2 tasks should have been saved
+
+  Scenario: Calls outside of a transaction are not coalesced
+    When method "refresh" is scheduled with argument "42"
+    And method "refresh" is scheduled with argument "42"
+    Then 2 tasks should have been saved
+
+  Scenario: Ordered calls are not coalesced
+    Given a transaction is active
+    When method "refresh" is scheduled with argument "42" in topic "entity-42"
+    And method "refresh" is scheduled with argument "42" in topic "entity-42"
+    Then 2 tasks should have been saved
+
+  Scenario: Tracked calls are not coalesced
+    Given a transaction is active
+    When method "refresh" is scheduled with argument "42" and tracked
+    And method "refresh" is scheduled with argument "42" and tracked
+    Then 2 tasks should have been saved
+
+  Scenario: Skipped calls are neither counted nor published
+    Given a transaction is active
+    When method "refresh" is scheduled with argument "42"
+    And method "refresh" is scheduled with argument "42"
+    And method "refresh" is scheduled with argument "43"
+    And the task listener is notified of the scheduled tasks
+    Then task #1 should be reported as skipped: false
+    And task #2 should be reported as skipped: true
+    And task #3 should be reported as skipped: false
+    And the task listener should have counted and published 2 scheduled tasks
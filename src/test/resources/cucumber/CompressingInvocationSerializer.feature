@@ -0,0 +1,34 @@
+@db #@disabled
+Feature: CompressingInvocationSerializer
+  Large invocations are stored compressed, small ones and old rows are stored/read as is.
+
+  Background:
+    Given compressing invocation serializer with threshold 1000
+
+  Scenario Outline: Invocation survives a round trip
+    When an invocation with a <length>-character argument is serialized and deserialized
+    Then the deserialized invocation should have the same argument
+    And the stored invocation should be <storage>
+    Examples:
+      | length | storage      |
+      | 10     | uncompressed |
+      | 100000 | compressed   |
+
+  Scenario: Threshold is measured in bytes, not characters
+    When an invocation with a 600-character non-ASCII argument is serialized and deserialized
+    Then the deserialized invocation should have the same argument
+    And the stored invocation should be compressed
+
+  Scenario: Invocation stored before compression was enabled is still readable
+    When an uncompressed invocation with a 100000-character argument is deserialized
+    Then the deserialized invocation should have the same argument
+
+  Scenario: Pooled compressors are reused by concurrent threads without mixing up data
+    When 8 threads serialize and deserialize 50 distinct invocations each
+    Then all round trips should return the original arguments
+
+  Scenario: Decompressor is reusable after failing on corrupted data
+    When a corrupted compressed invocation is deserialized
+    And an invocation with a 100000-character argument is serialized and deserialized
+    Then the deserialized invocation should have the same argument
+    And the stored invocation should be compressed
@@ -0,0 +1,57 @@
+@db #@disabled
+Feature: IdempotencyCachePersistor
+  Duplicate unique request IDs seen recently are rejected without a DB round trip.
+
+  Scenario: Committed request ID is rejected locally
+    Given idempotency cache persistor remembers keys for PT1H
+    When a task with request ID "req-1" is saved and committed
+    And a task with request ID "req-1" is saved
+    Then the task should be rejected as already scheduled
+    And 1 task should have reached the DB
+    And idempotency cache hits should be 1 and misses 1
+
+  Scenario: Rolled back request ID can be scheduled again
+    Given idempotency cache persistor remembers keys for PT1H
+    When a task with request ID "req-1" is saved
+    And a task with request ID "req-1" is saved
+    Then the task should not be rejected
+    And 2 tasks should have reached the DB
+
+  Scenario: Request ID rejected by the DB is rejected locally afterwards
+    Given idempotency cache persistor remembers keys for PT1H
+    And the DB rejects request ID "req-1" as a duplicate
+    When a task with request ID "req-1" is saved
+    And a task with request ID "req-1" is saved
+    Then the task should be rejected as already scheduled
+    And 1 task should have reached the DB
+
+  Scenario: Expired request ID is checked by the DB again
+    Given idempotency cache persistor remembers keys for PT0.05S
+    When a task with request ID "req-1" is saved and committed
+    And 100 ms pass
+    And a task with request ID "req-1" is saved
+    Then the task should not be rejected
+    And 2 tasks should have reached the DB
+
+  Scenario: Tasks without request ID are not cached
+    Given idempotency cache persistor remembers keys for PT1H
+    When a task without request ID is saved and committed
+    And a task without request ID is saved
+    Then the task should not be rejected
+    And 2 tasks should have reached the DB
+    And idempotency cache hits should be 0 and misses 0
+
+  Scenario: Eldest request IDs are forgotten once the cache is full
+    Given idempotency cache persistor remembers 2 keys for PT1H
+    When a task with request ID "req-1" is saved and committed
+    And a task with request ID "req-2" is saved and committed
+    And a task with request ID "req-3" is saved and committed
+    And a task with request ID "req-1" is saved
+    Then the task should not be rejected
+    And 4 tasks should have reached the DB
+
+  Scenario: Request IDs remembered by concurrent threads are all rejected afterwards
+    Given idempotency cache persistor remembers 10000 keys for PT1H
+    When 8 threads save and commit 200 tasks each with distinct request IDs
+    Then each of those request IDs should be rejected as already scheduled
+    And 1600 tasks should have reached the DB
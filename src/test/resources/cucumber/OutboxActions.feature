@@ -11,6 +11,30 @@ Feature: Outbox Actions
     Then the Outbox proxy should not be null
     And the Outbox proxy should be an instance of the target class
 
+  Scenario: Outbox proxy is built on each call by default
+    When an outbox proxy is created for the target class
+    And another outbox proxy is created for the same target class
+    Then the Outbox proxy should have been built 2 times
+
+  Scenario: Caching OutboxActions reuses the proxy
+    Given a caching OutboxActions implementation is available
+    When an outbox proxy is created for the target class
+    And another outbox proxy is created for the same target class
+    Then no exception should be thrown
+    And the Outbox proxy should be an instance of the target class
+    And both Outbox proxies should be the same instance
+    And the Outbox proxy should have been built 1 time
+
+  Scenario: Creating an ordered outbox proxy for a target class
+    When an ordered outbox proxy is created for the target class with key "order-123"
+    Then no exception should be thrown
+    And the Outbox proxy should be an instance of the target class
+    And the Outbox proxy should have been built with ordering key "order-123"
+
+  Scenario: Ordered outbox proxy requires an ordering key
+    When an ordered outbox proxy is created for the target class with key " "
+    Then the ordered proxy should be rejected
+
   Scenario: Outbox proxy executes scheduled actions
     When an action is scheduled through the outbox proxy
     Then the outboxed action should be executed successfully
@@ -35,3 +59,21 @@ Feature: Outbox Actions
       | simple     | testParameter |
       | complex    | {\"id\": 123} |
       | empty      |               |
+
+  Scenario: Tracked action is scheduled with a completion ID
+    Given OutboxActions has a completion registry
+    When an action is scheduled with tracking
+    Then no exception should be thrown
+    And the action should have been scheduled with a completion ID
+    And the tracked action future should be pending
+
+  Scenario: Tracked scheduling requires a completion registry
+    When an action is scheduled with tracking
+    Then tracked scheduling should fail with a clear error before anything is scheduled
+
+  Scenario: Caching OutboxActions tracks tasks in the injected completion registry
+    Given a caching OutboxActions implementation is available
+    And the caching OutboxActions has a completion registry injected
+    When an action is scheduled with tracking
+    Then no exception should be thrown
+    And the tracked action future should be pending
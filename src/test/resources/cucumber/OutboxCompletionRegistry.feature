@@ -0,0 +1,38 @@
+@db #@disabled
+Feature: OutboxCompletionRegistry
+  Futures of tracked tasks are completed on success, time out otherwise, and never pile up.
+
+  Scenario: Future is completed once the tracked task succeeds
+    Given completion registry allows 10 pending futures
+    When a tracked task is registered with timeout PT10S
+    And the tracked task succeeds
+    Then the tracked future should be completed
+    And completion registry should have 0 pending futures
+
+  Scenario: Caller's dependent actions don't run in the thread which executed the task
+    Given completion registry allows 10 pending futures
+    When a tracked task is registered with timeout PT10S
+    And the caller waits for the tracked future in a dependent action
+    And the tracked task succeeds in thread "outbox-worker"
+    Then the tracked future should be completed
+    And the dependent action should not run in thread "outbox-worker"
+
+  Scenario: Future is not completed by other tasks
+    Given completion registry allows 10 pending futures
+    When a tracked task is registered with timeout PT10S
+    And an untracked task succeeds
+    Then the tracked future should not be completed
+    And completion registry should have 1 pending future
+
+  Scenario: Future times out if the task doesn't succeed in time
+    Given completion registry allows 10 pending futures
+    When a tracked task is registered with timeout PT0.1S
+    Then the tracked future should time out
+    And completion registry should have 0 pending futures
+
+  Scenario: Futures are rejected once the registry is full
+    Given completion registry allows 1 pending future
+    When a tracked task is registered with timeout PT10S
+    And another tracked task is registered with timeout PT10S
+    Then the other tracked future should be rejected
+    And completion registry should have 1 pending future
@@ -0,0 +1,54 @@
+@db #@disabled
+Feature: OutboxIndexProvisioner
+  The index serving claim queries is checked and optionally created on startup.
+
+  Scenario: Missing index is reported
+    Given an H2 outbox table without the claim index containing 1000 processed tasks and 10 due tasks
+    When indexes are provisioned in CHECK mode
+    Then the index should be reported as missing
+    And the outbox table should not have index "IX_TXNO_OUTBOX_DUE"
+
+  Scenario: Missing index is created and used by the claim query
+    Given an H2 outbox table without the claim index containing 1000 processed tasks and 10 due tasks
+    When indexes are provisioned in CREATE mode
+    Then the index should be reported as present
+    And the outbox table should have index "IX_TXNO_OUTBOX_DUE"
+    And the claim query plan should use index "IX_TXNO_OUTBOX_DUE"
+
+  Scenario: Index isn't created on a big table if that blocks writes
+    Given an H2 outbox table without the claim index containing 10001 processed tasks and 0 due tasks
+    When indexes are provisioned in CREATE mode
+    Then the index should be reported as missing
+    And the outbox table should not have index "IX_TXNO_OUTBOX_DUE"
+
+  Scenario: Existing index is detected
+    Given an H2 outbox table without the claim index containing 1000 processed tasks and 10 due tasks
+    And indexes are provisioned in CREATE mode
+    When indexes are provisioned in CHECK mode
+    Then the index should be reported as present
+
+  Scenario: Library's index on a migrated table is detected and no duplicate is created
+    Given an H2 outbox table migrated by the library
+    When indexes are provisioned in CREATE mode
+    Then the index should be reported as present
+    And the outbox table should not have index "IX_TXNO_OUTBOX_DUE"
+    And the outbox table should have 1 index on column "nextAttemptTime"
+
+  Scenario: Index without task IDs doesn't serve partitioned claim queries
+    Given an H2 outbox table migrated by the library
+    And partitioning is enabled for the index provisioner
+    When indexes are provisioned in CREATE mode
+    Then the index should be reported as present
+    And the outbox table should have index "IX_TXNO_OUTBOX_DUE"
+
+  Scenario Outline: Index DDL is built for each dialect
+    When claim index DDL is built for dialect "<dialect>"
+    Then the DDL should contain "<fragment>"
+    Examples:
+      | dialect       | fragment                                                              |
+      | POSTGRESQL_9  | CREATE INDEX CONCURRENTLY IF NOT EXISTS                               |
+      | POSTGRESQL_9  | (nextAttemptTime, id) WHERE processed = false AND blocked = false     |
+      | MS_SQL_SERVER | (nextAttemptTime, id) WHERE processed = 0 AND blocked = 0             |
+      | MY_SQL_8      | (blocked, processed, nextAttemptTime, id) ALGORITHM=INPLACE LOCK=NONE |
+      | H2            | (blocked, processed, nextAttemptTime, id)                             |
+      | ORACLE        | (blocked, processed, nextAttemptTime, id)                             |
@@ -0,0 +1,49 @@
+@db #@disabled
+Feature: Outbox partitioning
+  Apps split due tasks between themselves by buckets derived from task IDs.
+
+  Scenario Outline: Each bucket is owned by exactly one node
+    When buckets are assigned among <nodes> nodes
+    Then each bucket should be owned by exactly one node
+    And each node should own about 1/<nodes> of the buckets
+    Examples:
+      | nodes |
+      | 1     |
+      | 2     |
+      | 5     |
+      | 12    |
+
+  Scenario: Only buckets of the joining node move
+    When buckets are assigned among 4 nodes
+    And another node joins
+    Then existing nodes should only lose buckets to the new node
+
+  Scenario: Nodes sharing a database split buckets
+    Given an H2 database with the outbox table
+    When 3 nodes send heartbeats twice
+    Then each bucket should be owned by exactly one node
+    And the nodes table should contain 3 nodes
+
+  Scenario: Expired nodes are removed
+    Given an H2 database with the outbox table
+    And a node whose heartbeat expired
+    When 1 node sends heartbeats twice
+    Then the nodes table should contain 1 node
+    And the node should own all buckets
+
+  Scenario Outline: Buckets are selected by ranges over task IDs
+    When ID ranges condition is built for buckets "<buckets>"
+    Then the condition should be "<condition>"
+    Examples:
+      | buckets     | condition                                                |
+      | 00          | (id >= '00' AND id < '01')                               |
+      | 00,01,02,10 | (id >= '00' AND id < '03') OR (id >= '10' AND id < '11') |
+      | 9e,9f,a0    | (id >= '9e' AND id < 'a1')                               |
+      | 0f,fe,ff    | (id >= '0f' AND id < '10') OR id >= 'fe'                 |
+
+  Scenario: Library's claim query selects tasks in owned buckets only
+    Given an H2 database with the outbox table
+    And 200 due tasks in the outbox table
+    When 2 nodes send heartbeats twice
+    And each node selects a batch of 1000 tasks
+    Then each task should be selected by exactly one node
@@ -0,0 +1,27 @@
+@db #@disabled
+Feature: RetryBackoffPersistor
+  Retry delay grows exponentially with the number of failed attempts.
+
+  Background:
+    Given per-task retry delay is 10 seconds
+    And default retry backoff with multiplier 2.0, max. delay 300 seconds, and jitter false
+    And retry backoff for bean "slowBean" with multiplier 3.0, max. delay 600 seconds, and jitter false
+
+  Scenario Outline: Next attempt time is extended
+    When task of bean "<bean>" with <attempts> failed attempts is updated
+    Then next attempt time should be extended by <minExtraSeconds> to <maxExtraSeconds> seconds
+    And the update should be delegated
+    Examples:
+      | bean     | attempts | minExtraSeconds | maxExtraSeconds |
+      | someBean | 0        | 0               | 0               |
+      | someBean | 1        | 0               | 0               |
+      | someBean | 2        | 10              | 10              |
+      | someBean | 3        | 30              | 30              |
+      | someBean | 10       | 290             | 290             |
+      | slowBean | 3        | 80              | 80              |
+      | slowBean | 10       | 590             | 590             |
+
+  Scenario: Jitter keeps the delay within bounds
+    Given default retry backoff with multiplier 2.0, max. delay 300 seconds, and jitter true
+    When task of bean "someBean" with 4 failed attempts is updated
+    Then next attempt time should be extended by 0 to 70 seconds
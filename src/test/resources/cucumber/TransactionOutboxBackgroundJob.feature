@@ -12,10 +12,86 @@ Feature: TransactionOutboxBackgroundJob
     And the background job is set up
     And the background job retries failed tasks
     Then all tasks should be processed
+    And flush completion should be published
     And no exception should be thrown
 
+  Scenario Outline: Background job drains the backlog with several flush workers
+    Given the number of flush threads is <flushThreads>
+    When there is a backlog of <backlogSize> task batches
+    And the background job is set up
+    And the background job retries failed tasks
+    Then the backlog of <backlogSize> task batches should be drained by flush workers
+    And no exception should be thrown
+    Examples:
+      | flushThreads | backlogSize |
+      | 2            | 10          |
+      | 4            | 100         |
+
   Scenario: Background job hides errors from outboxes actions (the point is to retry them periodically)
     When the transaction outbox is set up to throw an exception
     When the background job is set up
     And the background job retries failed tasks
     Then no exception should be thrown
+
+  Scenario: Flush completion is published even if the flush fails
+    When the transaction outbox is set up to throw an exception
+    And the background job is set up
+    And the background job retries failed tasks 2 times
+    Then no exception should be thrown
+    And flush completion should be published 2 times
+
+  Scenario: Background job keeps running when a flush completion listener fails
+    Given the min restart delay is set to "1 minute"
+    When there are tasks to process
+    And a flush completion listener throws an exception
+    And the background job is set up
+    And the background job retries failed tasks 2 times
+    Then no exception should be thrown
+    And the outbox should be flushed 4 times
+    And flush completion should be published 2 times
+    And the next invocation should be delayed by "1 minute"
+
+  Scenario Outline: Background job backs off while there are no tasks
+    Given the min restart delay is set to "1 minute"
+    When there are no tasks to process
+    And the background job is set up
+    And the background job retries failed tasks <invocations> times
+    Then the next invocation should be delayed by "<delay>"
+    Examples:
+      | invocations | delay      |
+      | 0           | 1 minute   |
+      | 1           | 2 minutes  |
+      | 3           | 8 minutes  |
+      | 10          | 10 minutes |
+
+  Scenario: Background job restarts quickly once tasks are found
+    Given the min restart delay is set to "1 minute"
+    When there are no tasks to process
+    And the background job is set up
+    And the background job retries failed tasks 3 times
+    And new tasks arrive
+    And the background job retries failed tasks
+    Then the next invocation should be delayed by "1 minute"
+
+  Scenario: Background job is woken up by a commit scheduling a task
+    Given the min restart delay is set to "1 minute"
+    When there are no tasks to process
+    And the background job is set up
+    And the background job retries failed tasks 3 times
+    And a transaction scheduling a task is committed
+    Then the next invocation should be delayed by "1 minute"
+
+  Scenario: Background job reports flush metrics
+    Given outbox metrics are enabled
+    When there are tasks to process
+    And the background job is set up
+    And the background job retries failed tasks 2 times
+    Then 2 flush cycles should be recorded in metrics
+
+  Scenario: Flush metrics count only tasks claimed by the flush
+    Given outbox metrics are enabled
+    And each flush finding tasks claims 3 tasks while 5 tasks are submitted after commit
+    When there are tasks to process
+    And the background job is set up
+    And the background job retries failed tasks 2 times
+    Then 6 tasks should be recorded as claimed by flushes
@@ -8,3 +8,58 @@ Feature: TransactionOutboxConfig
       | true       | true                | 5                  | PT1M                      | PT5M                      | PT30S             |
     When transaction outbox is created
     Then no exception should be thrown
+
+  Scenario: TransactionOutbox is configured with a custom flush batch size
+    Given transaction outbox properties are configured with:
+      | useJackson | unblockBlockedTasks | blockAfterAttempts | backgroundJobInitialDelay | backgroundJobRestartDelay | perTaskRetryDelay |
+      | false      | false               | 3                  | PT1M                      | PT5M                      | PT30S             |
+    And flush batch size is 500
+    When transaction outbox is created
+    Then no exception should be thrown
+
+  Scenario: Flush claims due tasks in batches of the configured size
+    Given transaction outbox properties are configured with:
+      | useJackson | unblockBlockedTasks | blockAfterAttempts | backgroundJobInitialDelay | backgroundJobRestartDelay | perTaskRetryDelay |
+      | false      | false               | 3                  | PT1M                      | PT5M                      | PT30S             |
+    And flush batch size is 500
+    When transaction outbox is created with a stub persistor
+    And transaction outbox is flushed
+    Then due tasks should be claimed in batches of 500
+
+  Scenario Outline: TransactionOutbox is configured with a bounded dispatch executor
+    Given transaction outbox properties are configured with:
+      | useJackson | unblockBlockedTasks | blockAfterAttempts | backgroundJobInitialDelay | backgroundJobRestartDelay | perTaskRetryDelay |
+      | true       | true                | 5                  | PT1M                      | PT5M                      | PT30S             |
+    And dispatch executor has <threads> threads, queue capacity <queueCapacity>, and virtual threads <virtualThreads>
+    When dispatch executor is created
+    And dispatch executor is saturated
+    Then dispatch executor should report metrics for <threads> threads
+    And dispatch executor should reject new tasks
+    Examples:
+      | threads | queueCapacity | virtualThreads |
+      | 1       | 0             | false          |
+      | 2       | 3             | false          |
+      | 2       | 3             | true           |
+
+  Scenario: TransactionOutbox executes tasks on virtual threads
+    Given transaction outbox properties are configured with:
+      | useJackson | unblockBlockedTasks | blockAfterAttempts | backgroundJobInitialDelay | backgroundJobRestartDelay | perTaskRetryDelay |
+      | true       | true                | 5                  | PT1M                      | PT5M                      | PT30S             |
+    And execution mode is virtual with 2000 max concurrent tasks
+    When transaction outbox is created
+    Then no exception should be thrown
+
+  Scenario: TransactionOutbox executes tasks with a bulk counterpart in chunks
+    Given transaction outbox properties are configured with:
+      | useJackson | unblockBlockedTasks | blockAfterAttempts | backgroundJobInitialDelay | backgroundJobRestartDelay | perTaskRetryDelay |
+      | true       | true                | 5                  | PT1M                      | PT5M                      | PT30S             |
+    And bulk execution with chunk size 100 and linger PT0.05S
+    When transaction outbox is created
+    Then outbox submitter should be a bulk submitter
+
+  Scenario: Bulk linger must be shorter than the per-task retry delay
+    Given transaction outbox properties are configured with:
+      | useJackson | unblockBlockedTasks | blockAfterAttempts | backgroundJobInitialDelay | backgroundJobRestartDelay | perTaskRetryDelay |
+      | true       | true                | 5                  | PT1M                      | PT5M                      | PT30S             |
+    And bulk execution with chunk size 100 and linger PT30S
+    Then creating transaction outbox should fail with "must be shorter than per-task retry delay"
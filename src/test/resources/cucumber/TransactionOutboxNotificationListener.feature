@@ -0,0 +1,48 @@
+@db #@disabled
+Feature: TransactionOutboxNotificationListener
+  PostgreSQL notifications on outbox inserts wake up the background job in all apps.
+
+  Scenario Outline: Notification channel is derived from the table name
+    When notification channel is built for table "<table>"
+    Then the channel should be "<channel>"
+    Examples:
+      | table                | channel                       |
+      | TXNO_OUTBOX          | txno_outbox_inserted          |
+      | outbox.ORDERS_OUTBOX | outbox_orders_outbox_inserted |
+
+  Scenario: Notification trigger is created idempotently
+    When notification trigger DDL is built for table "TXNO_OUTBOX"
+    Then the DDL should notify channel "txno_outbox_inserted"
+    And the trigger should be created only if it doesn't exist
+
+  Scenario Outline: Listener starts for PostgreSQL only
+    Given outbox notification listener for dialect "<dialect>"
+    When the listener is started
+    Then the listener running state should be <running>
+    And the listener is stopped
+    Examples:
+      | dialect      | running |
+      | POSTGRESQL_9 | true    |
+      | H2           | false   |
+
+  Scenario: Background job is woken up once the listener connects
+    Given outbox notification listener for dialect "POSTGRESQL_9"
+    When the listener is started
+    Then the background job should be woken up
+    And the notification trigger should be created
+    And the listener is stopped
+
+  Scenario: Existing notification trigger isn't recreated
+    Given outbox notification listener for dialect "POSTGRESQL_9"
+    And the notification trigger exists
+    When the listener is started
+    Then the background job should be woken up
+    And the notification trigger should not be created
+    And the listener is stopped
+
+  Scenario: Listener listens even if the notification trigger can't be created
+    Given outbox notification listener for dialect "POSTGRESQL_9"
+    And the notification trigger can't be created
+    When the listener is started
+    Then the background job should be woken up
+    And the listener is stopped
@@ -11,3 +11,41 @@ Feature: TransactionOutbox persistor configuration
     When a persistor is created
     Then the persistor should be properly configured
     And the persistor should use Jackson serialization
+
+  Scenario: Persistor routes tasks by capability
+    Given transaction outbox properties with Jackson serialization false
+    And capability routing is enabled
+    When a persistor is created
+    Then the persistor should route tasks by capability
+
+  Scenario: Partitioned persistor claims tasks in owned buckets only
+    Given transaction outbox properties with Jackson serialization false
+    And partitioning is enabled
+    When a persistor is created
+    Then the persistor should use a partitioned dialect
+
+  Scenario: Partitioning can't be combined with capability routing
+    Given transaction outbox properties with Jackson serialization false
+    And capability routing is enabled
+    And partitioning is enabled
+    Then creating a persistor should fail with "can't be enabled together"
+
+  Scenario: Persistor uses the library's default table name
+    Given transaction outbox properties with Jackson serialization false
+    When a persistor is created
+    Then the persistor should use table "TXNO_OUTBOX"
+    And the persistor should migrate the table: true
+
+  Scenario: Persistor uses a custom table name
+    Given transaction outbox properties with Jackson serialization false
+    And outbox table name is "ORDERS_OUTBOX"
+    When a persistor is created
+    Then the persistor should use table "ORDERS_OUTBOX"
+    And the persistor should migrate the table: false
+
+  Scenario: Idempotency cache is checked before any other persistor
+    Given transaction outbox properties with Jackson serialization false
+    And capability routing is enabled
+    And idempotency cache holds 1000 keys for PT1H
+    When a persistor is created
+    Then the persistor should check the idempotency cache first
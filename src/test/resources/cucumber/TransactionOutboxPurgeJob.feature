@@ -0,0 +1,41 @@
+@db #@disabled
+Feature: TransactionOutboxPurgeJob
+  Outbox rows nobody needs anymore are deleted in bounded batches.
+
+  Scenario: Rows are deleted in batches until a partial batch is found
+    Given purge batch size is 100
+    And SELECT statements find "100, 100, 30, 0" rows
+    And DELETE statements delete "100, 100, 30" rows
+    When purge is run
+    Then 230 rows should be purged
+    And 4 SELECT statements and 3 DELETE statements should be executed
+
+  Scenario: Purge stops after the first partial batch of each kind
+    Given purge batch size is 100
+    And SELECT statements find "0, 5" rows
+    And DELETE statements delete "5" rows
+    When purge is run
+    Then 5 rows should be purged
+    And 2 SELECT statements and 1 DELETE statement should be executed
+
+  Scenario: Rows changed after being selected don't stop the purge
+    Given purge batch size is 100
+    And SELECT statements find "100, 10, 0" rows
+    And DELETE statements delete "97, 10" rows
+    When purge is run
+    Then 107 rows should be purged
+    And 3 SELECT statements and 2 DELETE statements should be executed
+
+  Scenario: Only expired blocked and processed tasks are purged
+    Given purge batch size is 2
+    And an H2 outbox table containing tasks:
+      | id                      | blocked | processed | lastAttemptTime | nextAttemptTime |
+      | blocked-long-ago        | true    | false     | -P31D           | -P31D           |
+      | blocked-long-ago-2      | true    | false     | -P40D           | PT1M            |
+      | blocked-recently        | true    | false     | -P29D           | -P29D           |
+      | processed-expired       | false   | true      | -P8D            | -PT1M           |
+      | processed-not-expired   | false   | true      | -PT1M           | P7D             |
+      | due                     | false   | false     | -P31D           | -P31D           |
+    When purge is run
+    Then 3 rows should be purged
+    And the outbox table should contain tasks "blocked-recently, processed-not-expired, due"
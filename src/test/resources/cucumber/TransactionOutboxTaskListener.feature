@@ -0,0 +1,43 @@
+@db #@disabled
+Feature: TransactionOutboxTaskListener
+  Task lifecycle callbacks are logged, reported to metrics, and published as application events.
+
+  Scenario: Successful task is reported
+    Given a task listener with metrics enabled
+    When the task is scheduled
+    And the task is executed through the metered submitter
+    And the task succeeds
+    Then the task metric "scheduled" should be 1
+    And the task metric "succeeded" should be 1
+    And the task metric "failed" should be 0
+    And the task execution time should be recorded
+    And the task lag should be recorded
+    And a task scheduled event should be published
+
+  Scenario: Task dropped by the submitter isn't counted as submitted
+    Given a task listener with metrics enabled
+    When the task is scheduled
+    And the task is dropped by a saturated submitter behind the metered submitter
+    Then no task should be counted as submitted
+
+  Scenario: Failed and then blocked task is reported
+    Given a task listener with metrics enabled
+    When the task is scheduled
+    And the task fails
+    And the task is blocked
+    Then the task metric "failed" should be 1
+    And the task metric "blocked" should be 1
+    And the task lag should not be recorded
+    And a task blocked event should be published
+
+  Scenario Outline: Successful tasks are handled in each logging mode
+    Given a task listener with metrics enabled and success logging <successLogging>
+    When 10 tasks succeed and the success summary is logged
+    Then no exception should be thrown
+    And the task metric "succeeded" should be 10
+    Examples:
+      | successLogging |
+      | ALL            |
+      | SAMPLED        |
+      | SUMMARY        |
+      | OFF            |
@@ -10,3 +10,56 @@ Feature: TransactionOutboxTaskUnblockerListener
       | unblockBlockedTasks | action         |
       | true                | be unblocked   |
       | false               | remain blocked |
+
+  Scenario: Blocked task is quarantined instead of being unblocked immediately
+    Given quarantine with initial cooldown "PT1H", max cooldown "PT24H" and 10 unblocks per flush
+    And a blocked task in the outbox table
+    When a transaction outbox task blocked event is received
+    And quarantined tasks are released
+    Then the task should remain blocked
+    And the task should be quarantined for "PT1H"
+    And 1 task should remain blocked in the outbox table
+
+  Scenario: Task is unblocked once its cooldown expires
+    Given quarantine with initial cooldown "PT0S", max cooldown "PT1H" and 10 unblocks per flush
+    And a blocked task in the outbox table
+    When a transaction outbox task blocked event is received
+    And quarantined tasks are released
+    Then the task should be unblocked in the outbox table
+    And 0 tasks should remain blocked in the outbox table
+
+  Scenario Outline: Cooldown doubles each time the same task is blocked again
+    Given quarantine with initial cooldown "PT1H", max cooldown "PT3H" and 10 unblocks per flush
+    And a blocked task in the outbox table
+    When the task is blocked <times> times
+    Then the task should be quarantined for "<cooldown>"
+    Examples:
+      | times | cooldown |
+      | 1     | PT1H     |
+      | 2     | PT2H     |
+      | 3     | PT3H     |
+      | 10    | PT3H     |
+
+  Scenario: Quarantine survives a restart
+    Given quarantine with initial cooldown "PT1H", max cooldown "PT24H" and 10 unblocks per flush
+    And a blocked task in the outbox table
+    When a transaction outbox task blocked event is received
+    And the app is restarted
+    And quarantined tasks are released
+    Then 1 task should remain blocked in the outbox table
+    When the quarantine of the task expires
+    And quarantined tasks are released
+    Then the task should be unblocked in the outbox table
+
+  Scenario: Number of unblocks per flush is limited
+    Given quarantine with initial cooldown "PT0S", max cooldown "PT1H" and 2 unblocks per flush
+    When 5 different tasks are blocked
+    And quarantined tasks are released
+    Then 2 tasks should be unblocked in the outbox table
+    And 3 tasks should remain blocked in the outbox table
+
+  Scenario: Failure to release quarantined tasks is not propagated to the background job
+    Given quarantine with initial cooldown "PT0S", max cooldown "PT1H" and 10 unblocks per flush
+    And the outbox table is unavailable
+    When quarantined tasks are released
+    Then no exception should be thrown
@@ -0,0 +1,39 @@
+@db #@disabled
+Feature: VirtualThreadSubmitter
+  Tasks are executed on virtual threads, with concurrency capped by a semaphore.
+
+  Scenario: Task is executed on a virtual thread
+    Given virtual thread submitter allows 10 concurrent tasks
+    When 1 slow task is submitted
+    And slow tasks are finished
+    Then 1 task should have been executed on virtual threads
+    And virtual thread submitter should have 0 active tasks
+
+  Scenario: Tasks exceeding the cap are left to the background job
+    Given virtual thread submitter allows 2 concurrent tasks
+    When 3 slow tasks are submitted
+    Then virtual thread submitter should have 2 active tasks
+    When slow tasks are finished
+    Then 2 tasks should have been executed on virtual threads
+    And virtual thread submitter should have 0 active tasks
+
+  Scenario: Thousands of slow tasks run at the same time
+    Given virtual thread submitter allows 5000 concurrent tasks
+    When 5000 slow tasks are submitted
+    Then virtual thread submitter should have 5000 active tasks
+    When slow tasks are finished
+    Then 5000 tasks should have been executed on virtual threads
+
+  Scenario: Tasks running JDBC transactions don't pin carrier threads
+    Given virtual thread submitter allows 100 concurrent tasks
+    And an H2 database for virtual thread tasks
+    And JFR records pinned virtual threads
+    When 50 tasks run H2 transactions waiting 20 ms inside
+    Then the H2 table should contain 50 task results
+    And no virtual thread should have been pinned
+
+  Scenario: Pinning is detected by the JFR recording
+    Given virtual thread submitter allows 1 concurrent task
+    And JFR records pinned virtual threads
+    When a task waits 50 ms inside a synchronized block
+    Then pinning should be detected on JDKs pinning inside synchronized blocks